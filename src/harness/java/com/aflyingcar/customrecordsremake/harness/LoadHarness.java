@@ -0,0 +1,207 @@
+package com.aflyingcar.customrecordsremake.harness;
+
+import com.aflyingcar.customrecordsremake.item.ModItems;
+import com.aflyingcar.customrecordsremake.packs.CustomRecordsPackResources;
+import com.aflyingcar.customrecordsremake.packs.PackContents;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import net.minecraft.server.packs.PackType;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Measures what loading the mod costs from end to end at several catalog sizes, without starting the game.
+ * For each size a game directory is generated, and then the catalog is loaded (with and without the catalog cache),
+ *   the virtual pack is built and opened, and a full client resource reload and server data reload are run against
+ *   it. Each phase is timed, along with the peak heap and the total allocated while it ran, so that the cost per record
+ *   can be tracked and budgeted as catalogs grow.
+ * Nothing registers items or sounds here, as that needs a running game, so ModItems is never loaded.
+ *
+ * Run it with './gradlew loadHarness', which accepts:
+ *   -PharnessSizes=100,1000,10000   The catalog sizes to measure
+ *   -PharnessIterations=3           How many times to measure each size. The median is reported.
+ *   -PharnessWarmup=1               How many times to run each size first without measuring it
+ *   -PharnessMode=PER_RECORD        The registry mode to generate resources for
+ *   -PharnessOggKiB=16              Roughly how large each generated .ogg is
+ *   -PharnessTextureSize=16         The width and height of each generated .png
+ *   -PharnessMaxHeap=2g             The maximum heap size of the harness
+ * The results are printed, and written to build/reports/loadHarness/results.csv.
+ */
+public class LoadHarness {
+    /**
+     * Each part of loading that is measured, in the order they run
+     */
+    enum Phase {
+        CATALOG_COLD("catalog (cold)"),
+        CATALOG_CACHED("catalog (cached)"),
+        PACK_CONSTRUCTION("pack construction"),
+        CLIENT_RELOAD("client reload"),
+        SERVER_RELOAD("server reload");
+
+        final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+    }
+
+    private final int iterations;
+    private final int warmup;
+    private final ModItems.Mode mode;
+    private final int oggSize;
+    private final int textureSize;
+
+    private final ReloadSimulator reload = new ReloadSimulator();
+    private CustomRecordsPackResources pack;
+
+    private int clientResourcesRead;
+    private long clientBytesRead;
+    private int serverResourcesRead;
+    private long serverBytesRead;
+
+    private LoadHarness(int iterations, int warmup, ModItems.Mode mode, int oggSize, int textureSize) {
+        this.iterations = iterations;
+        this.warmup = warmup;
+        this.mode = mode;
+        this.oggSize = oggSize;
+        this.textureSize = textureSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = parseOptions(args);
+        var sizes = Arrays.stream(options.getOrDefault("sizes", "100,1000,10000").split(",")).mapToInt(size -> Integer.parseInt(size.trim())).toArray();
+        var report = options.containsKey("report") ? Path.of(options.get("report")) : null;
+
+        var harness = new LoadHarness(Integer.parseInt(options.getOrDefault("iterations", "3")),
+                                      Integer.parseInt(options.getOrDefault("warmup", "1")),
+                                      ModItems.Mode.valueOf(options.getOrDefault("mode", ModItems.Mode.PER_RECORD.name()).toUpperCase(Locale.ROOT)),
+                                      Integer.parseInt(options.getOrDefault("oggKiB", "16")) * 1024,
+                                      Integer.parseInt(options.getOrDefault("textureSize", "16")));
+
+        var rows = new ArrayList<String>();
+        rows.add("records,phase,wall_ms,wall_us_per_record,peak_heap_mib,allocated_mib,allocated_kib_per_record");
+        for(var size : sizes) {
+            rows.addAll(harness.measure(size));
+        }
+
+        if(report != null) {
+            if(report.getParent() != null) {
+                Files.createDirectories(report.getParent());
+            }
+            Files.write(report, rows, StandardCharsets.UTF_8);
+            System.out.println("Wrote " + report);
+        }
+    }
+
+    /**
+     * Generates a catalog of the given size, measures every phase against it, and prints the results.
+     *
+     * @return The results as CSV rows
+     */
+    private List<String> measure(int size) throws Exception {
+        System.out.println();
+        System.out.println("Generating " + size + " records (" + mode + " mode)...");
+
+        var results = new EnumMap<Phase, List<Measurement>>(Phase.class);
+        try(var gameDir = SyntheticGameDir.create(size, mode, oggSize, textureSize)) {
+            System.out.println("Generated " + gameDir.getAssetBytes() / 1024 + " KiB of assets.");
+
+            for(int i = 0; i < warmup + iterations; ++i) {
+                var measured = runOnce(gameDir);
+                if(i >= warmup) {
+                    measured.forEach((phase, measurement) -> results.computeIfAbsent(phase, p -> new ArrayList<>()).add(measurement));
+                }
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-20s %12s %14s %16s %16s %18s", "phase", "wall (ms)", "us/record", "peak heap (MiB)", "allocated (MiB)", "allocated/record"));
+
+        var rows = new ArrayList<String>();
+        for(var entry : results.entrySet()) {
+            var measurements = entry.getValue();
+            var wall = median(measurements, Measurement::wallNanos);
+            var allocated = median(measurements, Measurement::allocatedBytes);
+            var peakHeap = measurements.stream().mapToLong(Measurement::peakHeapBytes).max().orElse(0);
+
+            var wallMillis = wall / 1e6;
+            var wallPerRecord = wall / 1e3 / size;
+            var peakHeapMiB = peakHeap / (1024.0 * 1024);
+            var allocatedMiB = allocated / (1024.0 * 1024);
+            var allocatedPerRecord = allocated / 1024.0 / size;
+
+            System.out.println(String.format(Locale.ROOT, "%-20s %12.1f %14.2f %16.1f %16.1f %14.2f KiB", entry.getKey().description, wallMillis, wallPerRecord, peakHeapMiB, allocatedMiB, allocatedPerRecord));
+            rows.add(String.format(Locale.ROOT, "%d,%s,%.3f,%.3f,%.2f,%.2f,%.3f", size, entry.getKey().description, wallMillis, wallPerRecord, peakHeapMiB, allocatedMiB, allocatedPerRecord));
+        }
+
+        System.out.println("Each client reload read " + clientResourcesRead + " resources (" + clientBytesRead / 1024 + " KiB), and each server reload read " + serverResourcesRead + " (" + serverBytesRead / 1024 + " KiB).");
+        return rows;
+    }
+
+    /**
+     * Runs every phase once, in order.
+     */
+    private Map<Phase, Measurement> runOnce(SyntheticGameDir gameDir) throws Exception {
+        var measured = new EnumMap<Phase, Measurement>(Phase.class);
+
+        gameDir.deleteCatalogCache();
+        measured.put(Phase.CATALOG_COLD, Measurement.of(() -> RecordJsonHandler.handleConfig(gameDir.getRecordsJson())));
+        measured.put(Phase.CATALOG_CACHED, Measurement.of(() -> RecordJsonHandler.handleConfig(gameDir.getRecordsJson())));
+
+        // The same work the mod does in the background once the catalog has loaded, and then opening the pack over it
+        measured.put(Phase.PACK_CONSTRUCTION, Measurement.of(() -> {
+            var catalog = RecordCatalog.current();
+            catalog.getSoundsJson();
+
+            var contents = PackContents.forCatalog(catalog);
+            for(var type : PackType.values()) {
+                contents.getIndex(type);
+                contents.getPayloads(type);
+            }
+            pack = new CustomRecordsPackResources(contents);
+        }));
+
+        try {
+            measured.put(Phase.CLIENT_RELOAD, Measurement.of(() -> reload.reloadClientResources(pack)));
+            clientResourcesRead = reload.getResourcesRead();
+            clientBytesRead = reload.getBytesRead();
+
+            measured.put(Phase.SERVER_RELOAD, Measurement.of(() -> reload.reloadServerData(pack)));
+            serverResourcesRead = reload.getResourcesRead();
+            serverBytesRead = reload.getBytesRead();
+        } finally {
+            pack.close();
+            pack = null;
+        }
+
+        return measured;
+    }
+
+    private static long median(List<Measurement> measurements, ToLongFunction<Measurement> value) {
+        var sorted = measurements.stream().mapToLong(value).sorted().toArray();
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Parses arguments of the form '--name value'
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        var options = new HashMap<String, String>();
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option name, but got '" + args[i] + "'");
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,83 @@
+package com.aflyingcar.customrecordsremake.harness;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * What one run of a phase cost.
+ *
+ * @param wallNanos How long the phase took
+ * @param peakHeapBytes The most heap in use at any point during the phase, including whatever was already live when it
+ *                      started. This is the sum of the peak of each heap pool, so it can overstate the true peak a little
+ *                      when the pools peak at different times.
+ * @param allocatedBytes How much was allocated during the phase, by every thread, including threads that started and
+ *                       finished during it. This is counted a TLAB at a time, so it can overstate the true amount by
+ *                       the unused end of the last TLAB each thread was handed.
+ */
+public record Measurement(long wallNanos, long peakHeapBytes, long allocatedBytes) {
+    /**
+     * Something to measure
+     */
+    public interface Phase {
+        void run() throws Exception;
+    }
+
+    private static final String NEW_TLAB_EVENT = "jdk.ObjectAllocationInNewTLAB";
+    private static final String OUTSIDE_TLAB_EVENT = "jdk.ObjectAllocationOutsideTLAB";
+
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+                                                                              .filter(pool -> pool.getType() == MemoryType.HEAP)
+                                                                              .toList();
+
+    /**
+     * Runs and measures a phase. The heap is collected first, so that garbage left by earlier phases does not count
+     *   towards this one's peak.
+     * Allocation is recorded with JFR rather than read from each thread afterwards, as loading spreads its work over
+     *   pools that are shut down before the phase ends, and a thread that has died no longer reports what it allocated.
+     */
+    public static Measurement of(Phase phase) throws Exception {
+        System.gc();
+        HEAP_POOLS.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        try(var recording = new Recording()) {
+            recording.enable(NEW_TLAB_EVENT).withoutStackTrace();
+            recording.enable(OUTSIDE_TLAB_EVENT).withoutStackTrace();
+            recording.start();
+
+            var start = System.nanoTime();
+            phase.run();
+            var wall = System.nanoTime() - start;
+
+            recording.stop();
+
+            var peak = HEAP_POOLS.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+            return new Measurement(wall, peak, getAllocatedBytes(recording));
+        }
+    }
+
+    /**
+     * @return How much was allocated while the given recording ran: the size of every new TLAB handed to a thread, and
+     *         of every object too large to be allocated in one
+     */
+    private static long getAllocatedBytes(Recording recording) throws IOException {
+        var file = Files.createTempFile("measurement", ".jfr");
+        try {
+            recording.dump(file);
+
+            var allocated = 0L;
+            for(var event : RecordingFile.readAllEvents(file)) {
+                allocated += event.getEventType().getName().equals(NEW_TLAB_EVENT) ? event.getLong("tlabSize") : event.getLong("allocationSize");
+            }
+            return allocated;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.aflyingcar.customrecordsremake.harness;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Asks a pack for what a full resource reload or data reload would ask it for, through the same PackResources calls
+ *   the game makes. Nothing is decoded beyond parsing the JSON, so this measures what the pack costs, not what the game
+ *   does with what it is given.
+ */
+public class ReloadSimulator {
+    /**
+     * The data directories that a data reload lists in every pack, whether or not there is anything in them
+     */
+    private static final List<String> DATA_DIRECTORIES = List.of("tags", "loot_tables", "predicates", "item_modifiers", "advancements", "functions");
+
+    private int resourcesRead = 0;
+    private long bytesRead = 0;
+
+    /**
+     * Reloads client resources the way the game does on startup and on F3+T:
+     *   - the pack.mcmeta is read when the pack is opened
+     *   - every sounds.json is read, and every sound it lists is checked for, but not read, as records are streamed
+     *     when played
+     *   - every language file is read
+     *   - every item model is read, and then every texture those models use is read to stitch the item atlas
+     */
+    public void reloadClientResources(PackResources pack) throws IOException {
+        reset();
+        readRootJson(pack, "pack.mcmeta");
+
+        for(var namespace : pack.getNamespaces(PackType.CLIENT_RESOURCES)) {
+            var sounds = new ResourceLocation(namespace, "sounds.json");
+            if(pack.hasResource(PackType.CLIENT_RESOURCES, sounds)) {
+                for(var event : readJson(pack, PackType.CLIENT_RESOURCES, sounds).getAsJsonObject().entrySet()) {
+                    for(var sound : event.getValue().getAsJsonObject().getAsJsonArray("sounds")) {
+                        var name = sound.isJsonObject() ? sound.getAsJsonObject().get("name").getAsString() : sound.getAsString();
+                        var location = new ResourceLocation(name);
+                        pack.hasResource(PackType.CLIENT_RESOURCES, new ResourceLocation(location.getNamespace(), "sounds/" + location.getPath() + ".ogg"));
+                    }
+                }
+            }
+
+            var lang = new ResourceLocation(namespace, "lang/en_us.json");
+            if(pack.hasResource(PackType.CLIENT_RESOURCES, lang)) {
+                readJson(pack, PackType.CLIENT_RESOURCES, lang);
+            }
+
+            var textures = new LinkedHashSet<ResourceLocation>();
+            for(var model : pack.getResources(PackType.CLIENT_RESOURCES, namespace, "models", location -> location.getPath().endsWith(".json"))) {
+                var modelTextures = readJson(pack, PackType.CLIENT_RESOURCES, model).getAsJsonObject().getAsJsonObject("textures");
+                if(modelTextures != null) {
+                    for(var texture : modelTextures.entrySet()) {
+                        var location = new ResourceLocation(texture.getValue().getAsString());
+                        textures.add(new ResourceLocation(location.getNamespace(), "textures/" + location.getPath() + ".png"));
+                    }
+                }
+            }
+
+            // Textures from other namespaces (such as the vanilla disc a variant model falls back to) come from other packs
+            for(var texture : textures) {
+                if(texture.getNamespace().equals(namespace)) {
+                    readBytes(pack, PackType.CLIENT_RESOURCES, texture);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads data the way the game does when a world is loaded and on /reload: the pack.mcmeta is read, every recipe is
+     *   read, and every other kind of data is listed.
+     */
+    public void reloadServerData(PackResources pack) throws IOException {
+        reset();
+        readRootJson(pack, "pack.mcmeta");
+
+        for(var namespace : pack.getNamespaces(PackType.SERVER_DATA)) {
+            for(var recipe : pack.getResources(PackType.SERVER_DATA, namespace, "recipes", location -> location.getPath().endsWith(".json"))) {
+                readJson(pack, PackType.SERVER_DATA, recipe);
+            }
+
+            for(var directory : DATA_DIRECTORIES) {
+                pack.getResources(PackType.SERVER_DATA, namespace, directory, location -> location.getPath().endsWith(".json"));
+            }
+        }
+    }
+
+    /**
+     * @return The number of resources read by the last reload
+     */
+    public int getResourcesRead() {
+        return resourcesRead;
+    }
+
+    /**
+     * @return The total size of the resources read by the last reload
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private void reset() {
+        resourcesRead = 0;
+        bytesRead = 0;
+    }
+
+    private void readRootJson(PackResources pack, String name) throws IOException {
+        try(var stream = pack.getRootResource(name)) {
+            var bytes = stream.readAllBytes();
+            count(bytes.length);
+            parse(bytes);
+        }
+    }
+
+    private JsonElement readJson(PackResources pack, PackType type, ResourceLocation location) throws IOException {
+        return parse(readBytes(pack, type, location));
+    }
+
+    private JsonElement parse(byte[] bytes) {
+        var json = JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        return json.isJsonObject() ? json : new JsonObject();
+    }
+
+    private byte[] readBytes(PackResources pack, PackType type, ResourceLocation location) throws IOException {
+        try(var stream = pack.getResource(type, location)) {
+            var bytes = stream.readAllBytes();
+            count(bytes.length);
+            return bytes;
+        }
+    }
+
+    private void count(long bytes) {
+        ++resourcesRead;
+        bytesRead += bytes;
+    }
+}
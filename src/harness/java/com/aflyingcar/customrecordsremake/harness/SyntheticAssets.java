@@ -0,0 +1,138 @@
+package com.aflyingcar.customrecordsremake.harness;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates small record assets that are real files of their type, so that everything which looks inside them (the
+ *   length detector, the asset prober, anything reading a PNG header) does the same work it would on a player's files.
+ * Every asset is seeded by its record's index, so no two records share an asset and none of them are deduplicated.
+ */
+public class SyntheticAssets {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int PAGE_PAYLOAD_SIZE = 4000;
+    private static final int[] OGG_CRC_TABLE = new int[256];
+
+    static {
+        // The Ogg checksum is a CRC-32 with the polynomial 0x04C11DB7, but unlike java.util.zip.CRC32 it is not reflected
+        for(int i = 0; i < 256; ++i) {
+            int crc = i << 24;
+            for(int bit = 0; bit < 8; ++bit) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            OGG_CRC_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * Generates an Ogg Vorbis file. The pages are well-formed and checksummed, and the identification and comment
+     *   headers are real, but the setup header and audio packets are filler: the file can be probed and measured like
+     *   any other, but it does not decode.
+     *
+     * @param index The index of the record the file is for
+     * @param seconds How long the file claims to be, which is what the length detector should find
+     * @param size Roughly how large the file should be, in bytes
+     * @return The contents of the file
+     */
+    public static byte[] ogg(int index, int seconds, int size) {
+        var out = new ByteArrayOutputStream(size + 256);
+        var random = new Random(index);
+        var serial = random.nextInt();
+        var sequence = 0;
+
+        var identification = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        identification.put((byte)1).put("vorbis".getBytes(StandardCharsets.US_ASCII))
+                      .putInt(0)                 // Version
+                      .put((byte)2)              // Channels
+                      .putInt(SAMPLE_RATE)
+                      .putInt(0).putInt(128000).putInt(0)
+                      .put((byte)0xB8)           // Block sizes of 256 and 2048
+                      .put((byte)1);             // Framing
+        writePage(out, 0x02, 0, serial, sequence++, identification.array());
+
+        var vendor = "CustomRecords load harness".getBytes(StandardCharsets.UTF_8);
+        var title = ("TITLE=Synthetic Record #" + index).getBytes(StandardCharsets.UTF_8);
+        var comment = ByteBuffer.allocate(7 + 4 + vendor.length + 4 + 4 + title.length + 1).order(ByteOrder.LITTLE_ENDIAN);
+        comment.put((byte)3).put("vorbis".getBytes(StandardCharsets.US_ASCII))
+               .putInt(vendor.length).put(vendor)
+               .putInt(1).putInt(title.length).put(title)
+               .put((byte)1);
+        writePage(out, 0, 0, serial, sequence++, comment.array());
+
+        var setup = new byte[64];
+        setup[0] = 5;
+        System.arraycopy("vorbis".getBytes(StandardCharsets.US_ASCII), 0, setup, 1, 6);
+        writePage(out, 0, 0, serial, sequence++, setup);
+
+        var totalSamples = (long)seconds * SAMPLE_RATE;
+        var pages = Math.max(1, (size - out.size()) / PAGE_PAYLOAD_SIZE);
+        for(int page = 1; page <= pages; ++page) {
+            var audio = new byte[PAGE_PAYLOAD_SIZE];
+            random.nextBytes(audio);
+            writePage(out, page == pages ? 0x04 : 0, totalSamples * page / pages, serial, sequence++, audio);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Generates a PNG texture.
+     *
+     * @param index The index of the record the texture is for
+     * @param size The width and height of the texture, in pixels
+     * @return The contents of the file
+     */
+    public static byte[] png(int index, int size) throws IOException {
+        var image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        var random = new Random(index);
+        for(int y = 0; y < size; ++y) {
+            for(int x = 0; x < size; ++x) {
+                image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+            }
+        }
+
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a page holding a single packet.
+     *
+     * @param headerType The page flags: 0x02 for the first page of the stream, 0x04 for the last
+     * @param granule The number of samples decoded by the end of this page
+     */
+    private static void writePage(ByteArrayOutputStream out, int headerType, long granule, int serial, int sequence, byte[] packet) {
+        // A packet is split into segments of 255 bytes, and ends with the first segment shorter than that
+        var segments = packet.length / 255 + 1;
+        var page = ByteBuffer.allocate(27 + segments + packet.length).order(ByteOrder.LITTLE_ENDIAN);
+        page.put("OggS".getBytes(StandardCharsets.US_ASCII))
+            .put((byte)0)
+            .put((byte)headerType)
+            .putLong(granule)
+            .putInt(serial)
+            .putInt(sequence)
+            .putInt(0)                           // Checksum, filled in below
+            .put((byte)segments);
+        for(int i = 0; i < segments - 1; ++i) {
+            page.put((byte)255);
+        }
+        page.put((byte)(packet.length % 255));
+        page.put(packet);
+
+        var bytes = page.array();
+        var crc = 0;
+        for(var b : bytes) {
+            crc = (crc << 8) ^ OGG_CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+        }
+        page.putInt(22, crc);
+
+        out.writeBytes(bytes);
+    }
+}
@@ -0,0 +1,129 @@
+package com.aflyingcar.customrecordsremake.harness;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.item.ModItems;
+import com.aflyingcar.customrecordsremake.utils.CatalogCache;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A throwaway game directory set up the way a player would set it up: a config file, and a records.json with the given
+ *   number of records alongside a real .ogg and .png for each one.
+ * Creating one points {@link CustomRecordsRemakeMod#getGameDir()} at it and loads the config from it, so that the mod's
+ *   loading code runs against it outside of Forge.
+ */
+public class SyntheticGameDir implements AutoCloseable {
+    private final Path gameDir;
+    private final File recordsJson;
+    private final int size;
+    private final long assetBytes;
+
+    private SyntheticGameDir(Path gameDir, int size, long assetBytes) {
+        this.gameDir = gameDir;
+        this.recordsJson = gameDir.resolve("config").resolve(CustomRecordsRemakeMod.MODID).resolve("records.json").toFile();
+        this.size = size;
+        this.assetBytes = assetBytes;
+    }
+
+    /**
+     * Generates a new game directory in a temporary directory.
+     *
+     * @param size The number of records to generate. Every other record leaves out its length, so that it is read from
+     *             its .ogg.
+     * @param mode How records are registered, which changes the models and recipes that are generated
+     * @param oggSize Roughly how large each .ogg should be, in bytes
+     * @param textureSize The width and height of each .png, in pixels
+     * @return The new game directory
+     */
+    public static SyntheticGameDir create(int size, ModItems.Mode mode, int oggSize, int textureSize) throws IOException {
+        var gameDir = Files.createTempDirectory("customrecords-harness");
+        var recordsDir = gameDir.resolve("config").resolve(CustomRecordsRemakeMod.MODID);
+        Files.createDirectories(recordsDir);
+
+        var assetBytes = 0L;
+        try(var writer = new JsonWriter(Files.newBufferedWriter(recordsDir.resolve("records.json"), StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            for(int i = 0; i < size; ++i) {
+                var fileName = getFileName(i);
+                var length = 60 + i % 240;
+
+                writer.name("disc" + i).beginObject();
+                writer.name("filename").value(fileName);
+                writer.name("name").value("Synthetic Record #" + i);
+                writer.name("item").value("minecraft:stone");
+                writer.name("meta").value(0);
+                if(i % 2 == 0) {
+                    writer.name("length").value(length);
+                }
+                writer.endObject();
+
+                var ogg = SyntheticAssets.ogg(i, length, oggSize);
+                var png = SyntheticAssets.png(i, textureSize);
+                Files.write(recordsDir.resolve(fileName + ".ogg"), ogg);
+                Files.write(recordsDir.resolve(fileName + ".png"), png);
+                assetBytes += ogg.length + png.length;
+            }
+            writer.endObject();
+        }
+
+        var configPath = gameDir.resolve("config").resolve(CustomRecordsRemakeMod.MODID + "-common.toml");
+        Files.writeString(configPath, "[registry]\nmode = \"" + mode.name() + "\"\n", StandardCharsets.UTF_8);
+
+        System.setProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY, gameDir.toString());
+        CustomRecordsConfig.load(configPath);
+
+        return new SyntheticGameDir(gameDir, size, assetBytes);
+    }
+
+    public static String getFileName(int index) {
+        return "record_" + index;
+    }
+
+    /**
+     * Deletes the catalog cache, so that the next load has to parse and probe everything again, as on a first launch.
+     */
+    public void deleteCatalogCache() throws IOException {
+        Files.deleteIfExists(CatalogCache.getDefaultPath());
+    }
+
+    public File getRecordsJson() {
+        return recordsJson;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The total size of every generated .ogg and .png
+     */
+    public long getAssetBytes() {
+        return assetBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(gameDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package com.aflyingcar.customrecordsremake.benchmark;
+
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading records.json and generating the JSON files derived from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CatalogLoadBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int records;
+
+    /**
+     * Only used by {@link #handleConfig}, so that the other benchmarks are not run twice
+     */
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        /**
+         * Whether records.json is loaded from the catalog cache (a warm launch) or parsed and probed from scratch
+         */
+        @Param({"true", "false"})
+        public boolean cached;
+
+        @Setup(Level.Invocation)
+        public void prepareInvocation(CatalogLoadBenchmark benchmark) throws IOException {
+            if(!cached) {
+                benchmark.catalog.deleteCatalogCache();
+            }
+        }
+    }
+
+    private SyntheticCatalog catalog;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = SyntheticCatalog.create(records);
+
+        // Load once so that the other benchmarks have records to work with, and so that there is a cache to hit
+        RecordJsonHandler.handleConfig(catalog.getRecordsJson());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        catalog.close();
+    }
+
+    @Benchmark
+    public void handleConfig(CacheState state) {
+        RecordJsonHandler.handleConfig(catalog.getRecordsJson());
+    }
+
+    @Benchmark
+    public String setupSoundsJson() {
+        return RecordJsonHandler.setupSoundsJson();
+    }
+
+    @Benchmark
+    public void genModelJson(Blackhole blackhole) {
+        blackhole.consume(RecordJsonHandler.genModelJson(nextFileName()));
+    }
+
+    @Benchmark
+    public void genRecipeJson(Blackhole blackhole) {
+        blackhole.consume(RecordJsonHandler.genRecipeJson(nextFileName()));
+    }
+
+    private String nextFileName() {
+        next = (next + 1) % catalog.size();
+        return SyntheticCatalog.getFileName(next);
+    }
+}
@@ -0,0 +1,112 @@
+package com.aflyingcar.customrecordsremake.benchmark;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.packs.CustomRecordsPackResources;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures opening the virtual pack and serving resources out of it, as happens on every resource reload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PackServingBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int records;
+
+    private SyntheticCatalog catalog;
+    private CustomRecordsPackResources pack;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = SyntheticCatalog.create(records);
+        CustomRecordsRemakeMod.loadRecords(catalog.getRecordsJson());
+        pack = new CustomRecordsPackResources();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pack.close();
+        catalog.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public CustomRecordsPackResources construct() {
+        return new CustomRecordsPackResources();
+    }
+
+    @Benchmark
+    public boolean hasResourceHit() {
+        return pack.hasResource(PackType.CLIENT_RESOURCES, location("models/item/" + nextFileName() + ".json"));
+    }
+
+    @Benchmark
+    public boolean hasResourceMiss() {
+        return pack.hasResource(PackType.CLIENT_RESOURCES, location("models/item/missing_" + nextFileName() + ".json"));
+    }
+
+    @Benchmark
+    public void getResourceModelHit(Blackhole blackhole) throws IOException {
+        try(var stream = pack.getResource(PackType.CLIENT_RESOURCES, location("models/item/" + nextFileName() + ".json"))) {
+            blackhole.consume(stream.readAllBytes());
+        }
+    }
+
+    @Benchmark
+    public void getResourceOggHit(Blackhole blackhole) throws IOException {
+        try(var stream = pack.getResource(PackType.CLIENT_RESOURCES, location("sounds/music/" + nextFileName() + ".ogg"))) {
+            blackhole.consume(stream.readAllBytes());
+        }
+    }
+
+    @Benchmark
+    public void getResourceMiss(Blackhole blackhole) {
+        try {
+            blackhole.consume(pack.getResource(PackType.CLIENT_RESOURCES, location("models/item/missing_" + nextFileName() + ".json")));
+        } catch(IOException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public Collection<ResourceLocation> getResourcesRecipes() {
+        return pack.getResources(PackType.SERVER_DATA, CustomRecordsRemakeMod.MODID, "recipes", location -> location.getPath().endsWith(".json"));
+    }
+
+    @Benchmark
+    public Collection<ResourceLocation> getResourcesTextures() {
+        return pack.getResources(PackType.CLIENT_RESOURCES, CustomRecordsRemakeMod.MODID, "textures", location -> location.getPath().endsWith(".png"));
+    }
+
+    @Benchmark
+    public Collection<ResourceLocation> getResourcesMissingNamespace() {
+        return pack.getResources(PackType.SERVER_DATA, "minecraft", "recipes", location -> true);
+    }
+
+    private static ResourceLocation location(String path) {
+        return new ResourceLocation(CustomRecordsRemakeMod.MODID, path);
+    }
+
+    private String nextFileName() {
+        next = (next + 1) % catalog.size();
+        return SyntheticCatalog.getFileName(next);
+    }
+}
@@ -0,0 +1,110 @@
+package com.aflyingcar.customrecordsremake.benchmark;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A throwaway game directory holding a generated records.json with the given number of records, along with a small
+ *   placeholder .ogg and .png for each one.
+ * Creating a catalog points {@link CustomRecordsRemakeMod#getGameDir()} at it and loads the config from it, so that
+ *   the mod's loading code can run outside of Forge.
+ */
+public class SyntheticCatalog implements AutoCloseable {
+    private static final byte[] PLACEHOLDER_OGG = "OggS placeholder".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PLACEHOLDER_PNG = "PNG placeholder".getBytes(StandardCharsets.UTF_8);
+
+    private final Path gameDir;
+    private final Path recordsDir;
+    private final File recordsJson;
+    private final int size;
+
+    private SyntheticCatalog(Path gameDir, int size) {
+        this.gameDir = gameDir;
+        this.recordsDir = gameDir.resolve("config").resolve(CustomRecordsRemakeMod.MODID);
+        this.recordsJson = recordsDir.resolve("records.json").toFile();
+        this.size = size;
+    }
+
+    /**
+     * Generates a new catalog in a temporary directory.
+     *
+     * @param size The number of records to generate. Every other record has a crafting recipe.
+     * @return The new catalog
+     */
+    public static SyntheticCatalog create(int size) throws IOException {
+        var catalog = new SyntheticCatalog(Files.createTempDirectory("customrecords-bench"), size);
+        Files.createDirectories(catalog.recordsDir);
+
+        try(var writer = new JsonWriter(Files.newBufferedWriter(catalog.recordsJson.toPath(), StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            for(int i = 0; i < size; ++i) {
+                var fileName = getFileName(i);
+
+                writer.name("disc" + i).beginObject();
+                writer.name("filename").value(fileName);
+                writer.name("name").value("Synthetic Record #" + i);
+                writer.name("length").value(60 + i % 240);
+                if(i % 2 == 0) {
+                    writer.name("item").value("minecraft:stone");
+                    writer.name("meta").value(0);
+                }
+                writer.endObject();
+
+                Files.write(catalog.recordsDir.resolve(fileName + ".ogg"), PLACEHOLDER_OGG);
+                Files.write(catalog.recordsDir.resolve(fileName + ".png"), PLACEHOLDER_PNG);
+            }
+            writer.endObject();
+        }
+
+        System.setProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY, catalog.gameDir.toString());
+        CustomRecordsConfig.load(CustomRecordsRemakeMod.getConfigDir().resolve(CustomRecordsRemakeMod.MODID + "-common.toml"));
+
+        return catalog;
+    }
+
+    public static String getFileName(int index) {
+        return "record_" + index;
+    }
+
+    /**
+     * Deletes the catalog cache, so that the next load has to parse and probe everything again.
+     */
+    public void deleteCatalogCache() throws IOException {
+        Files.deleteIfExists(recordsDir.resolve(".cache").resolve("catalog.bin"));
+    }
+
+    public File getRecordsJson() {
+        return recordsJson;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(gameDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -1,33 +1,56 @@
 package com.aflyingcar.customrecordsremake;
 
+import com.aflyingcar.customrecordsremake.client.CustomRecordsClient;
+import com.aflyingcar.customrecordsremake.command.CustomRecordsCommand;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.network.CustomRecordsNetwork;
 import com.aflyingcar.customrecordsremake.packs.CustomRecordsRepositorySource;
+import com.aflyingcar.customrecordsremake.packs.PackBaker;
+import com.aflyingcar.customrecordsremake.packs.PackMetrics;
+import com.aflyingcar.customrecordsremake.packs.PackContents;
+import com.aflyingcar.customrecordsremake.profiling.LoadPhaseEvent;
+import com.aflyingcar.customrecordsremake.profiling.LoadTimeline;
+import com.aflyingcar.customrecordsremake.sync.AssetSyncService;
 import com.mojang.logging.LogUtils;
 import net.minecraft.core.Registry;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackType;
 import net.minecraft.sounds.SoundEvent;
+import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.AddPackFindersEvent;
+import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
+import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
+import net.minecraftforge.fml.event.lifecycle.FMLLoadCompleteEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import net.minecraftforge.fml.loading.FMLEnvironment;
 import net.minecraftforge.fml.loading.FMLLoader;
 import net.minecraftforge.registries.RegisterEvent;
 import org.slf4j.Logger;
 
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
 import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
 import com.aflyingcar.customrecordsremake.item.ModItems;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 
 @Mod(CustomRecordsRemakeMod .MODID)
 public class CustomRecordsRemakeMod {
     public static final String MODID = "customrecordsremake";
 
+    public static final String GAME_DIR_PROPERTY = MODID + ".gameDir";
+
     private static final Logger LOGGER = LogUtils.getLogger();
 
     public static Logger getLogger() {
@@ -35,50 +58,113 @@ public class CustomRecordsRemakeMod {
     }
 
     public static void initSounds(BiConsumer<SoundEvent, ResourceLocation> r) {
-        for(SoundEvent soundEvent : RecordJsonHandler.getSounds()) {
+        var event = LoadPhaseEvent.begin(LoadPhaseEvent.INIT_SOUNDS);
+
+        var sounds = RecordJsonHandler.getSounds();
+        for(SoundEvent soundEvent : sounds) {
             CustomRecordsRemakeMod.getLogger().debug("Initializing sound " + soundEvent.getLocation());
             r.accept(soundEvent, soundEvent.getLocation());
         }
+
+        event.finish(sounds.size(), 0, null);
     }
 
     public CustomRecordsRemakeMod() {
+        LoadTimeline.start();
         IEventBus modEventBus = FMLJavaModLoadingContext.get().getModEventBus();
 
-        // Load all records here
-        loadCustomRecordsJson();
+        // Load our config by hand, as some of it is needed before Forge would load it for us
+        var configEvent = LoadPhaseEvent.begin(LoadPhaseEvent.CONFIG);
+        var configPath = getConfigDir().resolve(MODID + "-common.toml");
+        CustomRecordsConfig.load(configPath);
+        configEvent.finish(0, configPath.toFile().length(), configPath.toString());
 
-        // Register every SoundEvent
-        FMLJavaModLoadingContext.get().getModEventBus().addListener((RegisterEvent event) -> {
-            var soundEventRegistry = Registry.SOUND_EVENT_REGISTRY;
+        // Load all records in the background. Nothing needs them until the registries are populated, so other mods can
+        //   be constructed in the meantime.
+        startLoadingRecords(FMLEnvironment.dist);
 
-            if (soundEventRegistry.equals(event.getRegistryKey())) {
-                CustomRecordsRemakeMod.getLogger().debug("Initializing all sounds!");
-                initSounds((sound, location) -> event.register(soundEventRegistry, location, () -> sound));
-            }
-        });
+        var registryMode = CustomRecordsConfig.REGISTRY_MODE.get();
+
+        // Register every SoundEvent. Variant discs are played by the client straight from sounds.json, so in that mode
+        //   nothing needs registering at all.
+        if(registryMode == ModItems.Mode.PER_RECORD) {
+            FMLJavaModLoadingContext.get().getModEventBus().addListener((RegisterEvent event) -> {
+                var soundEventRegistry = Registry.SOUND_EVENT_REGISTRY;
 
-        getLogger().info("Registering an item supplier for every record loaded from JSON.");
-        RecordJsonHandler.getRecords().forEach((name, record) -> ModItems.ITEMS.register(name, record::getItem));
+                if (soundEventRegistry.equals(event.getRegistryKey())) {
+                    awaitCatalog("Sound registration");
+                    CustomRecordsRemakeMod.getLogger().debug("Initializing all sounds!");
+                    initSounds((sound, location) -> event.register(soundEventRegistry, location, () -> sound));
+                }
+            });
+        }
 
         // Register every music disc
-        ModItems.register(modEventBus);
+        getLogger().info("Registering items for every record loaded from JSON (mode " + registryMode + ").");
+        ModItems.registerRecords(() -> awaitCatalog("Item registration"), registryMode, modEventBus);
+
+        CustomRecordsNetwork.register();
 
         // Register the event listener to make sure that we get a chance to inject the virtual resource pack containing
         //   the records + recipes
         modEventBus.addListener(this::injectPackRepository);
 
+        modEventBus.addListener(this::clientSetup);
+        modEventBus.addListener(this::loadComplete);
+
+        MinecraftForge.EVENT_BUS.addListener(this::registerCommands);
+        MinecraftForge.EVENT_BUS.addListener(AssetSyncService::onLogin);
+        MinecraftForge.EVENT_BUS.addListener(AssetSyncService::onLogout);
+        PackMetrics.startPeriodicSummary(CustomRecordsConfig.METRICS_LOG_INTERVAL_MINUTES.get());
+
         MinecraftForge.EVENT_BUS.register(this);
     }
 
     private void injectPackRepository(AddPackFindersEvent event) {
-        event.addRepositorySource(new CustomRecordsRepositorySource());
+        awaitResources("Pack finders");
+        event.addRepositorySource(new CustomRecordsRepositorySource(event.getPackType()));
+    }
+
+    private void registerCommands(RegisterCommandsEvent event) {
+        CustomRecordsCommand.register(event.getDispatcher());
+    }
+
+    private void clientSetup(FMLClientSetupEvent event) {
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> CustomRecordsClient.setup(event));
+    }
+
+    private void loadComplete(FMLLoadCompleteEvent event) {
+        LoadTimeline.complete();
     }
 
     private static File recordsJson;
-    private static String soundsJson;
+
+    /**
+     * Loads the record catalog in the background, see {@link #startLoadingRecords(Dist)}
+     */
+    private static CompletableFuture<RecordCatalog> catalogLoad;
+
+    /**
+     * Prepares everything derived from the catalog in the background once it has loaded
+     */
+    private static CompletableFuture<Void> resourcesLoad;
+
+    /**
+     * Gets the game directory. This can be overridden with '-Dcustomrecordsremake.gameDir=...' so that the record
+     *   loading code can be run outside of Forge, such as from the benchmarks.
+     *
+     * @return The game directory
+     */
+    public static Path getGameDir() {
+        var override = System.getProperty(GAME_DIR_PROPERTY);
+        if(override != null) {
+            return Paths.get(override);
+        }
+        return FMLLoader.getGamePath();
+    }
 
     public static Path getConfigDir() {
-        return FMLLoader.getGamePath().resolve("config");
+        return getGameDir().resolve("config");
     }
 
     public static Path getRecordsResourcesDir() {
@@ -103,13 +189,144 @@ public class CustomRecordsRemakeMod {
         return recordsJson;
     }
 
-    private static void loadCustomRecordsJson() {
-        File recordsJson = setupFiles();
+    /**
+     * Starts loading every record on a thread of its own. Once the catalog is published, everything that can be
+     *   prepared ahead of the first resource reload (sounds.json, texture preprocessing and the virtual pack's index and
+     *   generated resources) is prepared on the same thread.
+     * Anything that needs the catalog must first wait for it with {@link #awaitCatalog(String)}, or for everything with
+     *   {@link #awaitResources(String)}.
+     *
+     * @param dist The distribution being loaded for
+     */
+    private static void startLoadingRecords(Dist dist) {
+        var executor = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "CustomRecords Catalog Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        catalogLoad = CompletableFuture.supplyAsync(() -> loadCatalog(setupFiles()), executor);
+        resourcesLoad = catalogLoad.thenAcceptAsync(catalog -> prepareResources(catalog, dist), executor);
+        resourcesLoad.whenComplete((result, error) -> {
+            executor.shutdown();
+            if(error != null) {
+                getLogger().error("Failed to load records in the background!", error);
+            }
+        });
+    }
+
+    /**
+     * Waits for the catalog to finish loading, if it is being loaded in the background.
+     *
+     * @param waiter What is waiting for it, for the {@link LoadTimeline}
+     * @return The loaded catalog
+     */
+    public static RecordCatalog awaitCatalog(String waiter) {
+        if(catalogLoad == null) {
+            return RecordCatalog.current();
+        }
+
+        var start = System.nanoTime();
+        var catalog = catalogLoad.join();
+        LoadTimeline.waited(waiter, "the record catalog", start);
+        return catalog;
+    }
+
+    /**
+     * Waits for the catalog, and everything prepared from it, to finish loading, if it is being loaded in the
+     *   background.
+     *
+     * @param waiter What is waiting for it, for the {@link LoadTimeline}
+     */
+    public static void awaitResources(String waiter) {
+        if(resourcesLoad == null) {
+            return;
+        }
+
+        var start = System.nanoTime();
+        resourcesLoad.join();
+        LoadTimeline.waited(waiter, "the record catalog and its resources", start);
+    }
+
+    /**
+     * Loads every record from the given records.json, and generates the sounds.json for them.
+     *
+     * @param recordsJson A File pointing to the records.json file
+     */
+    public static void loadRecords(File recordsJson) {
+        loadRecords(recordsJson, Dist.CLIENT);
+    }
+
+    /**
+     * Loads every record from the given records.json. On the client, the sounds.json for them is generated too.
+     *
+     * @param recordsJson A File pointing to the records.json file
+     * @param dist The distribution being loaded for. A dedicated server never loads client resources, so only the
+     *             catalog itself is loaded there.
+     */
+    public static void loadRecords(File recordsJson, Dist dist) {
+        prepareSoundsJson(loadCatalog(recordsJson), dist);
+    }
+
+    private static RecordCatalog loadCatalog(File recordsJson) {
+        var catalogEvent = LoadPhaseEvent.begin(LoadPhaseEvent.CATALOG);
         RecordJsonHandler.handleConfig(recordsJson);
-        soundsJson = RecordJsonHandler.setupSoundsJson();
+        var catalog = RecordCatalog.current();
+        catalogEvent.finish(catalog.size(), recordsJson.length(), recordsJson.getPath());
+        return catalog;
+    }
+
+    /**
+     * Prepares everything derived from a freshly loaded catalog that would otherwise be done during the first resource
+     *   reload. Nothing is prepared for a pack type that an up to date baked pack will be served for.
+     */
+    private static void prepareResources(RecordCatalog catalog, Dist dist) {
+        if(!dist.isClient() || PackBaker.findCurrent(catalog, PackType.CLIENT_RESOURCES) == null) {
+            prepareSoundsJson(catalog, dist);
+
+            // Shrink any oversized record textures before the first resource reload stitches them into the atlas
+            if(dist.isClient()) {
+                var textureEvent = LoadPhaseEvent.begin(LoadPhaseEvent.TEXTURE_PREPROCESSING);
+                DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> CustomRecordsClient.preprocessTextures(catalog));
+                textureEvent.finish(catalog.size(), 0, null);
+            }
+        }
+
+        var prerenderEvent = LoadPhaseEvent.begin(LoadPhaseEvent.PACK_PRERENDER);
+        var contents = PackContents.forCatalog(catalog);
+        for(var type : dist.isClient() ? PackType.values() : new PackType[] { PackType.SERVER_DATA }) {
+            if(PackBaker.findCurrent(catalog, type) == null) {
+                contents.getIndex(type);
+                contents.getPayloads(type);
+            }
+        }
+        prerenderEvent.finish(catalog.size(), 0, null);
+    }
+
+    /**
+     * Generates the sounds.json for the given catalog, unless on a dedicated server.
+     */
+    private static void prepareSoundsJson(RecordCatalog catalog, Dist dist) {
+        if(!dist.isClient()) {
+            getLogger().info("Running on a dedicated server, client resources for " + catalog.size() + " records will not be generated.");
+            return;
+        }
+
+        // Records sharing identical assets are pointed at a single copy of them, which sounds.json depends on
+        var dedup = catalog.getAssetDedup();
+        if(!dedup.isEmpty()) {
+            getLogger().info("Found " + dedup.getOggAliasCount() + " .ogg and " + dedup.getTextureAliasCount() + " .png files identical to another record's. " +
+                             "Each is only served once, saving " + dedup.getBytesSaved() / 1024 + " KiB of reads, sound buffers and atlas sprites.");
+        }
+
+        // The catalog only generates its sounds.json when first asked for it, so do that now rather than during the
+        //   first resource reload
+        var soundsEvent = LoadPhaseEvent.begin(LoadPhaseEvent.SOUNDS_JSON);
+        var soundsJson = catalog.getSoundsJson();
+        soundsEvent.finish(catalog.size(), soundsJson.length, null);
     }
 
     public static String getSoundsJson() {
-        return soundsJson;
+        return new String(RecordCatalog.current().getSoundsJson(), StandardCharsets.UTF_8);
     }
 }
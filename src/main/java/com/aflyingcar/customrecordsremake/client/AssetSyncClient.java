@@ -0,0 +1,96 @@
+package com.aflyingcar.customrecordsremake.client;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.network.CustomRecordsNetwork;
+import com.aflyingcar.customrecordsremake.sync.CatalogAssets;
+import com.aflyingcar.customrecordsremake.sync.ContentStore;
+import com.aflyingcar.customrecordsremake.sync.SyncClientSession;
+import com.aflyingcar.customrecordsremake.sync.SyncMessage;
+import com.aflyingcar.customrecordsremake.sync.SyncedAssets;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import net.minecraft.client.Minecraft;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The client's end of the asset sync. A new sync starts every time a server sends its manifest, which it does when the
+ *   player logs in.
+ * The session is only ever touched from a single worker thread, so that writing downloaded assets to disk never holds up
+ *   the network thread or the client thread. Only reloading resources once the sync is done happens on the client thread.
+ */
+public class AssetSyncClient {
+    private static SyncClientSession session;
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "CustomRecords Asset Sync (Client)");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Handles a sync message sent by the server. May be called from any thread, the message is handled on the worker.
+     */
+    public static void handle(@NotNull SyncMessage message) {
+        runOnWorker(() -> {
+            if(message instanceof SyncMessage.Manifest && (session == null || session.isComplete())) {
+                if(session != null) {
+                    session.close();
+                }
+                session = createSession();
+            }
+
+            if(session == null) {
+                CustomRecordsRemakeMod.getLogger().warn("Ignoring sync message from the server, as no sync has been started.");
+                return;
+            }
+
+            session.handle(message);
+        });
+    }
+
+    /**
+     * Abandons the sync in progress, if any. Assets that were already synced keep being served until the next server
+     *   finishes syncing, which replaces them.
+     */
+    public static void reset() {
+        runOnWorker(() -> {
+            if(session != null) {
+                session.close();
+                session = null;
+            }
+        });
+    }
+
+    private static void runOnWorker(Runnable task) {
+        worker.execute(() -> {
+            try {
+                task.run();
+            } catch(RuntimeException e) {
+                CustomRecordsRemakeMod.getLogger().error("Asset sync failed", e);
+            }
+        });
+    }
+
+    private static SyncClientSession createSession() {
+        var catalog = RecordCatalog.current();
+        return new SyncClientSession(new ContentStore(ContentStore.getDefaultDir()),
+                                     name -> CatalogAssets.isKnown(catalog, name),
+                                     entry -> {
+                                         var info = CatalogAssets.find(catalog, entry.name());
+                                         return info != null && info.sha1().equals(entry.sha1());
+                                     },
+                                     CustomRecordsConfig.SYNC_MAX_ASSET_MIB.get() * 1024L * 1024L,
+                                     CustomRecordsNetwork::sendToServer,
+                                     synced -> {
+                                         if(SyncedAssets.publish(synced)) {
+                                             // Which assets are shared depends on which are synced
+                                             RecordCatalog.republish();
+                                             CustomRecordsRemakeMod.getLogger().info("Assets from the server have changed, reloading resources.");
+                                             Minecraft.getInstance().execute(() -> Minecraft.getInstance().reloadResourcePacks());
+                                         }
+                                     });
+    }
+}
@@ -0,0 +1,47 @@
+package com.aflyingcar.customrecordsremake.client;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.item.ModItems;
+import com.aflyingcar.customrecordsremake.packs.OggHeadCache;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sets up everything that only exists on the client. This is the only place the mod class reaches the client package
+ *   from, and only through {@link net.minecraftforge.fml.DistExecutor}, so none of the client classes (or the
+ *   Minecraft client classes they use) are ever loaded on a dedicated server.
+ */
+public class CustomRecordsClient {
+    public static void setup(@NotNull FMLClientSetupEvent event) {
+        var variantRecord = ModItems.getVariantRecord();
+        if(variantRecord != null) {
+            event.enqueueWork(() -> VariantDiscPlayer.registerItemProperties(variantRecord.get()));
+        }
+
+        if(CustomRecordsConfig.HOT_RELOAD_ENABLED.get()) {
+            RecordAssetWatcher.start(CustomRecordsRemakeMod.getRecordsResourcesDir(), CustomRecordsConfig.HOT_RELOAD_DEBOUNCE_MILLIS.get());
+        }
+
+        MinecraftForge.EVENT_BUS.addListener((ClientPlayerNetworkEvent.LoggingOut loggingOut) -> AssetSyncClient.reset());
+
+        // Have the most played records ready to start straight away, along with any disc the player picks up
+        OggHeadCache.get().warm(CustomRecordsConfig.OGG_HEAD_WARM_COUNT.get());
+        MinecraftForge.EVENT_BUS.addListener(OggPrefetcher::onClientTick);
+    }
+
+    /**
+     * Shrinks any oversized record textures before the first resource reload stitches them into the atlas. Records whose
+     *   texture is identical to another's are left out, as only the other's is served.
+     *
+     * @param catalog The freshly loaded catalog
+     */
+    public static void preprocessTextures(@NotNull RecordCatalog catalog) {
+        var dedup = catalog.getAssetDedup();
+        var served = catalog.getRecords().values().stream().filter(record -> !dedup.isTextureAlias(record.fileName)).toList();
+        TexturePreprocessor.preprocessAll(served, CustomRecordsConfig.MAX_TEXTURE_SIZE.get());
+    }
+}
@@ -0,0 +1,70 @@
+package com.aflyingcar.customrecordsremake.client;
+
+import com.aflyingcar.customrecordsremake.item.ItemCustomRecord;
+import com.aflyingcar.customrecordsremake.item.ItemVariantRecord;
+import com.aflyingcar.customrecordsremake.packs.OggHeadCache;
+import net.minecraft.client.Minecraft;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.event.TickEvent;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Watches the player's inventory, and fetches the start of the .ogg of every disc that enters it into the
+ *   {@link OggHeadCache}, so that it is ready by the time the disc is put in a jukebox.
+ */
+public class OggPrefetcher {
+    /**
+     * The inventory is checked once a second, which is far sooner than a disc can be picked up and played
+     */
+    private static final int CHECK_INTERVAL_TICKS = 20;
+
+    private static int ticks = 0;
+    private static Set<String> held = Set.of();
+
+    public static void onClientTick(@NotNull TickEvent.ClientTickEvent event) {
+        if(event.phase != TickEvent.Phase.END || ++ticks < CHECK_INTERVAL_TICKS) {
+            return;
+        }
+        ticks = 0;
+
+        var player = Minecraft.getInstance().player;
+        if(player == null || !OggHeadCache.get().isEnabled()) {
+            held = Set.of();
+            return;
+        }
+
+        var inventory = player.getInventory();
+        var now = new HashSet<String>();
+        for(int i = 0; i < inventory.getContainerSize(); ++i) {
+            var recordName = getRecordName(inventory.getItem(i));
+            if(recordName != null && now.add(recordName) && !held.contains(recordName)) {
+                OggHeadCache.get().prefetch(recordName);
+            }
+        }
+        held = now;
+    }
+
+    /**
+     * @return The filename of the record the given disc plays, or null if it is not one of our discs
+     */
+    @Nullable
+    private static String getRecordName(ItemStack stack) {
+        if(stack.isEmpty()) {
+            return null;
+        }
+
+        var item = stack.getItem();
+        if(item instanceof ItemVariantRecord) {
+            return ItemVariantRecord.getDiscId(stack);
+        }
+        if(item instanceof ItemCustomRecord record) {
+            // Sounds are named after the filename of their record
+            return record.getSound().getLocation().getPath();
+        }
+        return null;
+    }
+}
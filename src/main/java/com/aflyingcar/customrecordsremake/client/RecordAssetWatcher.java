@@ -0,0 +1,374 @@
+package com.aflyingcar.customrecordsremake.client;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.packs.DerivedTextureCache;
+import com.aflyingcar.customrecordsremake.packs.OggHeadCache;
+import com.aflyingcar.customrecordsremake.packs.RecordAssetReader;
+import com.aflyingcar.customrecordsremake.utils.DiscArchive;
+import com.aflyingcar.customrecordsremake.utils.RecordAssetProber;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+import net.minecraft.server.packs.resources.PreparableReloadListener;
+import net.minecraft.server.packs.resources.SimpleReloadInstance;
+import net.minecraft.util.Unit;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the records directory for changes to record assets, and applies them without a restart.
+ * Events are debounced, so that a batch of files being copied in only causes a single reload. Changed .ogg files only
+ *   need their cached reads dropped, as records are streamed from the pack each time they are played, unless they change
+ *   which records share an .ogg, in which case the sounds are reloaded to pick up the new sounds.json. Changed .png files
+ *   also need the models reloaded so that the item atlas is stitched again. Only the affected reload listeners are run,
+ *   rather than reloading every client resource. Anything that would change the registries (such as editing
+ *   records.json or a disc archive) cannot be applied, and is reported as needing a restart.
+ */
+public class RecordAssetWatcher implements Runnable {
+    /**
+     * What happened to a single asset across a batch of events
+     */
+    public enum ChangeType {
+        ADDED,
+        CHANGED,
+        REMOVED
+    }
+
+    /**
+     * The size and modification time of an asset, used to tell whether an event actually changed it
+     */
+    private record Stamp(long size, long lastModified) {
+        @Nullable
+        static Stamp of(Path path) {
+            try {
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch(IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static RecordAssetWatcher instance;
+
+    private final Path recordsDir;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<String, Stamp> stamps = new HashMap<>();
+
+    private boolean restartRequired = false;
+
+    private RecordAssetWatcher(Path recordsDir, long debounceMillis) throws IOException {
+        this.recordsDir = recordsDir;
+        this.debounceMillis = debounceMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        for(var record : RecordJsonHandler.getRecords().values()) {
+            for(var fileName : List.of(record.fileName + ".ogg", record.fileName + ".png")) {
+                var stamp = Stamp.of(recordsDir.resolve(fileName));
+                if(stamp != null) {
+                    stamps.put(fileName, stamp);
+                }
+            }
+        }
+        var recordsJsonStamp = Stamp.of(recordsDir.resolve("records.json"));
+        if(recordsJsonStamp != null) {
+            stamps.put("records.json", recordsJsonStamp);
+        }
+        for(var archive : DiscArchive.listArchives(recordsDir)) {
+            var stamp = Stamp.of(archive);
+            if(stamp != null) {
+                stamps.put(archive.getFileName().toString(), stamp);
+            }
+        }
+        for(var fragment : RecordJsonHandler.listFragments(recordsDir)) {
+            var stamp = Stamp.of(fragment);
+            if(stamp != null) {
+                stamps.put(getWatchedName(fragment), stamp);
+            }
+        }
+
+        recordsDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        var fragmentsDir = recordsDir.resolve(RecordJsonHandler.FRAGMENTS_DIR);
+        if(Files.isDirectory(fragmentsDir)) {
+            watchFragmentsDir(fragmentsDir);
+        }
+    }
+
+    private void watchFragmentsDir(Path fragmentsDir) throws IOException {
+        fragmentsDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * Starts watching the records directory on a background thread. Does nothing if the watcher is already running.
+     *
+     * @param recordsDir The records directory
+     * @param debounceMillis How long the directory must be quiet before changes are applied
+     */
+    public static synchronized void start(@NotNull Path recordsDir, long debounceMillis) {
+        if(instance != null) {
+            return;
+        }
+
+        try {
+            instance = new RecordAssetWatcher(recordsDir, debounceMillis);
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().error("Failed to watch " + recordsDir + " for changes, record assets will not be hot reloaded.", e);
+            return;
+        }
+
+        var thread = new Thread(instance, "CustomRecords Asset Watcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        CustomRecordsRemakeMod.getLogger().info("Watching " + recordsDir + " for changes to record assets");
+    }
+
+    public static synchronized void stop() {
+        if(instance != null) {
+            try {
+                instance.watchService.close();
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().warn("Failed to stop watching for changes to record assets", e);
+            }
+            instance = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        Set<String> pending = new HashSet<>();
+
+        try {
+            while(true) {
+                // Wait forever for the first event of a batch, then keep collecting until things go quiet
+                WatchKey key = pending.isEmpty() ? watchService.take() : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+
+                if(key == null) {
+                    applyChanges(pending);
+                    pending.clear();
+                    continue;
+                }
+
+                for(var event : key.pollEvents()) {
+                    if(event.context() instanceof Path changed && key.watchable() instanceof Path dir) {
+                        var path = dir.resolve(changed);
+                        pending.add(getWatchedName(path));
+
+                        if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && dir.equals(recordsDir) && changed.toString().equals(RecordJsonHandler.FRAGMENTS_DIR)) {
+                            onFragmentsDirCreated(path, pending);
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            CustomRecordsRemakeMod.getLogger().debug("Stopped watching for changes to record assets");
+        }
+    }
+
+    /**
+     * Starts watching a records.d that was created after the watcher started. Fragments may already have been copied
+     *   into it before it was registered, so those are treated as having just been created.
+     *
+     * @param fragmentsDir The new records.d directory
+     * @param pending The names of the files changed in the current batch
+     */
+    private void onFragmentsDirCreated(Path fragmentsDir, Set<String> pending) {
+        if(!Files.isDirectory(fragmentsDir)) {
+            return;
+        }
+
+        try {
+            watchFragmentsDir(fragmentsDir);
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to watch " + fragmentsDir + " for changes, changes to it will not be noticed.", e);
+            return;
+        }
+
+        for(var fragment : RecordJsonHandler.listFragments(recordsDir)) {
+            pending.add(getWatchedName(fragment));
+        }
+    }
+
+    /**
+     * @return The name a watched file is tracked by: its path relative to the records directory, with '/' separators
+     */
+    private String getWatchedName(Path path) {
+        return recordsDir.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Works out what actually changed in a batch of events, and applies it.
+     *
+     * @param fileNames The name of every file that had an event in this batch
+     */
+    private void applyChanges(Set<String> fileNames) {
+        var records = RecordJsonHandler.getRecords();
+        var reader = RecordAssetReader.get();
+
+        var dedup = RecordCatalog.current().getAssetDedup();
+
+        List<String> changes = new ArrayList<>();
+        var texturesChanged = false;
+
+        for(var fileName : fileNames) {
+            var dot = fileName.lastIndexOf('.');
+            var extension = dot < 0 ? "" : fileName.substring(dot);
+            var recordName = dot < 0 ? fileName : fileName.substring(0, dot);
+
+            // Disc archives are kept mapped and indexed from startup, so they are treated like records.json, as are the
+            //   fragments in records.d
+            var isFragment = fileName.startsWith(RecordJsonHandler.FRAGMENTS_DIR + "/") && extension.equals(".json");
+            var isRestartRequired = fileName.equals("records.json") || extension.equals(".zip") || isFragment;
+            var isAsset = (extension.equals(".ogg") || extension.equals(".png")) && records.containsKey(recordName);
+            if(!isRestartRequired && !isAsset) {
+                continue;
+            }
+
+            var path = recordsDir.resolve(fileName);
+            var before = stamps.get(fileName);
+            var after = Stamp.of(path);
+            if(after == null) {
+                stamps.remove(fileName);
+            } else {
+                stamps.put(fileName, after);
+            }
+
+            ChangeType change;
+            if(before == null && after == null || before != null && before.equals(after)) {
+                continue;
+            } else if(before == null) {
+                change = ChangeType.ADDED;
+            } else if(after == null) {
+                change = ChangeType.REMOVED;
+            } else {
+                change = ChangeType.CHANGED;
+            }
+
+            if(isRestartRequired) {
+                // Records are items and sounds, and those cannot be changed once the registries are frozen
+                if(!restartRequired) {
+                    CustomRecordsRemakeMod.getLogger().warn(fileName + " was " + change.name().toLowerCase() + ". Changes to records.json, records.d and disc archives cannot be applied while the game is running, a restart is required.");
+                    restartRequired = true;
+                }
+                continue;
+            }
+
+            changes.add(fileName + " " + change.name().toLowerCase());
+
+            reader.invalidate(path);
+            if(extension.equals(".png")) {
+                refreshTexture(records.get(recordName));
+                texturesChanged = true;
+            } else {
+                refreshOgg(records.get(recordName));
+            }
+        }
+
+        // A changed .ogg is picked up the next time it is played, unless it is now identical to another record's .ogg
+        //   (or no longer is), in which case sounds.json has changed too
+        var soundsChanged = !dedup.hasSameSources(RecordCatalog.current().getAssetDedup());
+
+        if(changes.isEmpty()) {
+            return;
+        }
+
+        CustomRecordsRemakeMod.getLogger().info("Record assets changed: [" + String.join(", ", changes) + "]");
+
+        if(texturesChanged || soundsChanged) {
+            reload(texturesChanged, soundsChanged);
+        }
+    }
+
+    /**
+     * Runs only the reload listeners that depend on record assets which changed, rather than reloading every client
+     *   resource. The packs already mounted were opened over the catalog from before the change, so the listeners are
+     *   run over freshly opened copies of the selected packs, which are closed again once the reload is done.
+     *
+     * @param textures True if a record's texture changed, so the models and the item atlas must be rebuilt
+     * @param sounds True if sounds.json changed, so the sounds must be reloaded
+     */
+    private static void reload(boolean textures, boolean sounds) {
+        var minecraft = Minecraft.getInstance();
+        minecraft.execute(() -> {
+            List<PreparableReloadListener> listeners = new ArrayList<>();
+            if(textures) {
+                listeners.add(minecraft.getModelManager());
+                listeners.add(minecraft.getItemRenderer());
+            }
+            if(sounds) {
+                listeners.add(minecraft.getSoundManager());
+            }
+
+            var reloading = textures && sounds ? "models and sounds" : textures ? "models" : "sounds";
+            CustomRecordsRemakeMod.getLogger().info("Reloading " + reloading + " to pick up changed record assets");
+
+            var resourceManager = new MultiPackResourceManager(PackType.CLIENT_RESOURCES, minecraft.getResourcePackRepository().openAllSelected());
+            SimpleReloadInstance.of(resourceManager, listeners, Util.backgroundExecutor(), minecraft, CompletableFuture.completedFuture(Unit.INSTANCE))
+                    .done()
+                    .whenComplete((result, error) -> {
+                        resourceManager.close();
+                        if(error != null) {
+                            CustomRecordsRemakeMod.getLogger().error("Failed to reload changed record assets", error);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Re-hashes a changed .ogg, so that it is only shared with records that still have an identical one.
+     *
+     * @param record The record whose .ogg has changed
+     */
+    private void refreshOgg(RecordJsonHandler.Record record) {
+        try {
+            var info = RecordAssetProber.probe(recordsDir, record.fileName + ".ogg", null);
+            RecordCatalog.update(record.fileName, r -> r.toBuilder().oggInfo(info).build());
+            OggHeadCache.get().invalidate(record.fileName);
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().error("Changed sound '" + record.fileName + ".ogg' could not be read: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-hashes a changed texture, and scales it down again if it is too large.
+     *
+     * @param record The record whose texture has changed
+     */
+    private void refreshTexture(RecordJsonHandler.Record record) {
+        try {
+            var info = RecordAssetProber.probe(recordsDir, record.fileName + ".png", null);
+            var updated = RecordCatalog.update(record.fileName, r -> r.toBuilder().textureInfo(info).build());
+            if(updated != null) {
+                TexturePreprocessor.preprocess(updated, CustomRecordsConfig.MAX_TEXTURE_SIZE.get());
+            }
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().error("Changed texture '" + record.fileName + ".png' could not be read: " + e.getMessage());
+            DerivedTextureCache.put(record.fileName, null);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.aflyingcar.customrecordsremake.client;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.packs.DerivedTextureCache;
+import com.aflyingcar.customrecordsremake.packs.RecordAssetReader;
+import com.aflyingcar.customrecordsremake.utils.Parallel;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import com.mojang.blaze3d.platform.NativeImage;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Decodes and validates every record texture before the first resource reload, and downscales any that are larger
+ *   than the configured maximum. Large disc art would otherwise take up a lot of space in the item atlas, and slow down
+ *   stitching it on every reload.
+ * Downscaled copies are kept in the {@link DerivedTextureCache}, so each texture is only scaled once.
+ */
+public class TexturePreprocessor {
+    /**
+     * Textures are stored in the atlas as RGBA
+     */
+    private static final int ATLAS_BYTES_PER_PIXEL = 4;
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_HEADER_SIZE = 24;
+
+    /**
+     * The outcome of preprocessing a single texture
+     *
+     * @param recordName The filename of the record the texture belongs to
+     * @param width The width of the original texture
+     * @param height The height of the original texture
+     * @param servedWidth The width of the texture that will be served
+     * @param servedHeight The height of the texture that will be served
+     * @param decodeNanos How long it took to decode the original texture, or 0 if a cached copy was used
+     */
+    public record Result(@NotNull String recordName, int width, int height, int servedWidth, int servedHeight, long decodeNanos) {
+        public boolean isDownscaled() {
+            return servedWidth != width || servedHeight != height;
+        }
+
+        public boolean isCached() {
+            return decodeNanos == 0;
+        }
+
+        /**
+         * @return How many fewer bytes the served texture takes up in the atlas than the original would have
+         */
+        public long getAtlasBytesSaved() {
+            return ((long)width * height - (long)servedWidth * servedHeight) * ATLAS_BYTES_PER_PIXEL;
+        }
+    }
+
+    /**
+     * Preprocesses the texture of every given record in parallel.
+     *
+     * @param records The records to preprocess the textures of
+     * @param maxSize The largest width or height a texture may have before it is scaled down, or 0 to serve every
+     *                texture as it is
+     */
+    public static void preprocessAll(@NotNull Collection<RecordJsonHandler.Record> records, int maxSize) {
+        if(maxSize <= 0 || records.isEmpty()) {
+            return;
+        }
+
+        var start = System.nanoTime();
+
+        // Decoding and scaling is CPU bound, so there is no point in using more threads than there are cores
+        Collection<Result> results = Parallel.parallelMap(records, Runtime.getRuntime().availableProcessors(), record -> {
+            try {
+                return preprocess(record, maxSize);
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().error("Texture '" + record.fileName + ".png' for record '" + record.name + "' is not a valid PNG and will be missing in game: " + e.getMessage());
+                return null;
+            }
+        }).stream().filter(Objects::nonNull).toList();
+
+        removeUnusedCopies();
+
+        var downscaled = results.stream().filter(Result::isDownscaled).count();
+        var cached = results.stream().filter(Result::isCached).count();
+        var decodeNanos = results.stream().mapToLong(Result::decodeNanos).sum();
+        var bytesSaved = results.stream().mapToLong(Result::getAtlasBytesSaved).sum();
+
+        CustomRecordsRemakeMod.getLogger().info("Preprocessed " + results.size() + " record textures in " + (System.nanoTime() - start) / 1_000_000 + "ms (" +
+                                                downscaled + " downscaled to fit " + maxSize + "x" + maxSize + ", " + cached + " reused from cache, " +
+                                                decodeNanos / 1_000_000 + "ms spent decoding), saving " + bytesSaved / 1024 + " KiB of atlas space");
+
+        results.stream().filter(r -> !r.isCached()).max(Comparator.comparingLong(Result::decodeNanos)).ifPresent(slowest ->
+                CustomRecordsRemakeMod.getLogger().info("Slowest texture to decode was '" + slowest.recordName() + ".png' (" + slowest.width() + "x" + slowest.height() + ") at " + slowest.decodeNanos() / 1_000_000 + "ms"));
+    }
+
+    /**
+     * Preprocesses the texture of a single record, and updates the {@link DerivedTextureCache} with the result.
+     *
+     * @param record The record to preprocess the texture of
+     * @param maxSize The largest width or height the texture may have before it is scaled down, or 0 to never scale it
+     * @return The outcome, or null if the record has no texture
+     * @throws IOException If the texture could not be read or is not a valid PNG
+     */
+    @Nullable
+    public static Result preprocess(@NotNull RecordJsonHandler.Record record, int maxSize) throws IOException {
+        var info = record.textureInfo;
+        if(info == null) {
+            DerivedTextureCache.put(record.fileName, null);
+            return null;
+        }
+
+        var recordsDir = CustomRecordsRemakeMod.getRecordsResourcesDir();
+        var fileName = record.fileName + ".png";
+        var derivedPath = DerivedTextureCache.getPathFor(info.sha1(), maxSize);
+
+        // This texture has already been scaled down, so only the headers need to be read for the report
+        if(Files.exists(derivedPath)) {
+            try(var original = RecordAssetReader.get().open(recordsDir, fileName, info);
+                var derived = Files.newInputStream(derivedPath)) {
+                var originalHeader = readHeader(original);
+                var derivedHeader = readHeader(derived);
+                if(originalHeader != null && derivedHeader != null) {
+                    DerivedTextureCache.put(record.fileName, derivedPath);
+                    return new Result(record.fileName, originalHeader.getInt(16), originalHeader.getInt(20), derivedHeader.getInt(16), derivedHeader.getInt(20), 0);
+                }
+            }
+        }
+
+        var start = System.nanoTime();
+        try(var stream = RecordAssetReader.get().open(recordsDir, fileName, info);
+            var image = NativeImage.read(stream)) {
+            var decodeNanos = Math.max(1, System.nanoTime() - start);
+            var width = image.getWidth();
+            var height = image.getHeight();
+
+            CustomRecordsRemakeMod.getLogger().debug("Decoded '" + fileName + "' (" + width + "x" + height + ") in " + decodeNanos / 1_000 + "us");
+
+            // Sprites that are not a power of two in size lower the mipmap level of the whole atlas
+            if(Integer.bitCount(width) != 1 || Integer.bitCount(height) != 1) {
+                CustomRecordsRemakeMod.getLogger().warn("Texture '" + fileName + "' is " + width + "x" + height + ", which is not a power of two in size. This can reduce the mipmap level of every item texture.");
+            }
+
+            var largest = Math.max(width, height);
+            if(maxSize <= 0 || largest <= maxSize) {
+                DerivedTextureCache.put(record.fileName, null);
+                return new Result(record.fileName, width, height, width, height, decodeNanos);
+            }
+
+            var scaledWidth = Math.max(1, (int)((long)width * maxSize / largest));
+            var scaledHeight = Math.max(1, (int)((long)height * maxSize / largest));
+            try(var scaled = new NativeImage(image.format(), scaledWidth, scaledHeight, false)) {
+                image.resizeSubRectTo(0, 0, width, height, scaled);
+
+                // Write to a temporary file first so that a half-written copy is never picked up
+                Files.createDirectories(derivedPath.getParent());
+                var temp = Files.createTempFile(derivedPath.getParent(), info.sha1(), ".tmp");
+                try {
+                    scaled.writeToFile(temp);
+                    Files.move(temp, derivedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+
+            CustomRecordsRemakeMod.getLogger().debug("Scaled '" + fileName + "' down from " + width + "x" + height + " to " + scaledWidth + "x" + scaledHeight);
+
+            DerivedTextureCache.put(record.fileName, derivedPath);
+            return new Result(record.fileName, width, height, scaledWidth, scaledHeight, decodeNanos);
+        }
+    }
+
+    /**
+     * Reads the signature and IHDR chunk at the start of a PNG, which hold its width (at 16) and height (at 20).
+     *
+     * @return The header, or null if the stream is not a PNG
+     */
+    @Nullable
+    private static ByteBuffer readHeader(InputStream stream) throws IOException {
+        var header = ByteBuffer.wrap(stream.readNBytes(PNG_HEADER_SIZE));
+        if(header.limit() < PNG_HEADER_SIZE || header.getLong(0) != PNG_SIGNATURE) {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * Deletes every downscaled copy that is no longer served for any record, such as those of textures that have since
+     *   been changed or copies made for a different maximum size.
+     */
+    private static void removeUnusedCopies() {
+        var cacheDir = DerivedTextureCache.getCacheDir();
+        if(!Files.isDirectory(cacheDir)) {
+            return;
+        }
+
+        var inUse = new HashSet<Path>();
+        for(var record : RecordJsonHandler.getRecords().values()) {
+            var derived = DerivedTextureCache.get(record.fileName);
+            if(derived != null) {
+                inUse.add(derived);
+            }
+        }
+
+        try(Stream<Path> files = Files.list(cacheDir)) {
+            for(var file : files.filter(p -> !inUse.contains(p)).toList()) {
+                Files.deleteIfExists(file);
+                CustomRecordsRemakeMod.getLogger().debug("Removed unused texture copy '" + file.getFileName() + "'");
+            }
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to clean up unused texture copies in '" + cacheDir + "'", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.aflyingcar.customrecordsremake.client;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.item.ItemVariantRecord;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.item.ItemProperties;
+import net.minecraft.client.resources.sounds.AbstractTickableSoundInstance;
+import net.minecraft.client.resources.sounds.SoundInstance;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraft.sounds.SoundEvent;
+import net.minecraft.sounds.SoundSource;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.JukeboxBlock;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plays the records put into jukeboxes as variant discs. Vanilla only knows how to play a record from a registered item,
+ *   so this keeps track of what is playing in each jukebox itself, and stops it once the jukebox is emptied.
+ * Only ever used from the client thread.
+ */
+public class VariantDiscPlayer {
+    private static final Map<BlockPos, JukeboxSound> playing = new HashMap<>();
+
+    /**
+     * Registers the item property that picks a variant disc's model. Must be called from the client setup's main
+     *   thread work.
+     *
+     * @param item The shared record item
+     */
+    public static void registerItemProperties(@NotNull ItemVariantRecord item) {
+        ItemProperties.register(item, ItemVariantRecord.DISC_PROPERTY, (stack, level, entity, seed) -> ItemVariantRecord.getModelPredicate(stack));
+    }
+
+    /**
+     * Starts playing a record in the given jukebox, replacing whatever was playing in it.
+     *
+     * @param pos The position of the jukebox
+     * @param discId The filename of the record to play
+     */
+    public static void play(@NotNull BlockPos pos, @NotNull String discId) {
+        var minecraft = Minecraft.getInstance();
+        var soundManager = minecraft.getSoundManager();
+
+        // Forget about anything that was stopped without us, such as by leaving the world
+        playing.values().removeIf(sound -> !soundManager.isActive(sound));
+
+        var previous = playing.remove(pos);
+        if(previous != null) {
+            soundManager.stop(previous);
+        }
+
+        var record = RecordCatalog.current().getRecords().get(discId);
+        if(record == null) {
+            CustomRecordsRemakeMod.getLogger().warn("Server asked to play record '" + discId + "', which is not loaded on this client! Make sure the server and client have the same records.");
+            return;
+        }
+
+        var sound = new JukeboxSound(record.sound, pos);
+        playing.put(pos, sound);
+
+        minecraft.gui.setNowPlaying(Component.translatable("item." + CustomRecordsRemakeMod.MODID + "." + record.fileName + ".desc"));
+        soundManager.play(sound);
+    }
+
+    /**
+     * A record playing in a jukebox, set up the same way as SimpleSoundInstance#forRecord
+     */
+    private static class JukeboxSound extends AbstractTickableSoundInstance {
+        private final BlockPos pos;
+
+        JukeboxSound(SoundEvent sound, BlockPos pos) {
+            super(sound, SoundSource.RECORDS, SoundInstance.createUnseededRandom());
+
+            this.pos = pos;
+            this.volume = 4.0F;
+            this.attenuation = SoundInstance.Attenuation.LINEAR;
+            this.x = pos.getX() + 0.5;
+            this.y = pos.getY() + 0.5;
+            this.z = pos.getZ() + 0.5;
+        }
+
+        @Override
+        public void tick() {
+            var level = Minecraft.getInstance().level;
+            if(level == null) {
+                stop();
+                return;
+            }
+
+            var state = level.getBlockState(pos);
+            if(!state.is(Blocks.JUKEBOX) || !state.getValue(JukeboxBlock.HAS_RECORD)) {
+                playing.remove(pos, this);
+                stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.aflyingcar.customrecordsremake.command;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.packs.OggHeadCache;
+import com.aflyingcar.customrecordsremake.packs.PackBaker;
+import com.aflyingcar.customrecordsremake.packs.PackContents;
+import com.aflyingcar.customrecordsremake.packs.PackMetrics;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.packs.PackType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The '/customrecords' command.
+ *
+ * Subcommands:
+ *   stats: Shows what the virtual resource pack has served so far, and how well the ogg head cache is doing
+ *   bake: Writes the virtual resource pack and data pack out as zips, see {@link PackBaker}
+ */
+public class CustomRecordsCommand {
+    /**
+     * Only operators may see the stats, as they reveal how the server is being used, or bake packs, as that reads every
+     *   record asset
+     */
+    private static final int PERMISSION_LEVEL = 2;
+
+    public static void register(@NotNull CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal("customrecords")
+                .requires(source -> source.hasPermission(PERMISSION_LEVEL))
+                .then(Commands.literal("stats").executes(CustomRecordsCommand::stats))
+                .then(Commands.literal("bake").executes(CustomRecordsCommand::bake)));
+    }
+
+    private static int stats(CommandContext<CommandSourceStack> context) {
+        var source = context.getSource();
+        var snapshot = PackMetrics.get().snapshot();
+
+        source.sendSuccess(Component.literal(RecordJsonHandler.getRecords().size() + " records loaded, metrics collected over " + snapshot.uptimeNanos() / 1_000_000_000L + "s"), false);
+        source.sendSuccess(Component.literal("hasResource: " + snapshot.hasResourceCalls() + " calls (" + snapshot.hasResourceHits() + " hits)"), false);
+        snapshot.kinds().forEach((kind, metrics) -> {
+            if(metrics.calls() > 0) {
+                source.sendSuccess(Component.literal(kind + ": " + metrics), false);
+            }
+        });
+
+        // Only ever filled in on a client, so this is only shown in single player or on a LAN host
+        var heads = OggHeadCache.currentStats();
+        if(heads.getPlays() > 0) {
+            source.sendSuccess(Component.literal("Ogg head cache: " + heads.summarize()), false);
+        }
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int bake(CommandContext<CommandSourceStack> context) {
+        var source = context.getSource();
+        var server = source.getServer();
+        var contents = PackContents.forCurrentCatalog();
+
+        source.sendSuccess(Component.literal("Baking " + contents.getCatalog().size() + " records into " + PackBaker.getBakedDir() + "..."), true);
+
+        // Every asset is read, so do not hold up the server while that happens
+        CompletableFuture.runAsync(() -> {
+            for(var type : PackType.values()) {
+                try {
+                    var result = PackBaker.bake(contents, type);
+                    server.execute(() -> source.sendSuccess(Component.literal("Baked " + result.entries() + " resources into " + result.path().getFileName() + " (sha1 " + result.sha1() + ")"), true));
+                } catch(IOException e) {
+                    CustomRecordsRemakeMod.getLogger().error("Failed to bake the " + type.getDirectory() + " pack!", e);
+                    server.execute(() -> source.sendFailure(Component.literal("Failed to bake the " + type.getDirectory() + " pack: " + e.getMessage())));
+                }
+            }
+        }).exceptionally(e -> {
+            // Anything other than an IOException would otherwise be dropped along with the future
+            var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            CustomRecordsRemakeMod.getLogger().error("Failed to bake packs!", cause);
+            server.execute(() -> source.sendFailure(Component.literal("Failed to bake packs: " + cause)));
+            return null;
+        });
+
+        return Command.SINGLE_SUCCESS;
+    }
+}
@@ -0,0 +1,219 @@
+package com.aflyingcar.customrecordsremake.config;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.item.ModItems;
+import com.aflyingcar.customrecordsremake.packs.RecordAssetReader;
+import com.electronwill.nightconfig.core.file.CommentedFileConfig;
+import com.electronwill.nightconfig.core.io.WritingMode;
+import net.minecraftforge.common.ForgeConfigSpec;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * All options for this mod, stored in 'config/customrecordsremake-common.toml'.
+ * This file is loaded by hand from the mod constructor rather than being registered with Forge, as some of these
+ *   options are needed before Forge would normally load configs (which happens after registries are populated).
+ */
+public class CustomRecordsConfig {
+    public static final ForgeConfigSpec SPEC;
+
+    /**
+     * How .ogg and .png files from the config directory are read when served to the game
+     */
+    public static final ForgeConfigSpec.EnumValue<RecordAssetReader.Mode> ASSET_IO_MODE;
+
+    /**
+     * The size of the buffer placed in front of channel-backed asset streams
+     */
+    public static final ForgeConfigSpec.IntValue ASSET_READ_AHEAD_KIB;
+
+    /**
+     * The maximum number of memory mappings kept open at once
+     */
+    public static final ForgeConfigSpec.IntValue ASSET_MAX_MAPPINGS;
+
+    /**
+     * Assets larger than this are read through a channel instead of being mapped
+     */
+    public static final ForgeConfigSpec.IntValue ASSET_MAX_MAPPED_FILE_MIB;
+
+    /**
+     * How much of the start of each .ogg is kept in memory
+     */
+    public static final ForgeConfigSpec.IntValue OGG_HEAD_KIB;
+
+    /**
+     * How much memory the starts of .ogg files may take up in total
+     */
+    public static final ForgeConfigSpec.IntValue OGG_HEAD_CACHE_MIB;
+
+    /**
+     * How many of the most played records have the start of their .ogg fetched at startup
+     */
+    public static final ForgeConfigSpec.IntValue OGG_HEAD_WARM_COUNT;
+
+    /**
+     * Record textures larger than this are scaled down before being served
+     */
+    public static final ForgeConfigSpec.IntValue MAX_TEXTURE_SIZE;
+
+    /**
+     * Whether to watch the records directory for changed assets and apply them without a restart
+     */
+    public static final ForgeConfigSpec.BooleanValue HOT_RELOAD_ENABLED;
+
+    /**
+     * How long the records directory must be quiet before a batch of changes is applied
+     */
+    public static final ForgeConfigSpec.IntValue HOT_RELOAD_DEBOUNCE_MILLIS;
+
+    /**
+     * How often a summary of what the virtual resource pack has served is logged
+     */
+    public static final ForgeConfigSpec.IntValue METRICS_LOG_INTERVAL_MINUTES;
+
+    /**
+     * Whether each record is registered as its own item, or every record shares a single item
+     */
+    public static final ForgeConfigSpec.EnumValue<ModItems.Mode> REGISTRY_MODE;
+
+    /**
+     * Whether the server sends its record assets to players that do not have them
+     */
+    public static final ForgeConfigSpec.BooleanValue SYNC_ENABLED;
+
+    /**
+     * The size of each part of an asset the server sends
+     */
+    public static final ForgeConfigSpec.IntValue SYNC_CHUNK_KIB;
+
+    /**
+     * The most parts of assets the server sends to a player before waiting to hear back from them
+     */
+    public static final ForgeConfigSpec.IntValue SYNC_WINDOW;
+
+    /**
+     * The largest asset a player downloads from a server
+     */
+    public static final ForgeConfigSpec.IntValue SYNC_MAX_ASSET_MIB;
+
+    /**
+     * Whether packs written by '/customrecords bake' are served in place of the generated pack while they are up to date
+     */
+    public static final ForgeConfigSpec.BooleanValue USE_BAKED_PACKS;
+
+    static {
+        ForgeConfigSpec.Builder builder = new ForgeConfigSpec.Builder();
+
+        builder.comment("Options controlling how record assets (.ogg and .png files) are read from disk").push("io");
+        ASSET_IO_MODE = builder
+                .comment("How record assets are read.",
+                         "  MAPPED:  Memory-map each file, falling back to CHANNEL for files larger than maxMappedFileMiB.",
+                         "           On Windows, a mapped file cannot be replaced or deleted until its mapping is released",
+                         "  CHANNEL: Read each file through a FileChannel with a read-ahead buffer",
+                         "  STREAM:  Read each file through a plain FileInputStream")
+                .defineEnum("mode", RecordAssetReader.Mode.CHANNEL);
+        ASSET_READ_AHEAD_KIB = builder
+                .comment("Size of the read-ahead buffer used for CHANNEL reads, in KiB")
+                .defineInRange("readAheadKiB", 64, 4, 4096);
+        ASSET_MAX_MAPPINGS = builder
+                .comment("Maximum number of files kept memory-mapped at once in MAPPED mode")
+                .defineInRange("maxMappings", 64, 1, 4096);
+        ASSET_MAX_MAPPED_FILE_MIB = builder
+                .comment("Files larger than this (in MiB) are read as if mode were CHANNEL")
+                .defineInRange("maxMappedFileMiB", 32, 1, 1024);
+        builder.pop();
+
+        builder.comment("Options for keeping the start of each record's .ogg in memory, so that discs start playing without waiting on disk (client only)").push("oggHeads");
+        OGG_HEAD_KIB = builder
+                .comment("How much of the start of each .ogg to keep in memory, in KiB. Set to 0 to keep nothing.")
+                .defineInRange("headKiB", 64, 0, 4096);
+        OGG_HEAD_CACHE_MIB = builder
+                .comment("How much memory the kept starts of .ogg files may take up in total, in MiB. The least recently played are dropped first.")
+                .defineInRange("maxCacheMiB", 16, 1, 1024);
+        OGG_HEAD_WARM_COUNT = builder
+                .comment("How many of the most played records have the start of their .ogg loaded at startup.",
+                         "Discs are also loaded when they enter the player's inventory.")
+                .defineInRange("warmCount", 16, 0, 4096);
+        builder.pop();
+
+        builder.comment("Options for preparing record textures before they are stitched into the item atlas (client only)").push("textures");
+        MAX_TEXTURE_SIZE = builder
+                .comment("Record textures wider or taller than this (in pixels) are scaled down to fit, keeping their aspect ratio.",
+                         "Scaled copies are cached, so each texture is only scaled once. Set to 0 to serve every texture as it is.")
+                .defineInRange("maxSize", 256, 0, 8192);
+        builder.pop();
+
+        builder.comment("Options for applying changes to record assets while the game is running (client only)").push("hotReload");
+        HOT_RELOAD_ENABLED = builder
+                .comment("Watch the records directory, and apply changed .ogg and .png files without restarting.",
+                         "Changes to records.json (such as adding new records) still require a restart.")
+                .define("enabled", false);
+        HOT_RELOAD_DEBOUNCE_MILLIS = builder
+                .comment("How long (in milliseconds) the records directory must go without changes before they are applied")
+                .defineInRange("debounceMillis", 500, 50, 60000);
+        builder.pop();
+
+        builder.comment("Options for the metrics collected about what the virtual resource pack serves").push("metrics");
+        METRICS_LOG_INTERVAL_MINUTES = builder
+                .comment("How often (in minutes) to log a summary of the metrics, if anything has been served since the last one.",
+                         "Set to 0 to never log a summary. The metrics can always be seen with '/customrecords stats'.")
+                .defineInRange("logIntervalMinutes", 10, 0, 1440);
+        builder.pop();
+
+        builder.comment("Options for how records are registered with the game").push("registry");
+        REGISTRY_MODE = builder
+                .comment("How records are registered. The server and every client must use the same mode.",
+                         "  PER_RECORD: Every record is its own item with its own sound event",
+                         "  VARIANT:    Every record shares a single item, and which record a disc plays is stored on the item.",
+                         "              This keeps the registries (and the data sent to players when they join) small for very large",
+                         "              collections, but discs can only be obtained by crafting or with '/give'.")
+                .defineEnum("mode", ModItems.Mode.PER_RECORD);
+        builder.pop();
+
+        builder.comment("Options for sending record assets from the server to players").push("sync");
+        SYNC_ENABLED = builder
+                .comment("Send players any .ogg and .png files of the server's records that they do not have, or that differ from their own (server only).",
+                         "Clients keep what they receive, so each file is only ever sent to a player once.")
+                .define("enabled", true);
+        SYNC_CHUNK_KIB = builder
+                .comment("Size of each part of a file sent to a player, in KiB (server only)")
+                .defineInRange("chunkSizeKiB", 32, 1, 512);
+        SYNC_WINDOW = builder
+                .comment("How many parts may be sent to a player before the server waits for them to confirm they have been received (server only).",
+                         "Higher values send files faster, at the cost of more memory used by each connection.")
+                .defineInRange("window", 8, 1, 256);
+        SYNC_MAX_ASSET_MIB = builder
+                .comment("The largest file (in MiB) that will be downloaded from a server (client only).",
+                         "Only files of records listed in the player's own records.json are ever downloaded.")
+                .defineInRange("maxAssetMiB", 64, 1, 1024);
+        builder.pop();
+
+        builder.comment("Options for the static resource and data packs written by '/customrecords bake'").push("bake");
+        USE_BAKED_PACKS = builder
+                .comment("Serve the baked packs as they are instead of generating resources at startup, as long as they were baked from the records currently loaded.",
+                         "Baked packs that are out of date are ignored, and resources are generated as usual.")
+                .define("enabled", true);
+        builder.pop();
+
+        SPEC = builder.build();
+    }
+
+    /**
+     * Loads (and corrects, if needed) the config file at the given path.
+     *
+     * @param path The path of the config file
+     */
+    public static void load(@NotNull Path path) {
+        CommentedFileConfig config = CommentedFileConfig.builder(path)
+                .sync()
+                .preserveInsertionOrder()
+                .writingMode(WritingMode.REPLACE)
+                .build();
+        config.load();
+        SPEC.setConfig(config);
+
+        CustomRecordsRemakeMod.getLogger().debug("Loaded config from " + path);
+    }
+}
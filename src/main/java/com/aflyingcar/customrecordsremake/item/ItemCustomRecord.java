@@ -7,6 +7,8 @@ import net.minecraft.world.item.RecordItem;
 import org.jetbrains.annotations.NotNull;
 
 public class ItemCustomRecord extends RecordItem {
+    private static final int TICKS_PER_SECOND = 20;
+
     /**
      * Factory class for creating a new ItemCustomRecord
      */
@@ -17,6 +19,10 @@ public class ItemCustomRecord extends RecordItem {
 
         private Item.Properties properties;
 
+        /**
+         * @param song The sound played by this record
+         * @param songLength The length of the song, in seconds
+         */
         RecordItemBuilder(@NotNull SoundEvent song, int songLength) {
             this.comparatorValue = 1; // TODO: Do we want to allow this value to be modifiable from records.json?
             this.song = song;
@@ -46,7 +52,7 @@ public class ItemCustomRecord extends RecordItem {
     }
 
     protected ItemCustomRecord(SoundEvent sound, int length, int comparatorValue, Item.Properties properties) {
-        // TODO: Do we need to multiply 'length' by 20?
-        super(comparatorValue, () -> sound, properties, length);
+        // RecordItem wants the length in ticks, but records.json (and the length detection) work in seconds
+        super(comparatorValue, () -> sound, properties, length * TICKS_PER_SECOND);
     }
 }
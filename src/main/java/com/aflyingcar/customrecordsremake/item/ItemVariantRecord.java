@@ -0,0 +1,150 @@
+package com.aflyingcar.customrecordsremake.item;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.network.CustomRecordsNetwork;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import net.minecraft.ChatFormatting;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.sounds.SoundEvent;
+import net.minecraft.stats.Stats;
+import net.minecraft.world.InteractionResult;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.TooltipFlag;
+import net.minecraft.world.item.context.UseOnContext;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.JukeboxBlock;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The single record item registered in {@link ModItems.Mode#VARIANT} mode. Which record a disc plays is stored in its
+ *   NBT as the record's filename, and is looked up in the current {@link RecordCatalog} whenever it is needed. The
+ *   sounds are never registered, and the model is picked from the overrides in this item's model by
+ *   {@link #DISC_PROPERTY}.
+ */
+public class ItemVariantRecord extends ItemCustomRecord {
+    /**
+     * The NBT key holding the filename of the record a disc plays. The filename is stored rather than the record's
+     *   index, as indices shift whenever a record is added or removed, which would change what every saved disc plays.
+     */
+    public static final String DISC_TAG = "Disc";
+
+    /**
+     * What {@link #getSound()} returns, as RecordItem expects every disc to have a sound. It is never registered or
+     *   played, as which sound is played depends on the disc.
+     */
+    private static final SoundEvent PLACEHOLDER_SOUND = new SoundEvent(new ResourceLocation(CustomRecordsRemakeMod.MODID, "variant"));
+
+    /**
+     * The path of {@link #DISC_PROPERTY}, kept as a constant so that the model can be generated without loading items
+     */
+    public static final String DISC_PROPERTY_NAME = "disc";
+
+    /**
+     * The item property that the overrides in this item's model select a record's model by
+     */
+    public static final ResourceLocation DISC_PROPERTY = new ResourceLocation(CustomRecordsRemakeMod.MODID, DISC_PROPERTY_NAME);
+
+    /**
+     * @param length The length of the longest record, in seconds. Jukeboxes only use this to decide how long they are
+     *               playing for (for comparators and allays), and that must be known before the disc is inserted.
+     */
+    protected ItemVariantRecord(int length, Item.Properties properties) {
+        super(PLACEHOLDER_SOUND, length, 1, properties);
+    }
+
+    /**
+     * Creates the shared record item. It is deliberately not put in a creative tab, as listing every record is exactly
+     *   what this mode is meant to avoid.
+     *
+     * @param longestLength The length of the longest record, in seconds
+     * @return A new item
+     */
+    @NotNull
+    public static ItemVariantRecord create(int longestLength) {
+        return new ItemVariantRecord(longestLength, new Item.Properties().stacksTo(1));
+    }
+
+    /**
+     * @return The filename of the record the given disc plays, or null if it does not say
+     */
+    @Nullable
+    public static String getDiscId(@NotNull ItemStack stack) {
+        var tag = stack.getTag();
+        if(tag == null || !tag.contains(DISC_TAG, Tag.TAG_STRING)) {
+            return null;
+        }
+        return tag.getString(DISC_TAG);
+    }
+
+    /**
+     * @return The record the given disc plays, or null if it does not play a loaded record
+     */
+    @Nullable
+    public static RecordJsonHandler.Record getRecord(@NotNull ItemStack stack) {
+        var discId = getDiscId(stack);
+        return discId == null ? null : RecordCatalog.current().getRecords().get(discId);
+    }
+
+    /**
+     * Gets the value of {@link #DISC_PROPERTY} for the given disc, which the model overrides are generated against.
+     *
+     * @return The value of the property, or 0 (the plain disc model) if it does not play a loaded record
+     */
+    public static float getModelPredicate(@NotNull ItemStack stack) {
+        var discId = getDiscId(stack);
+        return discId == null ? 0 : RecordCatalog.current().getDiscPredicate(discId);
+    }
+
+    @Override
+    @NotNull
+    public String getDescriptionId(@NotNull ItemStack stack) {
+        var record = getRecord(stack);
+        return record == null ? super.getDescriptionId(stack) : "item." + CustomRecordsRemakeMod.MODID + "." + record.fileName;
+    }
+
+    @Override
+    public void appendHoverText(@NotNull ItemStack stack, @Nullable Level level, @NotNull List<Component> tooltip, @NotNull TooltipFlag flag) {
+        if(getRecord(stack) != null) {
+            tooltip.add(Component.translatable(getDescriptionId(stack) + ".desc").withStyle(ChatFormatting.GRAY));
+        }
+    }
+
+    /**
+     * The same as RecordItem#useOn, except that clients are told which record to play with a packet of our own, as the
+     *   level event vanilla uses can only say which item was inserted.
+     */
+    @Override
+    @NotNull
+    public InteractionResult useOn(@NotNull UseOnContext context) {
+        var level = context.getLevel();
+        var pos = context.getClickedPos();
+        var state = level.getBlockState(pos);
+        var stack = context.getItemInHand();
+        var discId = getDiscId(stack);
+
+        if(discId == null || !state.is(Blocks.JUKEBOX) || state.getValue(JukeboxBlock.HAS_RECORD)) {
+            return InteractionResult.PASS;
+        }
+
+        if(!level.isClientSide) {
+            ((JukeboxBlock)Blocks.JUKEBOX).setRecord(context.getPlayer(), level, pos, state, stack);
+            CustomRecordsNetwork.sendPlayDisc(level, pos, discId);
+            stack.shrink(1);
+
+            var player = context.getPlayer();
+            if(player != null) {
+                player.awardStat(Stats.PLAY_RECORD);
+            }
+        }
+
+        return InteractionResult.sidedSuccess(level.isClientSide);
+    }
+}
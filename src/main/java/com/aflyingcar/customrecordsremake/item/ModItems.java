@@ -1,16 +1,80 @@
 package com.aflyingcar.customrecordsremake.item;
 
 import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
-import net.minecraft.world.item.Item;
+import com.aflyingcar.customrecordsremake.profiling.LoadPhaseEvent;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import net.minecraft.core.Registry;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraftforge.eventbus.api.IEventBus;
-import net.minecraftforge.registries.DeferredRegister;
 import net.minecraftforge.registries.ForgeRegistries;
+import net.minecraftforge.registries.RegisterEvent;
+import net.minecraftforge.registries.RegistryObject;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
 
 public class ModItems {
-    public static final DeferredRegister<Item> ITEMS =
-            DeferredRegister.create(ForgeRegistries.ITEMS, CustomRecordsRemakeMod.MODID);
+    /**
+     * The name of the single item registered in {@link Mode#VARIANT} mode
+     */
+    public static final String VARIANT_RECORD_NAME = "custom_record";
+
+    /**
+     * How records are turned into items
+     */
+    public enum Mode {
+        /**
+         * Every record is registered as its own item, with its own sound event
+         */
+        PER_RECORD,
+
+        /**
+         * A single {@link ItemVariantRecord} is registered for every record, and no sound events are registered at all
+         */
+        VARIANT
+    }
+
+    private static RegistryObject<ItemVariantRecord> variantRecord;
+
+    /**
+     * Registers an item for every record once items are registered. The catalog is only needed then, so it may still
+     *   be loading when this is called. The generated resources read the mode from the config, so the mode given here
+     *   must be the configured one.
+     *
+     * @param catalog Gets the catalog to register items for, waiting for it to finish loading if needed
+     * @param mode How to turn the records into items
+     * @param eventBus The mod event bus
+     */
+    public static void registerRecords(@NotNull Supplier<RecordCatalog> catalog, @NotNull Mode mode, @NotNull IEventBus eventBus) {
+        if(mode == Mode.VARIANT) {
+            variantRecord = RegistryObject.create(new ResourceLocation(CustomRecordsRemakeMod.MODID, VARIANT_RECORD_NAME), ForgeRegistries.ITEMS);
+        }
+
+        eventBus.addListener((RegisterEvent event) -> {
+            var itemRegistry = Registry.ITEM_REGISTRY;
+            if(!itemRegistry.equals(event.getRegistryKey())) {
+                return;
+            }
+
+            var records = catalog.get().getRecords();
+            var itemsEvent = LoadPhaseEvent.begin(LoadPhaseEvent.ITEM_SUPPLIERS);
+            switch(mode) {
+                case PER_RECORD -> records.forEach((name, record) -> event.register(itemRegistry, new ResourceLocation(CustomRecordsRemakeMod.MODID, name), record::getItem));
+                case VARIANT -> {
+                    var longest = records.values().stream().mapToInt(record -> record.length).max().orElse(0);
+                    event.register(itemRegistry, new ResourceLocation(CustomRecordsRemakeMod.MODID, VARIANT_RECORD_NAME), () -> ItemVariantRecord.create(longest));
+                }
+            }
+            itemsEvent.finish(records.size(), 0, null);
+        });
+    }
 
-    public static void register(IEventBus eventBus) {
-        ITEMS.register(eventBus);
+    /**
+     * @return The item every record shares, or null if not in {@link Mode#VARIANT} mode
+     */
+    @Nullable
+    public static RegistryObject<ItemVariantRecord> getVariantRecord() {
+        return variantRecord;
     }
 }
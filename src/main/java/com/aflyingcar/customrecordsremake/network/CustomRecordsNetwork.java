@@ -0,0 +1,97 @@
+package com.aflyingcar.customrecordsremake.network;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.client.AssetSyncClient;
+import com.aflyingcar.customrecordsremake.sync.AssetSyncService;
+import com.aflyingcar.customrecordsremake.sync.SyncMessage;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkDirection;
+import net.minecraftforge.network.NetworkEvent;
+import net.minecraftforge.network.NetworkRegistry;
+import net.minecraftforge.network.PacketDistributor;
+import net.minecraftforge.network.simple.SimpleChannel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
+/**
+ * The channel for every packet this mod sends. The server and client must have the same protocol version to connect.
+ */
+public class CustomRecordsNetwork {
+    private static final String PROTOCOL_VERSION = "2";
+
+    private static final SimpleChannel CHANNEL = NetworkRegistry.newSimpleChannel(
+            new ResourceLocation(CustomRecordsRemakeMod.MODID, "main"),
+            () -> PROTOCOL_VERSION,
+            PROTOCOL_VERSION::equals,
+            PROTOCOL_VERSION::equals);
+
+    /**
+     * Registers every packet. Must be called while the mod is being constructed.
+     */
+    public static void register() {
+        CHANNEL.messageBuilder(PlayVariantDiscPacket.class, 0, NetworkDirection.PLAY_TO_CLIENT)
+                .encoder(PlayVariantDiscPacket::encode)
+                .decoder(PlayVariantDiscPacket::decode)
+                .consumerMainThread(PlayVariantDiscPacket::handle)
+                .add();
+
+        for(int i = 0; i < SyncMessage.CODECS.size(); ++i) {
+            registerSyncMessage(SyncMessage.CODECS.get(i), 1 + i);
+        }
+    }
+
+    private static <M extends SyncMessage> void registerSyncMessage(@NotNull SyncMessage.Codec<M> codec, int id) {
+        CHANNEL.messageBuilder(codec.type(), id, codec.clientBound() ? NetworkDirection.PLAY_TO_CLIENT : NetworkDirection.PLAY_TO_SERVER)
+                .encoder(SyncMessage::encode)
+                .decoder(codec.decoder())
+                .consumerNetworkThread(CustomRecordsNetwork::handleSyncMessage)
+                .add();
+    }
+
+    /**
+     * Handles sync messages on the network thread rather than the main thread, as both ends only hand them over to their
+     *   own sync worker, which does the reading and writing of assets.
+     */
+    private static void handleSyncMessage(@NotNull SyncMessage message, @NotNull Supplier<NetworkEvent.Context> context) {
+        var sender = context.get().getSender();
+        if(sender != null) {
+            AssetSyncService.handle(sender, message);
+        } else {
+            DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> AssetSyncClient.handle(message));
+        }
+        context.get().setPacketHandled(true);
+    }
+
+    /**
+     * Tells every player that can see the given jukebox to start playing a record in it.
+     *
+     * @param level The level the jukebox is in
+     * @param pos The position of the jukebox
+     * @param discId The filename of the record to play
+     */
+    public static void sendPlayDisc(@NotNull Level level, @NotNull BlockPos pos, @NotNull String discId) {
+        CHANNEL.send(PacketDistributor.TRACKING_CHUNK.with(() -> level.getChunkAt(pos)), new PlayVariantDiscPacket(pos, discId));
+    }
+
+    /**
+     * Sends part of an asset sync to a single player. May be called from any thread, as the player's connection hands the
+     *   message over to its network thread.
+     */
+    public static void sendToPlayer(@NotNull ServerPlayer player, @NotNull SyncMessage message) {
+        CHANNEL.send(PacketDistributor.PLAYER.with(() -> player), message);
+    }
+
+    /**
+     * Sends part of an asset sync to the server. Only valid on the client. May be called from any thread, as with
+     *   {@link #sendToPlayer(ServerPlayer, SyncMessage)}.
+     */
+    public static void sendToServer(@NotNull SyncMessage message) {
+        CHANNEL.sendToServer(message);
+    }
+}
@@ -0,0 +1,34 @@
+package com.aflyingcar.customrecordsremake.network;
+
+import com.aflyingcar.customrecordsremake.client.VariantDiscPlayer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.network.NetworkEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
+/**
+ * Sent when a variant disc is put into a jukebox, so that clients know which record to play. Takes the place of the
+ *   level event vanilla sends for records, which only holds the ID of the item that was inserted.
+ *
+ * @param pos The position of the jukebox
+ * @param discId The filename of the record to play
+ */
+public record PlayVariantDiscPacket(@NotNull BlockPos pos, @NotNull String discId) {
+    public void encode(@NotNull FriendlyByteBuf buffer) {
+        buffer.writeBlockPos(pos);
+        buffer.writeUtf(discId);
+    }
+
+    @NotNull
+    public static PlayVariantDiscPacket decode(@NotNull FriendlyByteBuf buffer) {
+        return new PlayVariantDiscPacket(buffer.readBlockPos(), buffer.readUtf());
+    }
+
+    public void handle(@NotNull Supplier<NetworkEvent.Context> context) {
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> VariantDiscPlayer.play(pos, discId));
+    }
+}
@@ -1,41 +1,44 @@
 package com.aflyingcar.customrecordsremake.packs;
 
 import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
-import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
-import com.google.common.collect.Sets;
-import com.google.gson.JsonObject;
+import com.aflyingcar.customrecordsremake.profiling.ResourceServedEvent;
+import com.aflyingcar.customrecordsremake.sync.SyncedAssets;
+import com.aflyingcar.customrecordsremake.utils.AssetInfo;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.FolderPackResources;
 import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.ResourcePackFileNotFoundException;
 import org.jetbrains.annotations.NotNull;
 
+import javax.annotation.Nullable;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Predicate;
 
 public class CustomRecordsPackResources extends FolderPackResources {
-    private static final ArrayList<String> modelFiles = new ArrayList<>();
-    private static final ArrayList<String> oggFiles = new ArrayList<>();
-    private static final ArrayList<String> textureFiles = new ArrayList<>();
-    private static final ArrayList<String> recipeFiles = new ArrayList<>();
+    /**
+     * What this pack serves. Held for the lifetime of the pack so that every resource it serves comes from the same
+     *   catalog, even if a new catalog is published part way through a reload.
+     */
+    private final PackContents contents;
+    private final int recordCount;
 
     public CustomRecordsPackResources() {
-        super(new File("sounds.json"));
-
-        CustomRecordsRemakeMod.getLogger().debug("Loading CustomRecordsPackResources");
-        for(var record : RecordJsonHandler.getRecords().values()) {
-            CustomRecordsRemakeMod.getLogger().debug("Loading resources for record '" + record.name + "'");
+        this(PackContents.forCurrentCatalog());
+    }
 
-            modelFiles.add(getAssetPathFor("/models/item/" + record.fileName + ".json"));
-            oggFiles.add(getAssetPathFor("/sounds/music/" + record.fileName + ".ogg"));
-            textureFiles.add(getAssetPathFor("/textures/items/" + record.fileName + ".png"));
+    /**
+     * Opens the pack over the given contents. This is cheap, the contents are only indexed once something other than
+     *   the pack.mcmeta is asked for.
+     *
+     * @param contents The contents to serve
+     */
+    public CustomRecordsPackResources(@NotNull PackContents contents) {
+        super(new File("sounds.json"));
 
-            // Do not add a recipe if the record doesn't have one
-            if(record.recipe != null) {
-                recipeFiles.add(getDataPathFor("/recipes/" + record.fileName + ".json"));
-            }
-        }
+        CustomRecordsRemakeMod.getLogger().debug("Opening CustomRecordsPackResources for catalog version " + contents.getCatalog().getVersion());
+        this.contents = contents;
+        this.recordCount = contents.getCatalog().size();
     }
 
     /**
@@ -49,77 +52,152 @@ public class CustomRecordsPackResources extends FolderPackResources {
     @NotNull
     @Override
     protected InputStream getResource(String name) throws IOException {
-        if(name.equals(getAssetPathFor("/sounds.json"))) {
-            return new ByteArrayInputStream(CustomRecordsRemakeMod.getSoundsJson().getBytes());
-        } else if(name.equals("pack.mcmeta")) {
-            return new ByteArrayInputStream(("{\n \"pack\": {\n   \"description\": \"Custom Records Remake's internal pack\",\n   \"pack_format\": 9\n}\n}").getBytes(StandardCharsets.UTF_8));
-        } else if(name.equals(getAssetPathFor("/lang/en_us.json"))) {
-            JsonObject root = new JsonObject();
-
-            var records = RecordJsonHandler.getRecords().values();
-            for (var record : records) {
-                var nameTranslationKey = "item." + CustomRecordsRemakeMod.MODID + "." + record.fileName;
-                var descTranslationKey = "item." + CustomRecordsRemakeMod.MODID + "." + record.fileName + ".desc";
-
-                root.addProperty(nameTranslationKey, "Music Disc");
-                root.addProperty(descTranslationKey, record.name);
+        // The pack.mcmeta is read whenever the pack is opened, so serve it without building the index
+        if(ResourceIndex.PACK_META_PATH.equals(name)) {
+            return servePackMeta();
+        }
+
+        var index = contents.getIndex(name);
+        var handle = index.lookup(name);
+        var metrics = PackMetrics.get();
+        var event = new ResourceServedEvent();
+        event.begin();
+        var start = System.nanoTime();
+
+        InputStream stream;
+        try {
+            stream = open(name, handle);
+        } catch(IOException e) {
+            metrics.recordGet(handle.kind(), System.nanoTime() - start, false);
+            commitResourceEvent(event, name, handle, false);
+            throw e;
+        }
+
+        metrics.recordGet(handle.kind(), System.nanoTime() - start, stream != null);
+        if(stream != null) {
+            event.end();
+            if(!event.shouldCommit()) {
+                return metrics.countBytes(handle.kind(), stream, null);
             }
 
-            return new ByteArrayInputStream(root.toString().getBytes());
-        } else if(modelFiles.contains(name)) {
-            // Convert the path (should be 'assets/{MODID}/models/item/{NAME}.json') to just the name so we can look it up
-            var modelName = name.replace(getAssetPathFor("/models/item/"), "").replace(".json", "");
-            return new ByteArrayInputStream(RecordJsonHandler.genModelJson(modelName).getBytes());
-        } else if(oggFiles.contains(name)) {
-            // Convert the given relative path (should be 'assets/{MODID}/sounds/music/{NAME}.ogg') to the correct path pointing at the texture in the config directory
-            var oggPath = CustomRecordsRemakeMod.getRecordsResourcesDir() + File.separator + name.replace(getAssetPathFor("/sounds/music/"), "");
-            return new FileInputStream(oggPath);
-        } else if(textureFiles.contains(name)) {
-            // Convert the given relative path (should be 'assets/{MODID}/textures/items/{NAME}.png') to the correct path pointing at the texture in the config directory
-            var texturePath = CustomRecordsRemakeMod.getRecordsResourcesDir() + File.separator + name.replace(getAssetPathFor("/textures/items/"), "");
-            return new FileInputStream(texturePath);
-        } else if(recipeFiles.contains(name)) {
-            // Convert the path (should be 'data/{MODID}/recipes/{NAME}.json') to just the name so we can look it up
-            var recipeName = name.replace(getDataPathFor("/recipes/"), "").replace(".json", "");
-
-            // Recipes can be empty, if so, then we just will return an "empty" json object
-            return new ByteArrayInputStream(RecordJsonHandler.genRecipeJson(recipeName).orElse("{}").getBytes());
+            // The size is only known once the caller has read the whole stream
+            return metrics.countBytes(handle.kind(), stream, bytes -> {
+                event.bytes = bytes;
+                commitResourceEvent(event, name, handle, true);
+            });
         }
 
-        CustomRecordsRemakeMod.getLogger().warn("Asked for resource '" + name + "' that we do not have a handler for! Deferring to FolderPackResources::getResource()");
-        return super.getResource(name);
+        commitResourceEvent(event, name, handle, false);
+
+        // Nothing on disk backs this pack, so there is nothing for FolderPackResources to fall back to. Only warn the
+        //   first time we are asked for a given name so that repeated lookups stay quiet and cheap.
+        if(index.recordMiss(name)) {
+            CustomRecordsRemakeMod.getLogger().warn("Asked for resource '" + name + "' that we do not have a handler for!");
+        }
+        throw new ResourcePackFileNotFoundException(this.file, name);
+    }
+
+    private InputStream servePackMeta() {
+        var start = System.nanoTime();
+        var stream = GeneratedResourceCache.openPackMeta();
+        PackMetrics.get().recordGet(ResourceIndex.Kind.PACK_META, System.nanoTime() - start, true);
+        return PackMetrics.get().countBytes(ResourceIndex.Kind.PACK_META, stream, null);
+    }
+
+    private void commitResourceEvent(ResourceServedEvent event, String name, ResourceIndex.Handle handle, boolean hit) {
+        if(event.shouldCommit()) {
+            event.path = name;
+            event.kind = handle.kind().name();
+            event.hit = hit;
+            event.recordCount = recordCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Opens the resource that the given handle refers to.
+     *
+     * @return A stream over the resource, or null if there is nothing to serve for it
+     */
+    @Nullable
+    private InputStream open(String name, ResourceIndex.Handle handle) throws IOException {
+        switch(handle.kind()) {
+            case PACK_META:
+            case SOUNDS_JSON:
+            case LANG:
+            case MODEL:
+            case RECIPE:
+                return contents.getPayloads(ResourceIndex.getPackType(name)).open(name);
+            case OGG: {
+                // Prefer the server's copy of this record's .ogg if it differs from ours
+                var synced = SyncedAssets.get(handle.recordName() + ".ogg");
+                if(synced != null) {
+                    return RecordAssetReader.get().open(synced);
+                }
+
+                // Point at the .ogg for this record, either in the config directory or in its disc archive. Its start
+                //   may already be in memory.
+                var info = getOggInfo(handle.recordName());
+                return OggHeadCache.get().open(handle.recordName(), info, () -> RecordAssetReader.get().open(CustomRecordsRemakeMod.getRecordsResourcesDir(), handle.recordName() + ".ogg", info));
+            }
+            case TEXTURE: {
+                var synced = SyncedAssets.get(handle.recordName() + ".png");
+                if(synced != null) {
+                    return RecordAssetReader.get().open(synced);
+                }
+
+                // Serve the downscaled copy of this record's texture if one was made, otherwise the .png itself
+                var derived = DerivedTextureCache.get(handle.recordName());
+                if(derived != null) {
+                    return RecordAssetReader.get().open(derived);
+                }
+                return RecordAssetReader.get().open(CustomRecordsRemakeMod.getRecordsResourcesDir(), handle.recordName() + ".png", getTextureInfo(handle.recordName()));
+            }
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private AssetInfo getOggInfo(String recordName) {
+        var record = contents.getCatalog().getRecords().get(recordName);
+        return record == null ? null : record.oggInfo;
+    }
+
+    @Nullable
+    private AssetInfo getTextureInfo(String recordName) {
+        var record = contents.getCatalog().getRecords().get(recordName);
+        return record == null ? null : record.textureInfo;
     }
 
     /**
      * Checks if this resource pack contains the given name.
      * This resource pack contains the following:
+     *     pack.mcmeta
      *     assets/{MODID}/sounds.json
      *     assets/{MODID}/lang/en_us.json
-     *     assets/{MODID}/models/item/*.json
+     *     assets/{MODID}/models/item/*.json (models/item/discs/*.json in variant mode)
      *     assets/{MODID}/sounds/music/*.ogg
      *     assets/{MODID}/textures/items/*.png
      *     data/{MODID}/recipes/*.json
      *
      * @param name The name to check
-     * @return True if 'name' is referring to the sounds.json, lang/en_us.json, or any model, ogg, texture, or recipe
-     *         file used for a record.
+     * @return True if 'name' is referring to the pack.mcmeta, sounds.json, lang/en_us.json, or any model, ogg,
+     *         texture, or recipe file used for a record.
      */
     @Override
     protected boolean hasResource(String name) {
-        return name.equals(getAssetPathFor("/sounds.json")) ||
-               name.equals(getAssetPathFor("/lang/en_us.json")) ||
-               modelFiles.contains(name) ||
-               oggFiles.contains(name) ||
-               textureFiles.contains(name) ||
-               recipeFiles.contains(name);
+        var contains = ResourceIndex.PACK_META_PATH.equals(name) || contents.getIndex(name).contains(name);
+        PackMetrics.get().recordHas(contains);
+        return contains;
     }
 
     public String getAssetPathFor(String relativePath) {
-        return "assets/" + CustomRecordsRemakeMod.MODID + relativePath;
+        return ResourceIndex.assetPath(relativePath);
     }
 
     public String getDataPathFor(String relativePath) {
-        return "data/" + CustomRecordsRemakeMod.MODID + relativePath;
+        return ResourceIndex.dataPath(relativePath);
     }
 
     /**
@@ -133,6 +211,13 @@ public class CustomRecordsPackResources extends FolderPackResources {
                 .replace("data/" + CustomRecordsRemakeMod.MODID + "/", "");
     }
 
+    @Override
+    public void close() {
+        super.close();
+
+        CustomRecordsRemakeMod.getLogger().debug("Closing CustomRecordsPackResources: " + RecordAssetReader.get());
+    }
+
     @NotNull
     @Override
     public String getName() {
@@ -141,37 +226,34 @@ public class CustomRecordsPackResources extends FolderPackResources {
 
     @NotNull
     @Override
-    public Set<String> getNamespaces(@NotNull PackType p_10259_) {
-        Set<String> set = Sets.newHashSet();
-        set.add(CustomRecordsRemakeMod.MODID);
-        return set;
+    public Set<String> getNamespaces(@NotNull PackType packType) {
+        return contents.getIndex(packType).getNamespaces(packType);
     }
 
     /**
      * Gets a list of resources in this resource pack.
-     * This pack is used for both the client and server, and is also a virtual data pack (that is: not referring to
-     * files on the disk). As such: we must override this method and make sure to return both the client-side and
-     * server-side resources.
+     * This pack is used for both the client and server, and is also a virtual pack (that is: not referring to files on
+     * the disk). As such: we must override this method and list the resources from our index rather than letting
+     * FolderPackResources walk a folder that does not exist.
      *
      * @param packType The type of pack this is
      * @param namespace The namespace to check for
-     * @param path
+     * @param path The directory to list resources under
      * @param filter A filter to apply to the list of resources.
      *
-     * @return A collection of all resources in this pack.
+     * @return A collection of all resources in this pack under the given path.
      */
     @NotNull
     @Override
     public Collection<ResourceLocation> getResources(@NotNull PackType packType, @NotNull String namespace, @NotNull String path, @NotNull Predicate<ResourceLocation> filter) {
-        if(Objects.requireNonNull(packType) == PackType.CLIENT_RESOURCES) {
-            return super.getResources(packType, namespace, path, filter);
-        } else {
-            return recipeFiles.stream()
-                    .map(p -> new ResourceLocation(CustomRecordsRemakeMod.MODID, getRelativePathForAssetOrData(p)))
-                    // .peek(resourceLocation -> CustomRecordsRemakeMod.getLogger().debug(resourceLocation.toString()))
-                    .filter(resourceLocation -> resourceLocation.getNamespace().equals(namespace))
-                    .filter(resourceLocation -> resourceLocation.getPath().startsWith(path))
-                    .filter(filter).toList();
+        var resources = contents.getIndex(packType).list(packType, namespace, path);
+
+        List<ResourceLocation> matching = new ArrayList<>(resources.size());
+        for(var resourceLocation : resources) {
+            if(filter.test(resourceLocation)) {
+                matching.add(resourceLocation);
+            }
         }
+        return matching;
     }
 }
@@ -1,7 +1,12 @@
 package com.aflyingcar.customrecordsremake.packs;
 
 import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.profiling.LoadPhaseEvent;
+import com.aflyingcar.customrecordsremake.sync.SyncedAssets;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import net.minecraft.server.packs.FilePackResources;
 import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
 import net.minecraft.server.packs.repository.Pack;
 import net.minecraft.server.packs.repository.PackSource;
 import net.minecraft.server.packs.repository.RepositorySource;
@@ -11,9 +16,19 @@ import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class CustomRecordsRepositorySource implements RepositorySource {
-    public CustomRecordsRepositorySource() { }
+    private final PackType packType;
+
+    /**
+     * @param packType The type of pack this source is finding packs for
+     */
+    public CustomRecordsRepositorySource(@NotNull PackType packType) {
+        this.packType = packType;
+    }
+
     @Override
     public void loadPacks(@NotNull Consumer<Pack> consumer, Pack.@NotNull PackConstructor packConstructor) {
+        var event = LoadPhaseEvent.begin(LoadPhaseEvent.LOAD_PACKS);
+
         Pack pack = Pack.create(
                 CustomRecordsRemakeMod.MODID /* packName */,
                 true /* ??? */,
@@ -23,9 +38,26 @@ public class CustomRecordsRepositorySource implements RepositorySource {
                 PackSource.BUILT_IN /* packSource */);
 
         consumer.accept(pack);
+
+        event.finish(RecordCatalog.current().size(), 0, null);
     }
 
+    /**
+     * The pack is opened again every time the pack list is shown or resources are reloaded. Each time, it is handed the
+     *   contents shared by every pack for the current catalog, so nothing is indexed or rendered again unless the
+     *   catalog has changed.
+     * If a pack baked from the current catalog exists, it is mounted instead. Once assets have been synced from a server
+     *   the generated pack is used again, as only it knows to serve the server's copies.
+     */
     private Supplier<PackResources> createPackSupplier() {
-        return CustomRecordsPackResources::new;
+        return () -> {
+            var catalog = RecordCatalog.current();
+
+            var baked = PackBaker.findCurrent(catalog, packType);
+            if(baked != null && (packType != PackType.CLIENT_RESOURCES || SyncedAssets.size() == 0)) {
+                return new FilePackResources(baked.toFile());
+            }
+            return new CustomRecordsPackResources(PackContents.forCatalog(catalog));
+        };
     }
 }
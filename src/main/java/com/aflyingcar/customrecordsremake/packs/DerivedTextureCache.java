@@ -0,0 +1,69 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.utils.CatalogCache;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the downscaled copies of record textures that are served in place of the originals.
+ * Copies are stored in 'config/customrecordsremake/.cache/textures/', named after the hash of the original texture and
+ *   the size they were scaled to, so that a texture is only ever scaled once.
+ */
+public class DerivedTextureCache {
+    /**
+     * The downscaled copy of each record's texture, by record filename. Records whose texture did not need scaling are
+     *   not in here.
+     */
+    private static final Map<String, Path> derived = new ConcurrentHashMap<>();
+
+    @NotNull
+    public static Path getCacheDir() {
+        return CatalogCache.getCacheDir(CustomRecordsRemakeMod.getRecordsResourcesDir()).resolve("textures");
+    }
+
+    /**
+     * Gets the path that the downscaled copy of a texture is stored at.
+     *
+     * @param sha1 The hash of the original texture
+     * @param maxSize The size the texture was scaled down to fit within
+     * @return The path of the copy, which may not exist yet
+     */
+    @NotNull
+    public static Path getPathFor(@NotNull String sha1, int maxSize) {
+        return getCacheDir().resolve(sha1 + "-" + maxSize + ".png");
+    }
+
+    /**
+     * Gets the downscaled copy of a record's texture.
+     *
+     * @param recordName The filename of the record
+     * @return The copy to serve in place of the original texture, or null if the original should be served
+     */
+    @Nullable
+    public static Path get(@NotNull String recordName) {
+        return derived.get(recordName);
+    }
+
+    /**
+     * Sets (or clears) the downscaled copy of a record's texture.
+     *
+     * @param recordName The filename of the record
+     * @param path The copy to serve, or null to serve the original texture
+     */
+    public static void put(@NotNull String recordName, @Nullable Path path) {
+        if(path == null) {
+            derived.remove(recordName);
+        } else {
+            derived.put(recordName, path);
+        }
+    }
+
+    public static int size() {
+        return derived.size();
+    }
+}
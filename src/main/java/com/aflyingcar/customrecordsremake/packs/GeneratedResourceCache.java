@@ -0,0 +1,107 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.server.packs.PackType;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Holds every JSON payload of one pack type generated by {@link CustomRecordsPackResources}, rendered once to UTF-8
+ *   bytes.
+ * A cache is rendered for a single catalog and owned by the {@link PackContents} for it, which is what decides when
+ *   the cache can be kept and when it must be rendered again. Client resources and server data are cached separately,
+ *   so a dedicated server only ever renders recipes.
+ */
+public class GeneratedResourceCache {
+    private static final byte[] PACK_META = ("{\n \"pack\": {\n   \"description\": \"Custom Records Remake's internal pack\",\n   \"pack_format\": 9\n}\n}").getBytes(StandardCharsets.UTF_8);
+
+    private final ImmutableMap<String, byte[]> payloads;
+    private final long footprint;
+
+    private GeneratedResourceCache(ImmutableMap<String, byte[]> payloads) {
+        this.payloads = payloads;
+        this.footprint = payloads.values().stream().mapToLong(bytes -> bytes.length).sum();
+    }
+
+    /**
+     * Renders every generated payload of the given type for the given catalog.
+     *
+     * @param catalog The catalog to render payloads for
+     * @param type The type of pack to render payloads for
+     * @return A new cache
+     */
+    @NotNull
+    public static GeneratedResourceCache render(@NotNull RecordCatalog catalog, @NotNull PackType type) {
+        var start = System.nanoTime();
+        var records = catalog.getRecords().values();
+        ImmutableMap.Builder<String, byte[]> builder = ImmutableMap.builderWithExpectedSize(4 + records.size());
+
+        builder.put(ResourceIndex.PACK_META_PATH, PACK_META);
+
+        if(type == PackType.CLIENT_RESOURCES) {
+            builder.put(ResourceIndex.SOUNDS_JSON_PATH, catalog.getSoundsJson());
+            builder.put(ResourceIndex.LANG_PATH, RecordJsonHandler.renderLangJson(records));
+            if(ResourceIndex.isVariantMode()) {
+                builder.put(ResourceIndex.VARIANT_MODEL_PATH, RecordJsonHandler.renderVariantModelJson(catalog));
+            }
+
+            var dedup = catalog.getAssetDedup();
+            for(var record : records) {
+                builder.put(ResourceIndex.modelPath(record.fileName), RecordJsonHandler.renderModelJson(record.fileName, dedup.getTextureSource(record.fileName)));
+            }
+        } else {
+            for(var record : records) {
+                var recipe = RecordJsonHandler.renderRecipeJson(record);
+                if(recipe != null) {
+                    builder.put(ResourceIndex.dataPath("/recipes/" + record.fileName + ".json"), recipe);
+                }
+            }
+        }
+
+        var cache = new GeneratedResourceCache(builder.build());
+        CustomRecordsRemakeMod.getLogger().info("Pre-rendered " + cache.size() + " generated " + type.getDirectory() + " resources (" + cache.getFootprint() + " bytes) for catalog version " + catalog.getVersion() + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+        return cache;
+    }
+
+    /**
+     * Opens a stream over the pack.mcmeta, which does not depend on the catalog and so never needs rendering.
+     *
+     * @return A stream over the pack.mcmeta
+     */
+    @NotNull
+    public static InputStream openPackMeta() {
+        return new ByteArrayInputStream(PACK_META);
+    }
+
+    /**
+     * Opens a stream over the pre-rendered payload for the given path. The stream reads directly from the cached
+     *   bytes, nothing is copied.
+     *
+     * @param path The full path of the resource
+     * @return A stream over the payload, or null if no payload was generated for this path
+     */
+    @Nullable
+    public InputStream open(String path) {
+        var bytes = payloads.get(path);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * @return The total number of bytes held by this cache
+     */
+    public long getFootprint() {
+        return footprint;
+    }
+
+    public int size() {
+        return payloads.size();
+    }
+}
@@ -0,0 +1,610 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.sync.SyncedAssets;
+import com.aflyingcar.customrecordsremake.utils.AssetInfo;
+import com.aflyingcar.customrecordsremake.utils.CatalogCache;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the first few KiB of records' .ogg files in memory, so that a disc starts playing without waiting for its file
+ *   to be opened, which can take a noticeable amount of time when the game directory is on a slow or network drive.
+ * A stream over a cached record serves the head straight from memory while the rest of the file is opened in the
+ *   background, then carries on from the file where the head ends. Heads are captured as records are played, and
+ *   fetched ahead of time for the most played records at startup and for discs that enter the player's inventory.
+ * Heads are kept in least-recently-used order, and the oldest are evicted once the cache is over its size limit.
+ */
+public class OggHeadCache {
+    private static final String PLAY_COUNTS_FILE = "plays.txt";
+
+    /**
+     * How long to wait after a play before saving the play counts, so that a run of plays is saved in one go
+     */
+    private static final long PLAY_COUNTS_SAVE_DELAY_SECONDS = 30;
+
+    private static OggHeadCache instance;
+
+    /**
+     * Opens the whole of an asset
+     */
+    @FunctionalInterface
+    public interface Opener {
+        @NotNull
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * @param sha1 The hash of the .ogg this is the head of, so that a head is never served for a record whose .ogg was
+     *             found to have changed when the records were reloaded
+     * @param data The first bytes of the .ogg
+     * @param complete True if this is the whole .ogg
+     */
+    private record Head(String sha1, byte[] data, boolean complete) { }
+
+    /**
+     * The rest of a cached .ogg, once it has been opened
+     *
+     * @param stream The file
+     * @param fromStart True if the file was found to have changed since its head was cached, so the stream is still at
+     *                  the start of the file rather than where the head ends
+     */
+    private record Rest(InputStream stream, boolean fromStart) { }
+
+    private static final Stats EMPTY_STATS = new Stats(0, 0, 0, 0, new PackMetrics.KindMetrics().snapshot(), new PackMetrics.KindMetrics().snapshot());
+
+    private final int headBytes;
+    private final long maxBytes;
+    private final Path playCountsPath;
+
+    private final LinkedHashMap<String, Head> heads = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    /**
+     * The .ogg files that were found to have changed since the records were loaded, by the info they were loaded with.
+     *   Nothing is cached for these until the records are reloaded and they have new info.
+     */
+    private final Map<String, AssetInfo> staleInfos = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+    private final Map<String, Integer> playCounts = new ConcurrentHashMap<>();
+    private boolean playCountsLoaded = false;
+    private final AtomicBoolean playCountsSaveScheduled = new AtomicBoolean(false);
+
+    private final PackMetrics.KindMetrics hitStarts = new PackMetrics.KindMetrics();
+    private final PackMetrics.KindMetrics missStarts = new PackMetrics.KindMetrics();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+
+    /**
+     * @param headBytes How many bytes to keep of each .ogg, or 0 to keep nothing
+     * @param maxBytes How many bytes may be kept in total
+     * @param playCountsPath Where to keep how often each record has been played
+     */
+    public OggHeadCache(int headBytes, long maxBytes, @NotNull Path playCountsPath) {
+        this.headBytes = headBytes;
+        this.maxBytes = maxBytes;
+        this.playCountsPath = playCountsPath;
+
+        // Opening files is I/O bound, but a couple of threads are enough to keep a disc that was just played from
+        //   queueing behind a batch of prefetches
+        this.executor = Executors.newFixedThreadPool(2, runnable -> {
+            var thread = new Thread(runnable, "CustomRecords Ogg Prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the shared cache, creating it from the current config if needed.
+     *
+     * @return The shared cache
+     */
+    @NotNull
+    public static synchronized OggHeadCache get() {
+        if(instance == null) {
+            instance = new OggHeadCache(CustomRecordsConfig.OGG_HEAD_KIB.get() * 1024,
+                                        CustomRecordsConfig.OGG_HEAD_CACHE_MIB.get() * 1024L * 1024L,
+                                        CatalogCache.getCacheDir(CustomRecordsRemakeMod.getRecordsResourcesDir()).resolve(PLAY_COUNTS_FILE));
+
+            // Plays are only saved a while after they happen, so save whatever is still waiting when the game closes
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::savePendingPlayCounts, "CustomRecords Play Counts Save"));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Takes a copy of the shared cache's metrics, without creating the cache. It is only ever created on a client, so
+     *   on a dedicated server this is always empty.
+     *
+     * @return A copy of the current metrics, or empty metrics if there is no cache
+     */
+    @NotNull
+    public static synchronized Stats currentStats() {
+        return instance == null ? EMPTY_STATS : instance.stats();
+    }
+
+    public boolean isEnabled() {
+        return headBytes > 0;
+    }
+
+    /**
+     * Opens a record's .ogg to be played, serving its head from the cache if it is there, and counts the play.
+     *
+     * @param recordName The filename of the record
+     * @param info What was known about the .ogg when the records were loaded. Nothing is cached for a .ogg without
+     *             this, as there would be no way to tell if it has changed. Whether the .ogg still has the size and
+     *             modification time given here is only checked in the background, once the rest of it has been opened.
+     *             If it does not, its head is dropped and nothing more is cached for it until the records are reloaded.
+     * @param opener Opens the whole .ogg
+     * @return A stream over the whole .ogg
+     * @throws IOException If the .ogg is not cached and could not be opened
+     */
+    @NotNull
+    public InputStream open(@NotNull String recordName, @Nullable AssetInfo info, @NotNull Opener opener) throws IOException {
+        var start = System.nanoTime();
+        countPlay(recordName);
+
+        if(!isEnabled() || info == null) {
+            return opener.open();
+        }
+
+        // The file was already found to have changed after the records were loaded, such as when an .ogg is replaced
+        //   and resources reloaded without hot reloading. Any head, and whatever the hash says, would belong to the old
+        //   file.
+        var stale = staleInfos.get(recordName);
+        if(stale != null) {
+            if(stale.equals(info)) {
+                return new FirstReadTimer(opener.open(), missStarts, start);
+            }
+            staleInfos.remove(recordName, stale);
+        }
+
+        var head = lookup(recordName, info.sha1());
+        if(head == null) {
+            return new FirstReadTimer(new CapturingInputStream(opener.open(), recordName, info.sha1()), missStarts, start);
+        }
+
+        if(head.complete()) {
+            return new FirstReadTimer(new ByteArrayInputStream(head.data()), hitStarts, start);
+        }
+
+        // The file is only checked once it has been opened, off the thread that is waiting to play it
+        var rest = CompletableFuture.supplyAsync(() -> {
+            try {
+                var stream = opener.open();
+                if(info.isStale(CustomRecordsRemakeMod.getRecordsResourcesDir(), recordName + ".ogg")) {
+                    staleInfos.put(recordName, info);
+                    invalidate(recordName);
+                    return new Rest(stream, true);
+                }
+
+                stream.skipNBytes(head.data().length);
+                return new Rest(stream, false);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+        return new FirstReadTimer(new HeadInputStream(recordName, head.data(), rest), hitStarts, start);
+    }
+
+    /**
+     * Fetches the head of a record's .ogg in the background, if it is not already cached.
+     *
+     * @param recordName The filename of the record
+     */
+    public void prefetch(@NotNull String recordName) {
+        if(!isEnabled()) {
+            return;
+        }
+
+        var catalog = RecordCatalog.current();
+
+        // The pack serves the .ogg of the record this one shares it with, and never caches a synced .ogg
+        var source = catalog.getAssetDedup().getOggSource(recordName);
+        var record = catalog.getRecords().get(source);
+        if(record == null || record.oggInfo == null || SyncedAssets.get(source + ".ogg") != null) {
+            return;
+        }
+
+        var info = record.oggInfo;
+        if(lookup(source, info.sha1()) != null) {
+            return;
+        }
+
+        executor.execute(() -> {
+            if(lookup(source, info.sha1()) != null || info.isStale(CustomRecordsRemakeMod.getRecordsResourcesDir(), source + ".ogg")) {
+                return;
+            }
+
+            try(var stream = RecordAssetReader.get().open(CustomRecordsRemakeMod.getRecordsResourcesDir(), source + ".ogg", info)) {
+                var data = stream.readNBytes(headBytes);
+                put(source, new Head(info.sha1(), data, stream.read() < 0));
+                prefetches.increment();
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().debug("Failed to prefetch the head of '" + source + ".ogg': " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Fetches the heads of the most played records in the background.
+     *
+     * @param count How many records to fetch the heads of
+     */
+    public void warm(int count) {
+        if(!isEnabled() || count <= 0) {
+            return;
+        }
+
+        executor.execute(() -> {
+            loadPlayCounts();
+
+            var records = RecordCatalog.current().getRecords();
+            playCounts.entrySet().stream()
+                      .filter(entry -> records.containsKey(entry.getKey()))
+                      .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()))
+                      .limit(count)
+                      .forEach(entry -> prefetch(entry.getKey()));
+        });
+    }
+
+    /**
+     * Drops the head of a record's .ogg, if it is cached.
+     *
+     * @param recordName The filename of the record
+     */
+    public void invalidate(@NotNull String recordName) {
+        synchronized(heads) {
+            var removed = heads.remove(recordName);
+            if(removed != null) {
+                size -= removed.data().length;
+            }
+        }
+    }
+
+    @Nullable
+    private Head lookup(String recordName, String sha1) {
+        synchronized(heads) {
+            var head = heads.get(recordName);
+            return head != null && head.sha1().equals(sha1) ? head : null;
+        }
+    }
+
+    private void put(String recordName, Head head) {
+        synchronized(heads) {
+            var previous = heads.put(recordName, head);
+            size += head.data().length - (previous == null ? 0 : previous.data().length);
+
+            // Never evict the head that was just added, even if it alone is over the limit
+            var iterator = heads.values().iterator();
+            while(size > maxBytes && heads.size() > 1) {
+                var eldest = iterator.next();
+                iterator.remove();
+                size -= eldest.data().length;
+                evictions.increment();
+            }
+        }
+    }
+
+    private void countPlay(String recordName) {
+        playCounts.merge(recordName, 1, Integer::sum);
+
+        if(playCountsSaveScheduled.compareAndSet(false, true)) {
+            CompletableFuture.delayedExecutor(PLAY_COUNTS_SAVE_DELAY_SECONDS, TimeUnit.SECONDS, executor).execute(this::savePendingPlayCounts);
+        }
+    }
+
+    /**
+     * Saves the play counts if any plays have not been saved yet.
+     */
+    private void savePendingPlayCounts() {
+        // Cleared before saving, so that a play counted while saving schedules another save
+        if(playCountsSaveScheduled.compareAndSet(true, false)) {
+            savePlayCounts();
+        }
+    }
+
+    private synchronized void loadPlayCounts() {
+        if(playCountsLoaded) {
+            return;
+        }
+        playCountsLoaded = true;
+
+        try {
+            for(var line : Files.readAllLines(playCountsPath, StandardCharsets.UTF_8)) {
+                var space = line.indexOf(' ');
+                if(space > 0) {
+                    playCounts.merge(line.substring(space + 1), Integer.parseInt(line.substring(0, space)), Integer::sum);
+                }
+            }
+        } catch(NoSuchFileException e) {
+            // Nothing has been played yet
+        } catch(IOException | NumberFormatException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to read record play counts from " + playCountsPath + ", they will be started again: " + e.getMessage());
+        }
+    }
+
+    private synchronized void savePlayCounts() {
+        // Merge in the counts from earlier sessions first, so that they are not overwritten
+        loadPlayCounts();
+
+        var builder = new StringBuilder();
+        playCounts.forEach((recordName, count) -> builder.append(count).append(' ').append(recordName).append('\n'));
+
+        try {
+            Files.createDirectories(playCountsPath.getParent());
+            var temp = playCountsPath.resolveSibling(playCountsPath.getFileName() + ".tmp");
+            Files.writeString(temp, builder, StandardCharsets.UTF_8);
+            Files.move(temp, playCountsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().debug("Failed to save record play counts to " + playCountsPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes a copy of every counter.
+     *
+     * @return A copy of the current metrics
+     */
+    @NotNull
+    public Stats stats() {
+        int entries;
+        long bytes;
+        synchronized(heads) {
+            entries = heads.size();
+            bytes = size;
+        }
+        return new Stats(entries, bytes, evictions.sum(), prefetches.sum(), hitStarts.snapshot(), missStarts.snapshot());
+    }
+
+    /**
+     * A copy of the cache's metrics.
+     *
+     * @param entries How many heads are cached
+     * @param bytes The total size of every cached head
+     * @param evictions How many heads have been evicted to stay under the size limit
+     * @param prefetches How many heads have been fetched ahead of being played
+     * @param hitStarts How long it took from opening a cached .ogg until its first bytes were read
+     * @param missStarts How long it took from opening an uncached .ogg until its first bytes were read
+     */
+    public record Stats(int entries, long bytes, long evictions, long prefetches, @NotNull PackMetrics.KindSnapshot hitStarts, @NotNull PackMetrics.KindSnapshot missStarts) {
+        public long getPlays() {
+            return hitStarts.calls() + missStarts.calls();
+        }
+
+        /**
+         * @return The share of plays that were served from the cache, between 0 and 1
+         */
+        public double getHitRate() {
+            var plays = getPlays();
+            return plays == 0 ? 0 : (double)hitStarts.calls() / plays;
+        }
+
+        @NotNull
+        public String summarize() {
+            return entries + " heads (" + bytes / 1024 + " KiB), " + getPlays() + " plays, hit rate " + Math.round(getHitRate() * 100) + "%, " +
+                   evictions + " evictions, " + prefetches + " prefetches; start latency on hit: mean " + hitStarts.getMeanNanos() / 1_000 +
+                   "us, p99 <" + hitStarts.getPercentileNanos(99) / 1_000 + "us; on miss: mean " + missStarts.getMeanNanos() / 1_000 +
+                   "us, p99 <" + missStarts.getPercentileNanos(99) / 1_000 + "us";
+        }
+    }
+
+    /**
+     * Serves a cached head, then carries on from the rest of the file once it has been opened. If the file turns out to
+     *   have changed since the head was cached, the head is abandoned and the file is served from the start instead.
+     */
+    private static class HeadInputStream extends InputStream {
+        private final String recordName;
+        private final byte[] head;
+        private final CompletableFuture<Rest> rest;
+        private InputStream restStream;
+        private int position = 0;
+
+        private HeadInputStream(String recordName, byte[] head, CompletableFuture<Rest> rest) {
+            this.recordName = recordName;
+            this.head = head;
+            this.rest = rest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(isServingHead()) {
+                return head[position++] & 0xFF;
+            }
+            return rest().read();
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+
+            if(isServingHead()) {
+                var count = Math.min(len, head.length - position);
+                System.arraycopy(head, position, b, off, count);
+                position += count;
+                return count;
+            }
+            return rest().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return isServingHead() ? head.length - position : rest().available();
+        }
+
+        /**
+         * @return True while there is more of the head to serve, and the file has not been found to have changed
+         */
+        private boolean isServingHead() {
+            if(restStream != null || position >= head.length) {
+                return false;
+            }
+            return !rest.isDone() || rest.isCompletedExceptionally() || !rest.join().fromStart();
+        }
+
+        private InputStream rest() throws IOException {
+            if(restStream == null) {
+                Rest opened;
+                try {
+                    opened = rest.join();
+                } catch(CompletionException e) {
+                    throw e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : new IOException(e.getCause());
+                }
+
+                // Whatever has already been served from the head has to match the file it now carries on from
+                if(opened.fromStart() && !Arrays.equals(opened.stream().readNBytes(position), Arrays.copyOf(head, position))) {
+                    opened.stream().close();
+                    throw new IOException("'" + recordName + ".ogg' changed since it was cached, and the start of the old file was already played");
+                }
+                restStream = opened.stream();
+            }
+            return restStream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(restStream != null) {
+                restStream.close();
+                return;
+            }
+
+            // Close the rest of the file once it has been opened, as it never will be now
+            rest.thenAccept(opened -> {
+                try {
+                    opened.stream().close();
+                } catch(IOException ignored) {
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies the first bytes read from a stream into the cache
+     */
+    private class CapturingInputStream extends FilterInputStream {
+        private final String recordName;
+        private final String sha1;
+        private byte[] captured = new byte[headBytes];
+        private int capturedSize = 0;
+
+        private CapturingInputStream(InputStream in, String recordName, String sha1) {
+            super(in);
+            this.recordName = recordName;
+            this.sha1 = sha1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if(b < 0) {
+                finish(true);
+            } else if(captured != null) {
+                captured[capturedSize++] = (byte)b;
+                if(capturedSize == captured.length) {
+                    finish(false);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            var read = super.read(b, off, len);
+            if(read < 0) {
+                finish(true);
+            } else if(captured != null) {
+                var count = Math.min(read, captured.length - capturedSize);
+                System.arraycopy(b, off, captured, capturedSize, count);
+                capturedSize += count;
+                if(capturedSize == captured.length) {
+                    finish(false);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // The head has to be read from the start without gaps, so give up on it
+            captured = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void finish(boolean endOfStream) {
+            if(captured != null) {
+                put(recordName, new Head(sha1, Arrays.copyOf(captured, capturedSize), endOfStream));
+                captured = null;
+            }
+        }
+    }
+
+    /**
+     * Records how long it took from opening a stream until the first read from it returned
+     */
+    private static class FirstReadTimer extends FilterInputStream {
+        private final PackMetrics.KindMetrics metrics;
+        private final long start;
+        private boolean timed = false;
+
+        private FirstReadTimer(InputStream in, PackMetrics.KindMetrics metrics, long start) {
+            super(in);
+            this.metrics = metrics;
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            time();
+            return b;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            var read = super.read(b, off, len);
+            time();
+            return read;
+        }
+
+        private void time() {
+            if(!timed) {
+                timed = true;
+                metrics.record(System.nanoTime() - start, true);
+            }
+        }
+    }
+}
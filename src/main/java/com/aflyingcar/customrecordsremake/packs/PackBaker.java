@@ -0,0 +1,425 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.utils.CatalogCache;
+import com.aflyingcar.customrecordsremake.utils.ContentHash;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import net.minecraft.server.packs.PackType;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes everything {@link CustomRecordsPackResources} serves out as an ordinary zipped resource pack and data pack, in
+ *   'config/customrecordsremake/baked/'. A baked pack can be shipped with a modpack, or given to players as a server
+ *   resource pack, which their game downloads once and keeps.
+ * Each pack's pack.mcmeta holds a hash of everything the pack was generated from (see {@link #hashCatalog}). While that
+ *   still matches the loaded catalog, the zip is mounted as it is, and nothing is generated for that pack type at
+ *   startup. Once any record changes, the pack is out of date and is ignored until it is baked again.
+ * A resource pack baked without downscaled copies of oversized textures (such as on a dedicated server, where textures
+ *   are never preprocessed) is hashed as if no maximum texture size was set, and is still used wherever that maximum is
+ *   set, serving the textures at their original size.
+ * Every entry is written in order with a fixed timestamp, so baking the same records twice gives a byte-for-byte
+ *   identical zip, and clients that already have the server resource pack do not download it again.
+ */
+public class PackBaker {
+    /**
+     * Bumped whenever what is generated for the same records changes, so that packs baked by older versions are
+     *   treated as out of date
+     */
+    private static final int BAKE_FORMAT = 1;
+
+    private static final String BAKED_DIR = "baked";
+    private static final String META_SECTION = CustomRecordsRemakeMod.MODID;
+    private static final String META_HASH = "catalogHash";
+
+    /**
+     * The timestamp of every entry. Zip timestamps have no time zone, so this is given as a local time rather than an
+     *   instant, which keeps the zip the same whatever time zone it is baked in.
+     */
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    /**
+     * The result of baking one pack.
+     *
+     * @param path The zip that was written
+     * @param sha1 The hash of the whole zip, as a lowercase hex string. This is what 'resource-pack-sha1' in
+     *             server.properties must be set to.
+     * @param entries The number of resources in the zip, including the pack.mcmeta
+     */
+    public record Result(@NotNull Path path, @NotNull String sha1, int entries) { }
+
+    /**
+     * Which baked pack (if any) is up to date for a catalog.
+     *
+     * @param catalogVersion The version of the catalog that was checked
+     * @param path The up to date pack, or null if there is none
+     */
+    private record Check(int catalogVersion, @Nullable Path path) { }
+
+    private static final Map<PackType, Check> checks = new EnumMap<>(PackType.class);
+
+    /**
+     * Held for the whole of a bake, so that two bakes never write the same pack at once
+     */
+    private static final Object bakeLock = new Object();
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_HEADER_SIZE = 24;
+
+    /**
+     * Bakes both packs for the records in a game directory without starting the game, so that they can be shipped
+     *   already baked. This is what './gradlew bakePacks' runs.
+     *
+     * @param args The game directory, if it is not the working directory
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0) {
+            System.setProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY, args[0]);
+        } else if(System.getProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY) == null) {
+            System.setProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY, Path.of("").toAbsolutePath().toString());
+        }
+
+        CustomRecordsConfig.load(CustomRecordsRemakeMod.getConfigDir().resolve(CustomRecordsRemakeMod.MODID + "-common.toml"));
+        RecordJsonHandler.handleConfig(CustomRecordsRemakeMod.getRecordsResourcesDir().resolve("records.json").toFile());
+
+        var contents = PackContents.forCurrentCatalog();
+        for(var type : PackType.values()) {
+            var result = bake(contents, type);
+            System.out.println(result.path() + ": " + result.entries() + " resources, sha1 " + result.sha1());
+        }
+    }
+
+    @NotNull
+    public static Path getBakedDir() {
+        return CustomRecordsRemakeMod.getRecordsResourcesDir().resolve(BAKED_DIR);
+    }
+
+    /**
+     * @param type The type of pack
+     * @return Where the baked pack of that type is written to
+     */
+    @NotNull
+    public static Path getPath(@NotNull PackType type) {
+        return getBakedDir().resolve(CustomRecordsRemakeMod.MODID + (type == PackType.CLIENT_RESOURCES ? "-resources.zip" : "-data.zip"));
+    }
+
+    /**
+     * Finds the baked pack of the given type, if it is enabled and was baked from exactly the records in the given
+     *   catalog. The answer is remembered until a new catalog is published, so this is cheap to call every time the
+     *   pack is opened.
+     *
+     * @param catalog The catalog the pack must have been baked from
+     * @param type The type of pack
+     * @return The zip to mount, or null if resources must be generated
+     */
+    @Nullable
+    public static synchronized Path findCurrent(@NotNull RecordCatalog catalog, @NotNull PackType type) {
+        if(!CustomRecordsConfig.USE_BAKED_PACKS.get()) {
+            return null;
+        }
+
+        var check = checks.get(type);
+        if(check == null || check.catalogVersion() != catalog.getVersion()) {
+            check = new Check(catalog.getVersion(), checkBaked(catalog, type));
+            checks.put(type, check);
+        }
+        return check.path();
+    }
+
+    @Nullable
+    private static Path checkBaked(RecordCatalog catalog, PackType type) {
+        var path = getPath(type);
+        if(!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        // The hash is made from the asset hashes taken when the records were loaded, so it only says anything about the
+        //   assets on disk while they are still the files that were hashed. Only the resource pack holds assets.
+        if(type == PackType.CLIENT_RESOURCES) {
+            var stale = CatalogCache.countStale(CustomRecordsRemakeMod.getRecordsResourcesDir(), catalog.getRecords().values());
+            if(stale > 0) {
+                CustomRecordsRemakeMod.getLogger().info("Baked pack " + path + " will not be used, as " + stale + " records have had their assets changed since they were loaded. Run '/customrecords bake' to update it.");
+                return null;
+            }
+        }
+
+        String bakedHash;
+        try(var zip = new ZipFile(path.toFile())) {
+            var entry = zip.getEntry(ResourceIndex.PACK_META_PATH);
+            if(entry == null) {
+                CustomRecordsRemakeMod.getLogger().warn("Baked pack " + path + " has no pack.mcmeta, and will not be used.");
+                return null;
+            }
+
+            try(var reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+                var section = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonObject(META_SECTION);
+                bakedHash = section == null || !section.has(META_HASH) ? null : section.get(META_HASH).getAsString();
+            }
+        } catch(IOException | JsonParseException | IllegalStateException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to read baked pack " + path + ", it will not be used.", e);
+            return null;
+        }
+
+        var maxTextureSize = CustomRecordsConfig.MAX_TEXTURE_SIZE.get();
+        if(!hashCatalog(catalog, type, maxTextureSize).equals(bakedHash)) {
+            if(type != PackType.CLIENT_RESOURCES || maxTextureSize <= 0 || !hashCatalog(catalog, type, 0).equals(bakedHash)) {
+                CustomRecordsRemakeMod.getLogger().info("Baked pack " + path + " is out of date, " + type.getDirectory() + " will be generated instead. Run '/customrecords bake' to update it.");
+                return null;
+            }
+
+            CustomRecordsRemakeMod.getLogger().info("Baked pack " + path + " was baked without downscaled textures, so textures larger than " + maxTextureSize + "x" + maxTextureSize + " are served as they are. Run '/customrecords bake' on a client to bake downscaled copies.");
+        }
+
+        CustomRecordsRemakeMod.getLogger().info("Baked pack " + path + " is up to date, serving " + type.getDirectory() + " from it.");
+        return path;
+    }
+
+    /**
+     * Hashes everything that the pack of the given type is generated from: the registry mode, the maximum texture size
+     *   for a resource pack, and the name, length, recipe and asset hashes of every record, in order.
+     *
+     * @param catalog The catalog to hash
+     * @param type The type of pack
+     * @param maxTextureSize The size every texture in a resource pack fits within, or 0 if textures are at their original
+     *                       size. Not used for a data pack.
+     * @return The hash, as a lowercase hex string
+     */
+    @NotNull
+    public static String hashCatalog(@NotNull RecordCatalog catalog, @NotNull PackType type, int maxTextureSize) {
+        var digest = ContentHash.newDigest();
+        var builder = new StringBuilder(256);
+
+        builder.append(BAKE_FORMAT).append('\n').append(type.getDirectory()).append('\n').append(CustomRecordsConfig.REGISTRY_MODE.get()).append('\n');
+        if(type == PackType.CLIENT_RESOURCES) {
+            // Textures larger than this are baked as their downscaled copies
+            builder.append(maxTextureSize).append('\n');
+        }
+        digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+
+        for(var record : catalog.getRecords().values()) {
+            builder.setLength(0);
+            builder.append(record.fileName).append('\0')
+                   .append(record.name).append('\0')
+                   .append(record.length).append('\0')
+                   .append(record.recipe == null ? "" : record.recipe.getKey() + ":" + record.recipe.getValue()).append('\0')
+                   .append(record.oggInfo == null ? "" : record.oggInfo.sha1()).append('\0')
+                   .append(record.textureInfo == null ? "" : record.textureInfo.sha1()).append('\n');
+            digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return ContentHash.toHex(digest.digest());
+    }
+
+    /**
+     * Bakes every resource of the given type served for the given contents into a zip, replacing any that was baked
+     *   before.
+     * Textures are baked as they are served at the time, so a pack baked on a client holds any downscaled copies made by
+     *   the texture preprocessor, and one baked on a dedicated server holds any found in the texture cache. If any
+     *   texture larger than the maximum size had to be baked as it is, the pack is hashed as having original textures.
+     * Only one pack is baked at a time. If the new zip is identical to the one already baked, the old one is kept, since
+     *   it may be mounted, and some platforms refuse to replace a file that is open.
+     *
+     * @param contents What the virtual pack serves
+     * @param type The type of pack to bake
+     * @return The baked pack
+     * @throws IOException If any resource could not be read, or the zip could not be written
+     */
+    @NotNull
+    public static Result bake(@NotNull PackContents contents, @NotNull PackType type) throws IOException {
+        synchronized(bakeLock) {
+            var start = System.nanoTime();
+            var catalog = contents.getCatalog();
+            var index = contents.getIndex(type);
+            var path = getPath(type);
+            var maxTextureSize = CustomRecordsConfig.MAX_TEXTURE_SIZE.get();
+
+            Files.createDirectories(path.getParent());
+            var temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+            try {
+                var entries = 0;
+                var originalTextures = false;
+                try(var out = new ZipOutputStream(Files.newOutputStream(temp))) {
+                    for(var name : new TreeSet<>(index.getPaths())) {
+                        var handle = index.lookup(name);
+                        if(handle.kind() == ResourceIndex.Kind.PACK_META) {
+                            continue;
+                        }
+
+                        try(var stream = open(contents, type, name, handle)) {
+                            if(stream == null) {
+                                CustomRecordsRemakeMod.getLogger().warn("Nothing to bake for '" + name + "', it will be left out of " + path.getFileName());
+                                continue;
+                            }
+
+                            var bytes = stream.readAllBytes();
+                            if(handle.kind() == ResourceIndex.Kind.TEXTURE && maxTextureSize > 0 && isLargerThan(bytes, maxTextureSize)) {
+                                originalTextures = true;
+                            }
+
+                            // Oggs and pngs are already compressed, so they are stored as they are
+                            var compressed = handle.kind() != ResourceIndex.Kind.OGG && handle.kind() != ResourceIndex.Kind.TEXTURE;
+                            write(out, name, bytes, compressed);
+                            ++entries;
+                        }
+                    }
+
+                    // Written last, as its hash depends on whether every texture was baked downscaled
+                    write(out, ResourceIndex.PACK_META_PATH, renderPackMeta(catalog, type, originalTextures ? 0 : maxTextureSize), false);
+                    ++entries;
+                }
+
+                if(originalTextures) {
+                    CustomRecordsRemakeMod.getLogger().warn("Some textures in " + path.getFileName() + " are larger than " + maxTextureSize + "x" + maxTextureSize + ", as no downscaled copies of them were found. Bake on a client to include downscaled copies.");
+                }
+
+                var sha1 = ContentHash.of(temp);
+                if(Files.isRegularFile(path) && sha1.equals(ContentHash.of(path))) {
+                    CustomRecordsRemakeMod.getLogger().info(path + " is already up to date, keeping it.");
+                } else {
+                    try {
+                        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch(FileSystemException e) {
+                        throw new IOException(path + " could not be replaced, most likely because it is loaded as a resource pack. Reload resources so that the generated pack is used instead, then bake again.", e);
+                    }
+                }
+
+                Files.writeString(path.resolveSibling(path.getFileName() + ".sha1"), sha1 + "\n", StandardCharsets.UTF_8);
+
+                synchronized(PackBaker.class) {
+                    checks.remove(type);
+                }
+
+                CustomRecordsRemakeMod.getLogger().info("Baked " + entries + " " + type.getDirectory() + " resources for " + catalog.size() + " records into " + path + " (sha1 " + sha1 + ") in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+                return new Result(path, sha1, entries);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Opens a resource the same way {@link CustomRecordsPackResources} does, except that assets are always read from
+     *   this side's own files: assets synced from a server and the ogg head cache are both left out.
+     */
+    @Nullable
+    private static InputStream open(PackContents contents, PackType type, String name, ResourceIndex.Handle handle) throws IOException {
+        var recordsDir = CustomRecordsRemakeMod.getRecordsResourcesDir();
+        var record = handle.recordName() == null ? null : contents.getCatalog().getRecords().get(handle.recordName());
+
+        switch(handle.kind()) {
+            case SOUNDS_JSON:
+            case LANG:
+            case MODEL:
+            case RECIPE:
+                return contents.getPayloads(type).open(name);
+            case OGG:
+                return record == null ? null : RecordAssetReader.get().open(recordsDir, record.fileName + ".ogg", record.oggInfo);
+            case TEXTURE: {
+                if(record == null) {
+                    return null;
+                }
+
+                var derived = findDerivedTexture(record);
+                if(derived != null) {
+                    return RecordAssetReader.get().open(derived);
+                }
+                return RecordAssetReader.get().open(recordsDir, record.fileName + ".png", record.textureInfo);
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The downscaled copy of the record's texture served in its place, or null if the original is served
+     */
+    @Nullable
+    private static Path findDerivedTexture(RecordJsonHandler.Record record) {
+        var derived = DerivedTextureCache.get(record.fileName);
+        if(derived != null) {
+            return derived;
+        }
+
+        // The texture preprocessor only runs on clients, but any copy it made before is still on disk
+        var maxSize = CustomRecordsConfig.MAX_TEXTURE_SIZE.get();
+        if(maxSize > 0 && record.textureInfo != null) {
+            var cached = DerivedTextureCache.getPathFor(record.textureInfo.sha1(), maxSize);
+            if(Files.isRegularFile(cached)) {
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the width (at 16) and height (at 20) from the IHDR chunk at the start of a PNG.
+     *
+     * @return True if the PNG is wider or taller than the given size, false if it fits or is not a PNG
+     */
+    private static boolean isLargerThan(byte[] png, int maxSize) {
+        if(png.length < PNG_HEADER_SIZE) {
+            return false;
+        }
+
+        var header = ByteBuffer.wrap(png, 0, PNG_HEADER_SIZE);
+        return header.getLong(0) == PNG_SIGNATURE && Math.max(header.getInt(16), header.getInt(20)) > maxSize;
+    }
+
+    private static byte[] renderPackMeta(RecordCatalog catalog, PackType type, int maxTextureSize) {
+        var pack = new JsonObject();
+        pack.addProperty("description", "Custom Records Remake: " + catalog.size() + " records");
+        // The formats used by 1.19.2
+        pack.addProperty("pack_format", type == PackType.CLIENT_RESOURCES ? 9 : 10);
+
+        var section = new JsonObject();
+        section.addProperty(META_HASH, hashCatalog(catalog, type, maxTextureSize));
+
+        var meta = new JsonObject();
+        meta.add("pack", pack);
+        meta.add(META_SECTION, section);
+        return meta.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(ZipOutputStream out, String name, byte[] bytes, boolean compressed) throws IOException {
+        var entry = new ZipEntry(name);
+        entry.setTimeLocal(ENTRY_TIME);
+
+        if(!compressed) {
+            var crc = new CRC32();
+            crc.update(bytes);
+
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+}
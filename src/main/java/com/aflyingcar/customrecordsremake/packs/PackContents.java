@@ -0,0 +1,127 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.profiling.LoadPhaseEvent;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import com.google.common.base.Suppliers;
+import net.minecraft.server.packs.PackType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Everything {@link CustomRecordsPackResources} serves for a single catalog version.
+ * The pack is opened again every time the pack list is shown or resources are reloaded, so rather than each
+ *   {@link CustomRecordsPackResources} indexing every record itself, they all share the contents for the current
+ *   catalog. The index and the generated payloads are only built the first time they are needed, so merely opening
+ *   the pack (for example, to read its pack.mcmeta) does not cost anything per record. These are the only copies of
+ *   the index and payloads, so they are never rebuilt while the contents are kept, and are freed once they are not.
+ * Client resources and server data are indexed and rendered separately, so a dedicated server never does any work for
+ *   assets, and a client only indexes its assets once the first client resource reload asks for them.
+ */
+public class PackContents {
+    private static PackContents current;
+
+    private final RecordCatalog catalog;
+    private final Map<PackType, Supplier<ResourceIndex>> indexes;
+    private final Map<PackType, Supplier<GeneratedResourceCache>> payloads;
+
+    private PackContents(RecordCatalog catalog) {
+        this.catalog = catalog;
+        this.indexes = new EnumMap<>(PackType.class);
+        this.payloads = new EnumMap<>(PackType.class);
+
+        for(var type : PackType.values()) {
+            indexes.put(type, Suppliers.memoize(() -> buildIndex(type)));
+            payloads.put(type, Suppliers.memoize(() -> GeneratedResourceCache.render(catalog, type)));
+        }
+    }
+
+    /**
+     * Creates the contents for a catalog that generates the same resources as the one the given contents were made
+     *   for, sharing whatever they have already indexed and rendered.
+     */
+    private PackContents(RecordCatalog catalog, PackContents sameResources) {
+        this.catalog = catalog;
+        this.indexes = sameResources.indexes;
+        this.payloads = sameResources.payloads;
+    }
+
+    /**
+     * Gets the contents for the currently published catalog. The same contents are returned until a new catalog is
+     *   published, so this is cheap to call every time the pack is opened.
+     *
+     * @return The contents for the current catalog
+     */
+    @NotNull
+    public static PackContents forCurrentCatalog() {
+        return forCatalog(RecordCatalog.current());
+    }
+
+    /**
+     * Gets the contents for the given catalog, replacing the shared contents if they belong to a different catalog.
+     *   If the other catalog generates the same resources, such as when only a single asset has been edited, nothing
+     *   is indexed or rendered again, only which catalog assets are looked up in changes.
+     *
+     * @param catalog The catalog to get the contents for
+     * @return The contents for the given catalog
+     */
+    @NotNull
+    public static synchronized PackContents forCatalog(@NotNull RecordCatalog catalog) {
+        if(current == null || current.catalog.getVersion() != catalog.getVersion()) {
+            current = current != null && current.catalog.getResourcesVersion() == catalog.getResourcesVersion() ? new PackContents(catalog, current)
+                                                                                                                  : new PackContents(catalog);
+        }
+
+        return current;
+    }
+
+    private ResourceIndex buildIndex(PackType type) {
+        var event = LoadPhaseEvent.begin(LoadPhaseEvent.PACK_INDEXING);
+        var start = System.nanoTime();
+
+        var built = ResourceIndex.build(catalog.getRecords().values(), catalog.getAssetDedup(), type);
+
+        CustomRecordsRemakeMod.getLogger().debug("Indexed " + built.size() + " " + type.getDirectory() + " resources for " + catalog.size() + " records (catalog version " + catalog.getVersion() + ") in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        event.finish(catalog.size(), 0, null);
+
+        return built;
+    }
+
+    /**
+     * @return The catalog these contents were made for
+     */
+    @NotNull
+    public RecordCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @param type The type of pack
+     * @return The index over every resource of that type in the pack, built the first time this is called
+     */
+    @NotNull
+    public ResourceIndex getIndex(@NotNull PackType type) {
+        return indexes.get(type).get();
+    }
+
+    /**
+     * @param fullPath The full path of a resource
+     * @return The index that the resource would be in
+     */
+    @NotNull
+    public ResourceIndex getIndex(@NotNull String fullPath) {
+        return getIndex(ResourceIndex.getPackType(fullPath));
+    }
+
+    /**
+     * @param type The type of pack
+     * @return Every generated payload of that type in the pack, rendered the first time this is called
+     */
+    @NotNull
+    public GeneratedResourceCache getPayloads(@NotNull PackType type) {
+        return payloads.get(type).get();
+    }
+}
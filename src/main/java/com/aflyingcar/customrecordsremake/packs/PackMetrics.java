@@ -0,0 +1,302 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Counts what {@link CustomRecordsPackResources} serves: calls, hits, misses, bytes and latency for each kind of
+ *   resource. Resources are requested from many reload threads at once, so every counter is lock-free.
+ * One set of metrics is shared by every pack instance, so the numbers cover the whole session rather than a single
+ *   reload.
+ */
+public class PackMetrics {
+    /**
+     * Latencies are bucketed by powers of two, so bucket 'i' holds every latency in [2^i, 2^(i+1)) nanoseconds
+     */
+    public static final int HISTOGRAM_BUCKETS = 64;
+
+    private static final PackMetrics instance = new PackMetrics();
+
+    private static ScheduledExecutorService summaryExecutor;
+
+    /**
+     * Counts calls and their latencies. Also used by the {@link OggHeadCache} to time how long records take to start.
+     */
+    static class KindMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        void record(long nanos, boolean hit) {
+            calls.increment();
+            (hit ? hits : misses).increment();
+            totalNanos.add(nanos);
+            histogram.incrementAndGet(bucketOf(nanos));
+        }
+
+        KindSnapshot snapshot() {
+            var buckets = new long[HISTOGRAM_BUCKETS];
+            for(int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+                buckets[i] = histogram.get(i);
+            }
+            return new KindSnapshot(calls.sum(), hits.sum(), misses.sum(), bytes.sum(), totalNanos.sum(), buckets);
+        }
+    }
+
+    private final EnumMap<ResourceIndex.Kind, KindMetrics> kinds = new EnumMap<>(ResourceIndex.Kind.class);
+    private final LongAdder hasResourceCalls = new LongAdder();
+    private final LongAdder hasResourceHits = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    private PackMetrics() {
+        // Filled in up front and never modified afterwards, so reading it from many threads is safe
+        for(var kind : ResourceIndex.Kind.values()) {
+            kinds.put(kind, new KindMetrics());
+        }
+    }
+
+    @NotNull
+    public static PackMetrics get() {
+        return instance;
+    }
+
+    /**
+     * Records a single getResource call.
+     *
+     * @param kind The kind of resource that was asked for ({@link ResourceIndex.Kind#UNKNOWN} for the fallback path)
+     * @param nanos How long it took to open the resource
+     * @param hit True if the resource was found
+     */
+    public void recordGet(@NotNull ResourceIndex.Kind kind, long nanos, boolean hit) {
+        kinds.get(kind).record(nanos, hit);
+    }
+
+    /**
+     * Records a single hasResource call.
+     *
+     * @param hit True if the resource was found
+     */
+    public void recordHas(boolean hit) {
+        hasResourceCalls.increment();
+        if(hit) {
+            hasResourceHits.increment();
+        }
+    }
+
+    /**
+     * Wraps a stream so that the bytes read from it are counted against the given kind of resource once it is closed.
+     *
+     * @param kind The kind of resource the stream is over
+     * @param stream The stream to count
+     * @param onClose Given the number of bytes read from the stream once it is closed, if not null
+     * @return A stream that reads from 'stream'
+     */
+    @NotNull
+    public InputStream countBytes(@NotNull ResourceIndex.Kind kind, @NotNull InputStream stream, @Nullable LongConsumer onClose) {
+        return new CountingInputStream(stream, kinds.get(kind).bytes, onClose);
+    }
+
+    /**
+     * Takes a copy of every counter. Counters are read one at a time while others may still be updating them, so the
+     *   totals may be very slightly out of step with each other.
+     *
+     * @return A copy of the current metrics
+     */
+    @NotNull
+    public Snapshot snapshot() {
+        var builder = ImmutableMap.<ResourceIndex.Kind, KindSnapshot>builder();
+        kinds.forEach((kind, metrics) -> builder.put(kind, metrics.snapshot()));
+        return new Snapshot(System.nanoTime() - startNanos, hasResourceCalls.sum(), hasResourceHits.sum(), builder.build());
+    }
+
+    /**
+     * Starts logging a summary of the metrics every so often, if anything has been served since the last summary.
+     *
+     * @param intervalMinutes How often to log a summary, or 0 to never log one
+     */
+    public static synchronized void startPeriodicSummary(int intervalMinutes) {
+        if(intervalMinutes <= 0 || summaryExecutor != null) {
+            return;
+        }
+
+        summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "CustomRecords Metrics Summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        var lastCalls = new long[] { -1 };
+        summaryExecutor.scheduleAtFixedRate(() -> {
+            var snapshot = instance.snapshot();
+            var calls = snapshot.getTotalCalls();
+            if(calls == lastCalls[0]) {
+                return;
+            }
+            lastCalls[0] = calls;
+
+            CustomRecordsRemakeMod.getLogger().info("Resource pack metrics: " + snapshot.summarize());
+
+            var heads = OggHeadCache.currentStats();
+            if(heads.getPlays() > 0) {
+                CustomRecordsRemakeMod.getLogger().info("Ogg head cache: " + heads.summarize());
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * A copy of the metrics for a single kind of resource.
+     *
+     * @param calls How many times this kind of resource was asked for
+     * @param hits How many of those were served
+     * @param misses How many of those could not be served
+     * @param bytes How many bytes have been read from the served resources
+     * @param totalNanos The total time spent opening this kind of resource
+     * @param histogram How many calls took [2^i, 2^(i+1)) nanoseconds, for each i
+     */
+    public record KindSnapshot(long calls, long hits, long misses, long bytes, long totalNanos, long[] histogram) {
+        public long getMeanNanos() {
+            return calls == 0 ? 0 : totalNanos / calls;
+        }
+
+        /**
+         * Estimates a percentile of the latency from the histogram.
+         *
+         * @param percentile The percentile to estimate, between 0 and 100
+         * @return The upper bound of the bucket holding that percentile, in nanoseconds
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for(var count : histogram) {
+                total += count;
+            }
+            if(total == 0) {
+                return 0;
+            }
+
+            var target = (long)Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for(int i = 0; i < histogram.length; ++i) {
+                seen += histogram[i];
+                if(seen >= target) {
+                    return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return calls + " calls (" + hits + " hits, " + misses + " misses), " + bytes / 1024 + " KiB, " +
+                   "mean " + getMeanNanos() / 1_000 + "us, p50 <" + getPercentileNanos(50) / 1_000 + "us, p99 <" + getPercentileNanos(99) / 1_000 + "us";
+        }
+    }
+
+    /**
+     * A copy of every metric, at a single point in time.
+     *
+     * @param uptimeNanos How long the metrics have been collected for
+     * @param hasResourceCalls How many times the pack was asked if it has a resource
+     * @param hasResourceHits How many of those it did have
+     * @param kinds The metrics for each kind of resource
+     */
+    public record Snapshot(long uptimeNanos, long hasResourceCalls, long hasResourceHits, @NotNull Map<ResourceIndex.Kind, KindSnapshot> kinds) {
+        public long getTotalCalls() {
+            return hasResourceCalls + kinds.values().stream().mapToLong(KindSnapshot::calls).sum();
+        }
+
+        /**
+         * @return A single line describing every kind of resource that has been asked for
+         */
+        @NotNull
+        public String summarize() {
+            var builder = new StringBuilder();
+            builder.append("hasResource ").append(hasResourceCalls).append(" calls (").append(hasResourceHits).append(" hits)");
+            kinds.forEach((kind, metrics) -> {
+                if(metrics.calls() > 0) {
+                    builder.append("; ").append(kind).append(": ").append(metrics);
+                }
+            });
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Counts bytes locally while reading, and only adds them to the shared counter once, when closed
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder counter;
+        private final LongConsumer onClose;
+        private long count = 0;
+        private boolean closed = false;
+
+        private CountingInputStream(InputStream in, LongAdder counter, @Nullable LongConsumer onClose) {
+            super(in);
+            this.counter = counter;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if(b >= 0) {
+                ++count;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            var read = super.read(b, off, len);
+            if(read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            var skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            // Re-reading after a reset would count bytes twice
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!closed) {
+                closed = true;
+                counter.add(count);
+                if(onClose != null) {
+                    onClose.accept(count);
+                }
+            }
+            super.close();
+        }
+    }
+}
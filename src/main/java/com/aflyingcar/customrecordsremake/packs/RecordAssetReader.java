@@ -0,0 +1,208 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.utils.AssetInfo;
+import com.aflyingcar.customrecordsremake.utils.ByteBufferInputStream;
+import com.aflyingcar.customrecordsremake.utils.DiscArchive;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens the .ogg and .png files backing each record.
+ * Depending on the configured {@link Mode}, files are either memory-mapped (with a bounded pool of mappings shared
+ *   between streams), read through a FileChannel with a read-ahead buffer, or read through a plain FileInputStream.
+ * A mapping is only reused while its file still has the size, modification time and (where the platform has one)
+ *   file key it was mapped with, so a file replaced with one of the same size is never served from the old mapping.
+ */
+public class RecordAssetReader {
+    public enum Mode {
+        MAPPED,
+        CHANNEL,
+        STREAM
+    }
+
+    private static RecordAssetReader instance;
+
+    /**
+     * A file mapped into memory, along with what identified the file when it was mapped
+     */
+    private record Mapping(MappedByteBuffer buffer, long size, long lastModified, @Nullable Object fileKey) {
+        static Mapping of(MappedByteBuffer buffer, BasicFileAttributes attributes) {
+            return new Mapping(buffer, attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+        }
+
+        /**
+         * @return True if the file these are the attributes of is still the one that was mapped
+         */
+        boolean isOf(BasicFileAttributes attributes) {
+            return buffer.capacity() == attributes.size() && size == attributes.size() &&
+                   lastModified == attributes.lastModifiedTime().toMillis() && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+
+    private final Mode mode;
+    private final int readAheadBytes;
+    private final int maxMappings;
+    private final long maxMappedFileSize;
+
+    /**
+     * Every mapping currently held, in least-recently-used order. Evicted mappings are released once the last stream
+     *   reading from them has been collected.
+     */
+    private final LinkedHashMap<Path, Mapping> mappings;
+
+    /**
+     * How many requests each mode has served
+     */
+    private final EnumMap<Mode, LongAdder> served = new EnumMap<>(Mode.class);
+
+    public RecordAssetReader(@NotNull Mode mode, int readAheadBytes, int maxMappings, long maxMappedFileSize) {
+        this.mode = mode;
+        this.readAheadBytes = readAheadBytes;
+        this.maxMappings = maxMappings;
+        this.maxMappedFileSize = maxMappedFileSize;
+        this.mappings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Mapping> eldest) {
+                return size() > RecordAssetReader.this.maxMappings;
+            }
+        };
+
+        for(var m : Mode.values()) {
+            served.put(m, new LongAdder());
+        }
+    }
+
+    /**
+     * Gets the shared reader, creating it from the current config if needed.
+     *
+     * @return The shared reader
+     */
+    @NotNull
+    public static synchronized RecordAssetReader get() {
+        if(instance == null) {
+            instance = new RecordAssetReader(CustomRecordsConfig.ASSET_IO_MODE.get(),
+                                             CustomRecordsConfig.ASSET_READ_AHEAD_KIB.get() * 1024,
+                                             CustomRecordsConfig.ASSET_MAX_MAPPINGS.get(),
+                                             CustomRecordsConfig.ASSET_MAX_MAPPED_FILE_MIB.get() * 1024L * 1024L);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Opens the given file using the configured mode.
+     *
+     * @param path The file to open
+     * @return A stream over the whole file
+     * @throws IOException If the file could not be opened
+     */
+    @NotNull
+    public InputStream open(@NotNull Path path) throws IOException {
+        switch(mode) {
+            case STREAM -> {
+                served.get(Mode.STREAM).increment();
+                return new FileInputStream(path.toFile());
+            }
+            case MAPPED -> {
+                // A file that is already mapped is served without opening it again, only checking it is still the same
+                //   file. Files too large to map are read through a channel instead.
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if(attributes.size() <= maxMappedFileSize) {
+                    served.get(Mode.MAPPED).increment();
+                    return new ByteBufferInputStream(getOrMap(path, attributes));
+                }
+            }
+        }
+
+        served.get(Mode.CHANNEL).increment();
+        return new BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), readAheadBytes);
+    }
+
+    /**
+     * Opens one of a record's assets, from the disc archive it was found in if there is one, or otherwise from the
+     *   records directory using the configured mode.
+     *
+     * @param recordsDir The records directory
+     * @param fileName The name of the asset (for example '{filename}.ogg')
+     * @param info What was known about the asset when the records were loaded, if anything
+     * @return A stream over the whole asset
+     * @throws IOException If the asset could not be opened
+     */
+    @NotNull
+    public InputStream open(@NotNull Path recordsDir, @NotNull String fileName, @Nullable AssetInfo info) throws IOException {
+        var archive = info == null || info.archive() == null ? null : DiscArchive.getLoaded(info.archive());
+        if(archive != null) {
+            return archive.open(fileName);
+        }
+        return open(recordsDir.resolve(fileName));
+    }
+
+    @NotNull
+    private MappedByteBuffer getOrMap(Path path, BasicFileAttributes attributes) throws IOException {
+        synchronized(mappings) {
+            var mapping = mappings.get(path);
+
+            // A file that was rewritten or replaced since it was mapped must be mapped again
+            if(mapping == null || !mapping.isOf(attributes)) {
+                try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    mapping = Mapping.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), attributes);
+                }
+                mappings.put(path, mapping);
+            }
+
+            return mapping.buffer();
+        }
+    }
+
+    /**
+     * Drops the mapping held for the given file, if there is one. The mapping is released once the last stream reading
+     *   from it has been collected, after which the file can be replaced or deleted on platforms that lock mapped files.
+     *
+     * @param path The file that has changed
+     */
+    public void invalidate(@NotNull Path path) {
+        synchronized(mappings) {
+            mappings.remove(path);
+        }
+    }
+
+    public long getServedCount(@NotNull Mode servedBy) {
+        return served.get(servedBy).sum();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public String toString() {
+        int openMappings;
+        synchronized(mappings) {
+            openMappings = mappings.size();
+        }
+
+        return "RecordAssetReader[mode=" + mode +
+               ", mapped=" + getServedCount(Mode.MAPPED) +
+               ", channel=" + getServedCount(Mode.CHANNEL) +
+               ", stream=" + getServedCount(Mode.STREAM) +
+               ", openMappings=" + openMappings + "/" + maxMappings + "]";
+    }
+}
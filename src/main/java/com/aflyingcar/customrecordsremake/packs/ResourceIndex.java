@@ -0,0 +1,263 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.item.ModItems;
+import com.aflyingcar.customrecordsremake.utils.AssetDedup;
+import com.aflyingcar.customrecordsremake.utils.RecordJsonHandler;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackType;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable lookup table mapping every full path served by {@link CustomRecordsPackResources} to a typed handle.
+ * One index is built per pack type, so that lookups during a resource reload are O(1) instead of scanning a list for
+ *   every record, and so that a dedicated server (which only ever loads data packs) never indexes any assets.
+ *
+ * Alongside it, every resource is listed per pack type and namespace in a map sorted by path, so that listing the
+ *   resources under a directory is a range scan rather than a walk over every resource.
+ */
+public class ResourceIndex {
+    /**
+     * Every kind of resource that the virtual pack knows how to serve
+     */
+    public enum Kind {
+        PACK_META,
+        SOUNDS_JSON,
+        LANG,
+        MODEL,
+        OGG,
+        TEXTURE,
+        RECIPE,
+        UNKNOWN
+    }
+
+    /**
+     * A typed handle for a single resource.
+     *
+     * @param kind The kind of resource this handle refers to
+     * @param recordName The fileName of the record this resource belongs to, or null if it is not tied to a single
+     *                   record (sounds.json, lang, pack.mcmeta)
+     */
+    public record Handle(@NotNull Kind kind, @Nullable String recordName) {
+        public static final Handle UNKNOWN = new Handle(Kind.UNKNOWN, null);
+    }
+
+    public static final String PACK_META_PATH = "pack.mcmeta";
+    public static final String SOUNDS_JSON_PATH = assetPath("/sounds.json");
+    public static final String LANG_PATH = assetPath("/lang/en_us.json");
+    public static final String VARIANT_MODEL_PATH = assetPath("/models/item/" + ModItems.VARIANT_RECORD_NAME + ".json");
+
+    private final ImmutableMap<String, Handle> handles;
+
+    /**
+     * Every resource (other than pack.mcmeta) by pack type, then namespace, then path within the namespace
+     */
+    private final ImmutableMap<PackType, ImmutableMap<String, ImmutableSortedMap<String, ResourceLocation>>> listings;
+
+    /**
+     * Every name we have been asked for that is not in this index. Used so that we only warn once per unknown name.
+     */
+    private final Set<String> misses = ConcurrentHashMap.newKeySet();
+
+    private ResourceIndex(ImmutableMap<String, Handle> handles, ImmutableMap<PackType, ImmutableMap<String, ImmutableSortedMap<String, ResourceLocation>>> listings) {
+        this.handles = handles;
+        this.listings = listings;
+    }
+
+    /**
+     * Builds a new index over every resource of the given type generated for the given records. Assets that are
+     *   identical to another record's are left out, as nothing generated refers to them.
+     *
+     * @param records The records to index
+     * @param dedup Which records share their assets
+     * @param type The type of pack to index resources for
+     * @return A new index
+     */
+    @NotNull
+    public static ResourceIndex build(@NotNull Collection<RecordJsonHandler.Record> records, @NotNull AssetDedup dedup, @NotNull PackType type) {
+        ImmutableMap.Builder<String, Handle> builder = ImmutableMap.builderWithExpectedSize(4 + records.size() * (type == PackType.CLIENT_RESOURCES ? 3 : 1));
+
+        builder.put(PACK_META_PATH, new Handle(Kind.PACK_META, null));
+
+        if(type == PackType.CLIENT_RESOURCES) {
+            builder.put(SOUNDS_JSON_PATH, new Handle(Kind.SOUNDS_JSON, null));
+            builder.put(LANG_PATH, new Handle(Kind.LANG, null));
+            if(isVariantMode()) {
+                builder.put(VARIANT_MODEL_PATH, new Handle(Kind.MODEL, null));
+            }
+
+            for(var record : records) {
+                builder.put(modelPath(record.fileName), new Handle(Kind.MODEL, record.fileName));
+                if(!dedup.isOggAlias(record.fileName)) {
+                    builder.put(assetPath("/sounds/music/" + record.fileName + ".ogg"), new Handle(Kind.OGG, record.fileName));
+                }
+                if(!dedup.isTextureAlias(record.fileName)) {
+                    builder.put(assetPath("/textures/items/" + record.fileName + ".png"), new Handle(Kind.TEXTURE, record.fileName));
+                }
+            }
+        } else {
+            for(var record : records) {
+                // Do not add a recipe if the record doesn't have one
+                if(record.recipe != null) {
+                    builder.put(dataPath("/recipes/" + record.fileName + ".json"), new Handle(Kind.RECIPE, record.fileName));
+                }
+            }
+        }
+
+        var handles = builder.build();
+        return new ResourceIndex(handles, buildListings(handles.keySet()));
+    }
+
+    /**
+     * Splits every full path (such as 'assets/{MODID}/models/item/x.json') up by pack type and namespace.
+     */
+    private static ImmutableMap<PackType, ImmutableMap<String, ImmutableSortedMap<String, ResourceLocation>>> buildListings(Collection<String> fullPaths) {
+        var byType = new EnumMap<PackType, Map<String, ImmutableSortedMap.Builder<String, ResourceLocation>>>(PackType.class);
+
+        for(var fullPath : fullPaths) {
+            for(var type : PackType.values()) {
+                var prefix = type.getDirectory() + "/";
+                if(!fullPath.startsWith(prefix)) {
+                    continue;
+                }
+
+                var namespaceEnd = fullPath.indexOf('/', prefix.length());
+                if(namespaceEnd < 0) {
+                    continue;
+                }
+
+                var namespace = fullPath.substring(prefix.length(), namespaceEnd);
+                var path = fullPath.substring(namespaceEnd + 1);
+                byType.computeIfAbsent(type, t -> new HashMap<>())
+                      .computeIfAbsent(namespace, n -> ImmutableSortedMap.naturalOrder())
+                      .put(path, new ResourceLocation(namespace, path));
+            }
+        }
+
+        var listings = ImmutableMap.<PackType, ImmutableMap<String, ImmutableSortedMap<String, ResourceLocation>>>builder();
+        byType.forEach((type, namespaces) -> {
+            var built = ImmutableMap.<String, ImmutableSortedMap<String, ResourceLocation>>builder();
+            namespaces.forEach((namespace, paths) -> built.put(namespace, paths.build()));
+            listings.put(type, built.build());
+        });
+        return listings.build();
+    }
+
+    /**
+     * Looks up the handle for the given full path.
+     *
+     * @param path The full path of the resource (for example 'assets/{MODID}/sounds.json')
+     * @return The handle for the path, or {@link Handle#UNKNOWN} if this index does not contain it
+     */
+    @NotNull
+    public Handle lookup(String path) {
+        return handles.getOrDefault(path, Handle.UNKNOWN);
+    }
+
+    public boolean contains(String path) {
+        return handles.containsKey(path);
+    }
+
+    /**
+     * @return The full path of every resource in this index
+     */
+    @NotNull
+    public Set<String> getPaths() {
+        return handles.keySet();
+    }
+
+    /**
+     * Records that the given path was asked for but is not in this index.
+     *
+     * @param path The path that was missed
+     * @return True if this is the first time this path has been missed
+     */
+    public boolean recordMiss(String path) {
+        return misses.add(path);
+    }
+
+    /**
+     * Lists every resource under the given directory.
+     *
+     * @param type The type of pack to list resources from
+     * @param namespace The namespace to list resources from
+     * @param directory The directory within the namespace (for example 'recipes'), or an empty string for everything
+     * @return The location of every resource under the directory, in order of path
+     */
+    @NotNull
+    public Collection<ResourceLocation> list(@NotNull PackType type, @NotNull String namespace, @NotNull String directory) {
+        var paths = listings.getOrDefault(type, ImmutableMap.of()).get(namespace);
+        if(paths == null) {
+            return ImmutableList.of();
+        }
+
+        if(directory.isEmpty()) {
+            return paths.values();
+        }
+
+        // Everything under 'directory/' sorts between 'directory/' and 'directory0', as '0' follows '/'
+        var prefix = directory.endsWith("/") ? directory : directory + "/";
+        return paths.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + '0', false).values();
+    }
+
+    /**
+     * @param type The type of pack
+     * @return Every namespace that has resources of the given type
+     */
+    @NotNull
+    public Set<String> getNamespaces(@NotNull PackType type) {
+        return listings.getOrDefault(type, ImmutableMap.of()).keySet();
+    }
+
+    public int size() {
+        return handles.size();
+    }
+
+    /**
+     * Gets the full path of the model generated for a record. In {@link ModItems.Mode#VARIANT} mode the models are only
+     *   used as overrides of the shared item's model, so they are kept apart from it.
+     *
+     * @param fileName The filename of the record
+     * @return The full path of the model
+     */
+    public static String modelPath(String fileName) {
+        return assetPath((isVariantMode() ? "/models/item/discs/" : "/models/item/") + fileName + ".json");
+    }
+
+    /**
+     * @return True if every record shares a single item, which has a model of its own
+     */
+    public static boolean isVariantMode() {
+        return CustomRecordsConfig.REGISTRY_MODE.get() == ModItems.Mode.VARIANT;
+    }
+
+    /**
+     * @param fullPath The full path of a resource (for example 'data/{MODID}/recipes/x.json')
+     * @return The type of pack the resource belongs in. Anything that is not data is treated as a client resource.
+     */
+    @NotNull
+    public static PackType getPackType(@NotNull String fullPath) {
+        var dataDirectory = PackType.SERVER_DATA.getDirectory();
+        return fullPath.startsWith(dataDirectory) && fullPath.startsWith("/", dataDirectory.length()) ? PackType.SERVER_DATA : PackType.CLIENT_RESOURCES;
+    }
+
+    public static String assetPath(String relativePath) {
+        return "assets/" + CustomRecordsRemakeMod.MODID + relativePath;
+    }
+
+    public static String dataPath(String relativePath) {
+        return "data/" + CustomRecordsRemakeMod.MODID + relativePath;
+    }
+}
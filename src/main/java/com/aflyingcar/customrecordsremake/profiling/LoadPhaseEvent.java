@@ -0,0 +1,88 @@
+package com.aflyingcar.customrecordsremake.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+
+/**
+ * A Java Flight Recorder event covering one phase of loading this mod, such as parsing records.json or building the
+ *   virtual resource pack. Events are only recorded while a recording with this event enabled is running, and cost
+ *   next to nothing otherwise.
+ *
+ * Usage:
+ *   var event = LoadPhaseEvent.begin(LoadPhaseEvent.CATALOG);
+ *   ...
+ *   event.finish(recordCount, bytes, path);
+ */
+@Name("customrecordsremake.LoadPhase")
+@Label("Load Phase")
+@Category({ "Custom Records Remake" })
+@Description("A phase of loading the Custom Records Remake mod")
+public class LoadPhaseEvent extends Event {
+    public static final String CONFIG = "config";
+    public static final String CATALOG = "catalog";
+    public static final String SOUNDS_JSON = "soundsJson";
+    public static final String TEXTURE_PREPROCESSING = "texturePreprocessing";
+    public static final String ITEM_SUPPLIERS = "itemSuppliers";
+    public static final String INIT_SOUNDS = "initSounds";
+    public static final String LOAD_PACKS = "loadPacks";
+    public static final String PACK_INDEXING = "packIndexing";
+    public static final String PACK_PRERENDER = "packPrerender";
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Record Count")
+    public int recordCount;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Path")
+    @Description("The file this phase read or produced, if any")
+    public String path;
+
+    /**
+     * When this phase started, for the {@link LoadTimeline}. Transient so that it is not recorded.
+     */
+    private transient long startNanos;
+
+    /**
+     * Creates an event and starts timing it.
+     *
+     * @param phase The name of the phase, such as {@link #CATALOG}
+     * @return The started event
+     */
+    @NotNull
+    public static LoadPhaseEvent begin(@NotNull String phase) {
+        var event = new LoadPhaseEvent();
+        event.phase = phase;
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing this event and commits it, if it is enabled. The phase is logged to the {@link LoadTimeline} either
+     *   way.
+     *
+     * @param recordCount The number of records this phase dealt with
+     * @param bytes The number of bytes this phase read or produced
+     * @param path The file this phase read or produced, if any
+     */
+    public void finish(int recordCount, long bytes, @Nullable String path) {
+        this.recordCount = recordCount;
+        this.bytes = bytes;
+        this.path = path;
+        commit();
+
+        LoadTimeline.phase(phase, startNanos, System.nanoTime(), recordCount);
+    }
+}
@@ -0,0 +1,70 @@
+package com.aflyingcar.customrecordsremake.profiling;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Logs when each {@link LoadPhaseEvent} ran, relative to when the mod was constructed, and on which thread. This shows
+ *   which phases overlapped with the rest of the game's startup, and how long anything had to wait for them, without
+ *   needing a flight recording.
+ * Phases are logged at INFO until startup is complete, and at DEBUG after that (for example, when resources are
+ *   reloaded).
+ */
+public class LoadTimeline {
+    private static volatile long origin = System.nanoTime();
+    private static volatile boolean complete = false;
+
+    /**
+     * Starts the timeline. Every phase is timed relative to this.
+     */
+    public static void start() {
+        origin = System.nanoTime();
+        complete = false;
+    }
+
+    /**
+     * Ends the timeline, once the game has finished loading.
+     */
+    public static void complete() {
+        if(!complete) {
+            complete = true;
+            CustomRecordsRemakeMod.getLogger().info("Startup finished at +" + sinceOrigin(System.nanoTime()) + "ms");
+        }
+    }
+
+    /**
+     * Logs that a phase ran.
+     *
+     * @param phase The name of the phase
+     * @param startNanos When the phase started, from System#nanoTime
+     * @param endNanos When the phase ended, from System#nanoTime
+     * @param recordCount The number of records the phase dealt with
+     */
+    static void phase(@NotNull String phase, long startNanos, long endNanos, int recordCount) {
+        log("Load phase '" + phase + "' ran from +" + sinceOrigin(startNanos) + "ms to +" + sinceOrigin(endNanos) + "ms (" +
+            (endNanos - startNanos) / 1_000_000 + "ms, " + recordCount + " records) on " + Thread.currentThread().getName());
+    }
+
+    /**
+     * Logs that something had to wait for work running in the background.
+     *
+     * @param waiter What was waiting
+     * @param awaited What it was waiting for
+     * @param startNanos When it started waiting, from System#nanoTime
+     */
+    public static void waited(@NotNull String waiter, @NotNull String awaited, long startNanos) {
+        log(waiter + " waited " + (System.nanoTime() - startNanos) / 1_000_000 + "ms for " + awaited + " at +" + sinceOrigin(startNanos) + "ms on " + Thread.currentThread().getName());
+    }
+
+    private static long sinceOrigin(long nanos) {
+        return (nanos - origin) / 1_000_000;
+    }
+
+    private static void log(String message) {
+        if(complete) {
+            CustomRecordsRemakeMod.getLogger().debug(message);
+        } else {
+            CustomRecordsRemakeMod.getLogger().info(message);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.aflyingcar.customrecordsremake.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for a single getResource call on the virtual resource pack.
+ * The duration covers finding and opening the resource. The number of bytes is only known once the caller has finished
+ *   reading, so served resources are committed when their stream is closed, while misses are committed straight away.
+ */
+@Name("customrecordsremake.ResourceServed")
+@Label("Resource Served")
+@Category({ "Custom Records Remake" })
+@Description("A resource requested from the Custom Records Remake virtual resource pack")
+@StackTrace(false)
+public class ResourceServedEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Hit")
+    @Description("Whether the pack had the resource")
+    public boolean hit;
+
+    @Label("Record Count")
+    @Description("The number of records in the pack that served this resource")
+    public int recordCount;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,94 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.aflyingcar.customrecordsremake.network.CustomRecordsNetwork;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a {@link SyncServerSession} for every player on the server.
+ * Sessions are only ever touched from a single worker thread, so that reading assets never holds up the server tick or
+ *   the network threads. Only the sending itself happens on the network thread, as each player's connection hands
+ *   messages sent from other threads over to it.
+ */
+public class AssetSyncService {
+    private static final Map<UUID, SyncServerSession> sessions = new HashMap<>();
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "CustomRecords Asset Sync (Server)");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts syncing assets with a player that has just logged in.
+     */
+    public static void onLogin(@NotNull PlayerEvent.PlayerLoggedInEvent event) {
+        if(!CustomRecordsConfig.SYNC_ENABLED.get() || !(event.getEntity() instanceof ServerPlayer player)) {
+            return;
+        }
+
+        var catalog = RecordCatalog.current();
+        var chunkSize = CustomRecordsConfig.SYNC_CHUNK_KIB.get() * 1024;
+        var window = CustomRecordsConfig.SYNC_WINDOW.get();
+
+        runOnWorker(() -> {
+            var session = SyncServerSession.forCatalog(catalog, message -> CustomRecordsNetwork.sendToPlayer(player, message), chunkSize, window);
+
+            var previous = sessions.put(player.getUUID(), session);
+            if(previous != null) {
+                previous.close();
+            }
+
+            session.start();
+        });
+    }
+
+    public static void onLogout(@NotNull PlayerEvent.PlayerLoggedOutEvent event) {
+        if(!(event.getEntity() instanceof ServerPlayer player)) {
+            return;
+        }
+
+        runOnWorker(() -> {
+            var session = sessions.remove(player.getUUID());
+            if(session != null) {
+                CustomRecordsRemakeMod.getLogger().debug("Sent " + session.getAssetsSent() + " assets (" + session.getBytesSent() + " bytes) to " + player.getUUID() + " before they logged out.");
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Handles a sync message sent by a player. May be called from any thread, the message is handled on the worker.
+     */
+    public static void handle(@NotNull ServerPlayer player, @NotNull SyncMessage message) {
+        runOnWorker(() -> {
+            var session = sessions.get(player.getUUID());
+            if(session == null) {
+                CustomRecordsRemakeMod.getLogger().debug("Ignoring sync message from " + player.getUUID() + ", who has no sync in progress.");
+                return;
+            }
+
+            session.handle(message);
+        });
+    }
+
+    private static void runOnWorker(Runnable task) {
+        worker.execute(() -> {
+            try {
+                task.run();
+            } catch(RuntimeException e) {
+                CustomRecordsRemakeMod.getLogger().error("Asset sync failed", e);
+            }
+        });
+    }
+}
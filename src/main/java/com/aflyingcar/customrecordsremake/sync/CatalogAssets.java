@@ -0,0 +1,77 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.utils.AssetInfo;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the assets of a catalog by name, as they are described in a {@link SyncMessage.Manifest}.
+ */
+public class CatalogAssets {
+    private static final String OGG_EXTENSION = ".ogg";
+    private static final String TEXTURE_EXTENSION = ".png";
+
+    /**
+     * @param catalog The catalog to list
+     * @return An entry for every asset in the catalog that was found when it was loaded
+     */
+    @NotNull
+    public static List<SyncMessage.Entry> list(@NotNull RecordCatalog catalog) {
+        var entries = new ArrayList<SyncMessage.Entry>(catalog.size() * 2);
+        for(var record : catalog.getRecords().values()) {
+            if(record.oggInfo != null) {
+                entries.add(new SyncMessage.Entry(record.fileName + OGG_EXTENSION, record.oggInfo.sha1(), record.oggInfo.size()));
+            }
+            if(record.textureInfo != null) {
+                entries.add(new SyncMessage.Entry(record.fileName + TEXTURE_EXTENSION, record.textureInfo.sha1(), record.textureInfo.size()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Checks whether an asset belongs to a record of the given catalog, whether or not it was found when the catalog
+     *   was loaded.
+     *
+     * @param catalog The catalog to look in
+     * @param name The name of the asset (for example '{filename}.ogg')
+     * @return True if the asset is the .ogg or .png of a record in the catalog
+     */
+    public static boolean isKnown(@NotNull RecordCatalog catalog, @NotNull String name) {
+        if(name.endsWith(OGG_EXTENSION)) {
+            return catalog.getRecords().containsKey(name.substring(0, name.length() - OGG_EXTENSION.length()));
+        }
+
+        if(name.endsWith(TEXTURE_EXTENSION)) {
+            return catalog.getRecords().containsKey(name.substring(0, name.length() - TEXTURE_EXTENSION.length()));
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds what is known about an asset of the given catalog.
+     *
+     * @param catalog The catalog to look in
+     * @param name The name of the asset (for example '{filename}.ogg')
+     * @return What was known about the asset when the catalog was loaded, or null if it is not in the catalog
+     */
+    @Nullable
+    public static AssetInfo find(@NotNull RecordCatalog catalog, @NotNull String name) {
+        if(name.endsWith(OGG_EXTENSION)) {
+            var record = catalog.getRecords().get(name.substring(0, name.length() - OGG_EXTENSION.length()));
+            return record == null ? null : record.oggInfo;
+        }
+
+        if(name.endsWith(TEXTURE_EXTENSION)) {
+            var record = catalog.getRecords().get(name.substring(0, name.length() - TEXTURE_EXTENSION.length()));
+            return record == null ? null : record.textureInfo;
+        }
+
+        return null;
+    }
+}
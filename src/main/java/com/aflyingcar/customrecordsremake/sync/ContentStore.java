@@ -0,0 +1,179 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.utils.CatalogCache;
+import com.aflyingcar.customrecordsremake.utils.ContentHash;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * A content-addressed store of assets downloaded from servers, kept in 'config/customrecordsremake/.cache/cas/'.
+ * Every asset is stored under its SHA-1 hash, so an asset is only ever downloaded once no matter how many servers (or
+ *   records) use it. Assets are written to a partial file first, and only moved into place once their hash has been
+ *   checked, so the store never holds anything other than exactly what its name says.
+ */
+public class ContentStore {
+    private static final String PARTIAL_DIR = "partial";
+
+    private final Path root;
+
+    public ContentStore(@NotNull Path root) {
+        this.root = root;
+    }
+
+    @NotNull
+    public static Path getDefaultDir() {
+        return CatalogCache.getCacheDir(CustomRecordsRemakeMod.getRecordsResourcesDir()).resolve("cas");
+    }
+
+    /**
+     * @return True if the given string is a lowercase hex SHA-1 hash. Hashes come from the server, so nothing else may
+     *         be used to build a path.
+     */
+    public static boolean isValidHash(@NotNull String sha1) {
+        if(sha1.length() != ContentHash.LENGTH * 2) {
+            return false;
+        }
+
+        for(int i = 0; i < sha1.length(); ++i) {
+            var c = sha1.charAt(i);
+            if((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the path the asset with the given hash is stored at. Assets are spread across directories by the first byte
+     *   of their hash, so that no one directory grows too large.
+     *
+     * @param sha1 The hash of the asset
+     * @return The path of the asset, which may not exist
+     */
+    @NotNull
+    public Path getPath(@NotNull String sha1) {
+        if(!isValidHash(sha1)) {
+            throw new IllegalArgumentException("Not a SHA-1 hash: '" + sha1 + "'");
+        }
+        return root.resolve(sha1.substring(0, 2)).resolve(sha1);
+    }
+
+    public boolean contains(@NotNull String sha1) {
+        return isValidHash(sha1) && Files.isRegularFile(getPath(sha1));
+    }
+
+    /**
+     * Starts downloading an asset into the store.
+     *
+     * @param sha1 The hash the asset must have
+     * @param size The size the asset must have, in bytes
+     * @return The download, which must be either finished or aborted
+     * @throws IOException If the partial file could not be created
+     */
+    @NotNull
+    public Download begin(@NotNull String sha1, long size) throws IOException {
+        var target = getPath(sha1);
+        var partialDir = root.resolve(PARTIAL_DIR);
+        Files.createDirectories(partialDir);
+
+        var partial = Files.createTempFile(partialDir, sha1, ".part");
+        return new Download(sha1, size, target, partial);
+    }
+
+    /**
+     * A single asset being written into the store, in order, one chunk at a time.
+     */
+    public static class Download {
+        private final String sha1;
+        private final long size;
+        private final Path target;
+        private final Path partial;
+        private final FileChannel channel;
+        private final MessageDigest digest = ContentHash.newDigest();
+        private long written = 0;
+
+        private Download(String sha1, long size, Path target, Path partial) throws IOException {
+            this.sha1 = sha1;
+            this.size = size;
+            this.target = target;
+            this.partial = partial;
+            this.channel = FileChannel.open(partial, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Writes the next chunk of the asset.
+         *
+         * @param offset Where the chunk starts in the asset, which must be right after the previous chunk
+         * @param data The contents of the chunk
+         * @throws IOException If the chunk is out of order, runs past the end of the asset, or could not be written
+         */
+        public void write(long offset, byte @NotNull [] data) throws IOException {
+            if(offset != written) {
+                throw new IOException("Chunk of " + sha1 + " at offset " + offset + " arrived out of order, expected offset " + written);
+            }
+            if(written + data.length > size) {
+                throw new IOException("Chunk of " + sha1 + " at offset " + offset + " runs past the end of the asset (" + size + " bytes)");
+            }
+
+            var buffer = ByteBuffer.wrap(data);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            digest.update(data);
+            written += data.length;
+        }
+
+        /**
+         * Checks the downloaded asset against its hash, and moves it into the store.
+         *
+         * @return The path of the asset in the store
+         * @throws IOException If the asset is incomplete, does not match its hash, or could not be moved
+         */
+        @NotNull
+        public Path finish() throws IOException {
+            channel.close();
+
+            try {
+                if(written != size) {
+                    throw new IOException("Download of " + sha1 + " ended after " + written + " of " + size + " bytes");
+                }
+
+                var actual = ContentHash.toHex(digest.digest());
+                if(!actual.equals(sha1)) {
+                    throw new IOException("Download of " + sha1 + " has the wrong hash (" + actual + ")");
+                }
+
+                Files.createDirectories(target.getParent());
+                Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return target;
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+        }
+
+        /**
+         * Throws away whatever has been downloaded so far.
+         */
+        public void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(partial);
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().warn("Failed to clean up partial download " + partial, e);
+            }
+        }
+
+        public long getWritten() {
+            return written;
+        }
+    }
+}
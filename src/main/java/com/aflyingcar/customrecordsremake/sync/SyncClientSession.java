@@ -0,0 +1,201 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The client's side of syncing assets with a server. Assets the client already has (either as its own record assets,
+ *   or in its {@link ContentStore} from an earlier sync) are never requested.
+ * Only assets of records the client knows about are ever requested, and only up to a maximum size, so a server cannot
+ *   have the client download and store anything else.
+ * Not thread safe: every message for a session must be handled on the same thread.
+ */
+public class SyncClientSession {
+    private final ContentStore store;
+    private final Predicate<String> wanted;
+    private final Predicate<SyncMessage.Entry> availableLocally;
+    private final long maxAssetSize;
+    private final Consumer<SyncMessage> out;
+    private final Consumer<Map<String, Path>> onComplete;
+
+    private final Map<String, SyncMessage.Entry> manifest = new LinkedHashMap<>();
+    private final Map<String, SyncMessage.Entry> pending = new LinkedHashMap<>();
+    private final Map<String, ContentStore.Download> downloads = new HashMap<>();
+
+    private int ignored;
+    private boolean manifestReceived = false;
+    private boolean complete = false;
+    private long start;
+    private long bytesReceived;
+    private int assetsReceived;
+
+    /**
+     * @param store Where downloaded assets are stored
+     * @param wanted Tests whether an asset of the given name (for example '{filename}.ogg') belongs to one of the
+     *               client's own records. Anything else the server offers is ignored.
+     * @param availableLocally Tests whether the client already has an asset of its own with the same contents
+     * @param maxAssetSize The largest asset that may be downloaded, in bytes
+     * @param out Sends a message to the server
+     * @param onComplete Given every asset that should be served from the store, by name, once the sync is done
+     */
+    public SyncClientSession(@NotNull ContentStore store, @NotNull Predicate<String> wanted, @NotNull Predicate<SyncMessage.Entry> availableLocally, long maxAssetSize, @NotNull Consumer<SyncMessage> out, @NotNull Consumer<Map<String, Path>> onComplete) {
+        this.store = store;
+        this.wanted = wanted;
+        this.availableLocally = availableLocally;
+        this.maxAssetSize = maxAssetSize;
+        this.out = out;
+        this.onComplete = onComplete;
+    }
+
+    public void handle(@NotNull SyncMessage message) {
+        if(message instanceof SyncMessage.Manifest part) {
+            handleManifest(part);
+        } else if(message instanceof SyncMessage.Chunk chunk) {
+            handleChunk(chunk);
+        } else if(message instanceof SyncMessage.Unavailable unavailable) {
+            CustomRecordsRemakeMod.getLogger().warn("Server could not send asset " + unavailable.sha1() + ", the local copy (if any) will be used instead.");
+            discard(unavailable.sha1());
+        } else {
+            CustomRecordsRemakeMod.getLogger().warn("Unexpected sync message from server: " + message.getClass().getSimpleName());
+        }
+
+        checkComplete();
+    }
+
+    private void handleManifest(SyncMessage.Manifest part) {
+        if(manifestReceived) {
+            CustomRecordsRemakeMod.getLogger().warn("Server sent a second manifest, ignoring it.");
+            return;
+        }
+
+        for(var entry : part.entries()) {
+            if(!ContentStore.isValidHash(entry.sha1()) || entry.size() < 0) {
+                CustomRecordsRemakeMod.getLogger().warn("Ignoring invalid manifest entry " + entry);
+                continue;
+            }
+            if(!wanted.test(entry.name())) {
+                ++ignored;
+                continue;
+            }
+            if(entry.size() > maxAssetSize) {
+                CustomRecordsRemakeMod.getLogger().warn("Not downloading '" + entry.name() + "' from the server, as it is " + entry.size() + " bytes, over the limit of " + maxAssetSize + " bytes.");
+                continue;
+            }
+            // Keyed by name, so that a server repeating itself cannot grow this past the number of local assets
+            manifest.put(entry.name(), entry);
+        }
+
+        if(!part.last()) {
+            return;
+        }
+
+        manifestReceived = true;
+        start = System.nanoTime();
+
+        for(var entry : manifest.values()) {
+            if(!availableLocally.test(entry) && !store.contains(entry.sha1())) {
+                pending.putIfAbsent(entry.sha1(), entry);
+            }
+        }
+
+        if(ignored > 0) {
+            CustomRecordsRemakeMod.getLogger().info("Ignoring " + ignored + " assets offered by the server that do not belong to any local record.");
+        }
+        CustomRecordsRemakeMod.getLogger().info("Server offers " + manifest.size() + " assets, requesting the " + pending.size() + " that are missing.");
+
+        var missing = List.copyOf(pending.keySet());
+        for(int from = 0; from < missing.size(); from += SyncMessage.MAX_BATCH) {
+            var to = Math.min(from + SyncMessage.MAX_BATCH, missing.size());
+            out.accept(new SyncMessage.Request(missing.subList(from, to), to == missing.size()));
+        }
+    }
+
+    private void handleChunk(SyncMessage.Chunk chunk) {
+        var entry = pending.get(chunk.sha1());
+        if(entry == null) {
+            CustomRecordsRemakeMod.getLogger().warn("Server sent a chunk of asset " + chunk.sha1() + ", which was not requested.");
+        } else {
+            try {
+                var download = downloads.get(chunk.sha1());
+                if(download == null) {
+                    download = store.begin(entry.sha1(), entry.size());
+                    downloads.put(entry.sha1(), download);
+                }
+
+                download.write(chunk.offset(), chunk.data());
+                bytesReceived += chunk.data().length;
+
+                if(chunk.last()) {
+                    downloads.remove(entry.sha1());
+                    pending.remove(entry.sha1());
+                    download.finish();
+                    ++assetsReceived;
+                }
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().warn("Failed to download '" + entry.name() + "' (" + entry.sha1() + ")", e);
+                discard(entry.sha1());
+            }
+        }
+
+        // Even chunks that are thrown away free up the server's window
+        out.accept(new SyncMessage.Ack(1));
+    }
+
+    private void discard(String sha1) {
+        pending.remove(sha1);
+
+        var download = downloads.remove(sha1);
+        if(download != null) {
+            download.abort();
+        }
+    }
+
+    private void checkComplete() {
+        if(complete || !manifestReceived || !pending.isEmpty()) {
+            return;
+        }
+        complete = true;
+
+        var fromStore = new LinkedHashMap<String, Path>();
+        for(var entry : manifest.values()) {
+            if(!availableLocally.test(entry) && store.contains(entry.sha1())) {
+                fromStore.put(entry.name(), store.getPath(entry.sha1()));
+            }
+        }
+        var synced = ImmutableMap.copyOf(fromStore);
+
+        CustomRecordsRemakeMod.getLogger().info("Synced assets with the server in " + (System.nanoTime() - start) / 1_000_000 + "ms: downloaded " + assetsReceived + " assets (" + bytesReceived + " bytes), " + synced.size() + " assets are served from the local cache.");
+        onComplete.accept(synced);
+    }
+
+    /**
+     * Stops syncing, throwing away any partial downloads.
+     */
+    public void close() {
+        downloads.values().forEach(ContentStore.Download::abort);
+        downloads.clear();
+        pending.clear();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public int getAssetsReceived() {
+        return assetsReceived;
+    }
+}
@@ -0,0 +1,198 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.utils.ContentHash;
+import net.minecraft.network.FriendlyByteBuf;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Every message of the asset sync protocol. A sync goes like this:
+ *   1. The server sends a {@link Manifest} of every asset in its catalog, split over as many messages as it takes.
+ *   2. The client replies with a {@link Request} for every hash it has neither in its own records nor in its
+ *      {@link ContentStore}, again split over as many messages as it takes.
+ *   3. The server streams the requested assets one after the other as {@link Chunk}s, never having more than a fixed
+ *      number of chunks that the client has not yet {@link Ack}ed. Assets it cannot read are sent as
+ *      {@link Unavailable} instead.
+ * Hashes are sent as raw bytes rather than hex, as manifests for large catalogs are mostly hashes.
+ */
+public sealed interface SyncMessage {
+    /**
+     * The most entries sent in a single {@link Manifest} or {@link Request}. Packets sent to the server can only be
+     *   32 KiB, so requests in particular must be kept small.
+     */
+    int MAX_BATCH = 1024;
+
+    /**
+     * How each kind of message is read back, in the order they are assigned packet IDs
+     */
+    List<Codec<?>> CODECS = List.of(
+            new Codec<>(Manifest.class, Manifest::decode, true),
+            new Codec<>(Request.class, Request::decode, false),
+            new Codec<>(Chunk.class, Chunk::decode, true),
+            new Codec<>(Ack.class, Ack::decode, false),
+            new Codec<>(Unavailable.class, Unavailable::decode, true));
+
+    void encode(@NotNull FriendlyByteBuf buffer);
+
+    /**
+     * @param type The kind of message
+     * @param decoder Reads a message of this kind
+     * @param clientBound True if this message is sent from the server to the client
+     */
+    record Codec<M extends SyncMessage>(@NotNull Class<M> type, @NotNull Function<FriendlyByteBuf, M> decoder, boolean clientBound) { }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    static <M extends SyncMessage> Codec<M> codecFor(@NotNull Class<M> type) {
+        for(var codec : CODECS) {
+            if(codec.type() == type) {
+                return (Codec<M>)codec;
+            }
+        }
+        throw new IllegalArgumentException("No codec for " + type);
+    }
+
+    /**
+     * A single asset the server has.
+     *
+     * @param name The name of the asset (for example '{filename}.ogg')
+     * @param sha1 The hash of the asset
+     * @param size The size of the asset, in bytes
+     */
+    record Entry(@NotNull String name, @NotNull String sha1, long size) { }
+
+    /**
+     * Part of the list of every asset the server has.
+     *
+     * @param entries The assets in this part
+     * @param last True if this is the last part
+     */
+    record Manifest(@NotNull List<Entry> entries, boolean last) implements SyncMessage {
+        @Override
+        public void encode(@NotNull FriendlyByteBuf buffer) {
+            buffer.writeVarInt(entries.size());
+            for(var entry : entries) {
+                buffer.writeUtf(entry.name());
+                writeHash(buffer, entry.sha1());
+                buffer.writeVarLong(entry.size());
+            }
+            buffer.writeBoolean(last);
+        }
+
+        @NotNull
+        public static Manifest decode(@NotNull FriendlyByteBuf buffer) {
+            var count = readCount(buffer);
+            var entries = new ArrayList<Entry>(count);
+            for(int i = 0; i < count; ++i) {
+                entries.add(new Entry(buffer.readUtf(), readHash(buffer), buffer.readVarLong()));
+            }
+            return new Manifest(entries, buffer.readBoolean());
+        }
+    }
+
+    /**
+     * Part of the list of every asset the client is missing.
+     *
+     * @param sha1s The hashes of the missing assets in this part
+     * @param last True if this is the last part
+     */
+    record Request(@NotNull List<String> sha1s, boolean last) implements SyncMessage {
+        @Override
+        public void encode(@NotNull FriendlyByteBuf buffer) {
+            buffer.writeVarInt(sha1s.size());
+            for(var sha1 : sha1s) {
+                writeHash(buffer, sha1);
+            }
+            buffer.writeBoolean(last);
+        }
+
+        @NotNull
+        public static Request decode(@NotNull FriendlyByteBuf buffer) {
+            var count = readCount(buffer);
+            var sha1s = new ArrayList<String>(count);
+            for(int i = 0; i < count; ++i) {
+                sha1s.add(readHash(buffer));
+            }
+            return new Request(sha1s, buffer.readBoolean());
+        }
+    }
+
+    /**
+     * Part of an asset. The chunks of an asset are always sent in order, and the chunks of one asset are never mixed
+     *   with those of another.
+     *
+     * @param sha1 The hash of the asset
+     * @param offset Where this chunk starts in the asset
+     * @param data The contents of this chunk
+     * @param last True if this is the last chunk of the asset
+     */
+    record Chunk(@NotNull String sha1, long offset, byte @NotNull [] data, boolean last) implements SyncMessage {
+        @Override
+        public void encode(@NotNull FriendlyByteBuf buffer) {
+            writeHash(buffer, sha1);
+            buffer.writeVarLong(offset);
+            buffer.writeByteArray(data);
+            buffer.writeBoolean(last);
+        }
+
+        @NotNull
+        public static Chunk decode(@NotNull FriendlyByteBuf buffer) {
+            return new Chunk(readHash(buffer), buffer.readVarLong(), buffer.readByteArray(), buffer.readBoolean());
+        }
+    }
+
+    /**
+     * Tells the server that the client has dealt with some chunks, so that it may send that many more.
+     *
+     * @param chunks The number of chunks dealt with
+     */
+    record Ack(int chunks) implements SyncMessage {
+        @Override
+        public void encode(@NotNull FriendlyByteBuf buffer) {
+            buffer.writeVarInt(chunks);
+        }
+
+        @NotNull
+        public static Ack decode(@NotNull FriendlyByteBuf buffer) {
+            return new Ack(buffer.readVarInt());
+        }
+    }
+
+    /**
+     * Tells the client that a requested asset could not be sent after all.
+     *
+     * @param sha1 The hash of the asset
+     */
+    record Unavailable(@NotNull String sha1) implements SyncMessage {
+        @Override
+        public void encode(@NotNull FriendlyByteBuf buffer) {
+            writeHash(buffer, sha1);
+        }
+
+        @NotNull
+        public static Unavailable decode(@NotNull FriendlyByteBuf buffer) {
+            return new Unavailable(readHash(buffer));
+        }
+    }
+
+    private static void writeHash(FriendlyByteBuf buffer, String sha1) {
+        buffer.writeBytes(ContentHash.fromHex(sha1));
+    }
+
+    private static String readHash(FriendlyByteBuf buffer) {
+        var hash = new byte[ContentHash.LENGTH];
+        buffer.readBytes(hash);
+        return ContentHash.toHex(hash);
+    }
+
+    private static int readCount(FriendlyByteBuf buffer) {
+        var count = buffer.readVarInt();
+        if(count < 0 || count > MAX_BATCH) {
+            throw new IllegalArgumentException("Batch of " + count + " entries is larger than the limit of " + MAX_BATCH);
+        }
+        return count;
+    }
+}
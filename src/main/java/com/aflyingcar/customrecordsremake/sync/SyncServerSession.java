@@ -0,0 +1,197 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.packs.RecordAssetReader;
+import com.aflyingcar.customrecordsremake.utils.RecordCatalog;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The server's side of syncing assets with a single client. Nothing here depends on how messages are actually sent, so
+ *   the same session runs over the network channel and over the in-process loopback the tests use.
+ * Not thread safe: every message for a session must be handled on the same thread.
+ */
+public class SyncServerSession {
+    /**
+     * Opens the contents of an asset listed in the manifest
+     */
+    @FunctionalInterface
+    public interface AssetOpener {
+        @NotNull
+        InputStream open(@NotNull SyncMessage.Entry entry) throws IOException;
+    }
+
+    private final List<SyncMessage.Entry> manifest;
+    private final Map<String, SyncMessage.Entry> byHash = new HashMap<>();
+    private final AssetOpener opener;
+    private final Consumer<SyncMessage> out;
+    private final int chunkSize;
+    private final int window;
+
+    private final Deque<SyncMessage.Entry> queue = new ArrayDeque<>();
+    private final Set<String> requested = new HashSet<>();
+
+    private SyncMessage.Entry sending;
+    private InputStream stream;
+    private long offset;
+    private int inFlight;
+
+    private long bytesSent;
+    private int assetsSent;
+
+    /**
+     * @param manifest Every asset that may be requested
+     * @param opener Opens the assets in the manifest
+     * @param out Sends a message to the client
+     * @param chunkSize The most bytes of an asset sent in a single chunk
+     * @param window The most chunks sent before the client has acknowledged them
+     */
+    public SyncServerSession(@NotNull List<SyncMessage.Entry> manifest, @NotNull AssetOpener opener, @NotNull Consumer<SyncMessage> out, int chunkSize, int window) {
+        this.manifest = manifest;
+        this.opener = opener;
+        this.out = out;
+        this.chunkSize = chunkSize;
+        this.window = window;
+
+        for(var entry : manifest) {
+            byHash.putIfAbsent(entry.sha1(), entry);
+        }
+    }
+
+    /**
+     * Creates a session offering every asset of the given catalog, read from the records directory or disc archives.
+     */
+    @NotNull
+    public static SyncServerSession forCatalog(@NotNull RecordCatalog catalog, @NotNull Consumer<SyncMessage> out, int chunkSize, int window) {
+        var recordsDir = CustomRecordsRemakeMod.getRecordsResourcesDir();
+        return new SyncServerSession(CatalogAssets.list(catalog),
+                                     entry -> RecordAssetReader.get().open(recordsDir, entry.name(), CatalogAssets.find(catalog, entry.name())),
+                                     out, chunkSize, window);
+    }
+
+    /**
+     * Starts the sync by sending the manifest.
+     */
+    public void start() {
+        for(int start = 0; start < manifest.size() || start == 0; start += SyncMessage.MAX_BATCH) {
+            var end = Math.min(start + SyncMessage.MAX_BATCH, manifest.size());
+            out.accept(new SyncMessage.Manifest(List.copyOf(manifest.subList(start, end)), end == manifest.size()));
+        }
+    }
+
+    public void handle(@NotNull SyncMessage message) {
+        if(message instanceof SyncMessage.Request request) {
+            for(var sha1 : request.sha1s()) {
+                // Only ever send what is in the manifest, whatever the client asks for
+                var entry = byHash.get(sha1);
+                if(entry == null) {
+                    CustomRecordsRemakeMod.getLogger().warn("Client requested asset " + sha1 + ", which is not in the manifest.");
+                } else if(requested.add(sha1)) {
+                    queue.add(entry);
+                }
+            }
+        } else if(message instanceof SyncMessage.Ack ack) {
+            inFlight = Math.max(0, inFlight - ack.chunks());
+        } else {
+            CustomRecordsRemakeMod.getLogger().warn("Unexpected sync message from client: " + message.getClass().getSimpleName());
+            return;
+        }
+
+        pump();
+    }
+
+    /**
+     * Sends chunks until the window is full or there is nothing left to send.
+     */
+    private void pump() {
+        while(inFlight < window) {
+            if(stream == null && !openNext()) {
+                return;
+            }
+
+            try {
+                var data = stream.readNBytes((int)Math.min(chunkSize, sending.size() - offset));
+                var last = offset + data.length >= sending.size();
+                if(!last && data.length == 0) {
+                    throw new IOException("Asset ended after " + offset + " of " + sending.size() + " bytes");
+                }
+
+                out.accept(new SyncMessage.Chunk(sending.sha1(), offset, data, last));
+                offset += data.length;
+                bytesSent += data.length;
+                ++inFlight;
+
+                if(last) {
+                    ++assetsSent;
+                    closeCurrent();
+                }
+            } catch(IOException e) {
+                // The client has already been sent part of this asset, it throws that away when told it is unavailable
+                CustomRecordsRemakeMod.getLogger().warn("Failed to read '" + sending.name() + "' while sending it to a client", e);
+                out.accept(new SyncMessage.Unavailable(sending.sha1()));
+                closeCurrent();
+            }
+        }
+    }
+
+    private boolean openNext() {
+        while(!queue.isEmpty()) {
+            var next = queue.poll();
+            try {
+                stream = opener.open(next);
+                sending = next;
+                offset = 0;
+                return true;
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().warn("Failed to open '" + next.name() + "' to send it to a client", e);
+                out.accept(new SyncMessage.Unavailable(next.sha1()));
+            }
+        }
+        return false;
+    }
+
+    private void closeCurrent() {
+        try {
+            stream.close();
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().debug("Failed to close '" + sending.name() + "'", e);
+        }
+        stream = null;
+        sending = null;
+    }
+
+    /**
+     * Stops sending, such as when the client disconnects.
+     */
+    public void close() {
+        if(stream != null) {
+            closeCurrent();
+        }
+        queue.clear();
+    }
+
+    /**
+     * @return True once every requested asset has been sent
+     */
+    public boolean isIdle() {
+        return stream == null && queue.isEmpty();
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public int getAssetsSent() {
+        return assetsSent;
+    }
+}
@@ -0,0 +1,42 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The assets that the last server synced with has, and that differ from (or are missing from) the client's own. These
+ *   are served from the {@link ContentStore} in place of the client's own assets.
+ */
+public class SyncedAssets {
+    private static volatile ImmutableMap<String, Path> current = ImmutableMap.of();
+
+    /**
+     * @param name The name of an asset (for example '{filename}.ogg')
+     * @return The copy of the asset in the store to serve instead, or null if the client's own copy should be served
+     */
+    @Nullable
+    public static Path get(@NotNull String name) {
+        return current.get(name);
+    }
+
+    /**
+     * Replaces every synced asset.
+     *
+     * @param synced Every asset to serve from the store, by name
+     * @return True if anything changed, in which case resources need reloading for it to take effect
+     */
+    public static boolean publish(@NotNull Map<String, Path> synced) {
+        var replacement = ImmutableMap.copyOf(synced);
+        var previous = current;
+        current = replacement;
+        return !previous.equals(replacement);
+    }
+
+    public static int size() {
+        return current.size();
+    }
+}
@@ -0,0 +1,153 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Which records of a catalog have byte-for-byte identical assets, such as remixes that share their art or seasonal
+ *   variants that share their audio. Assets are compared by the hashes taken when they were probed.
+ * Each group of identical assets is served once, as the asset of the first record in the group (in catalog order). The
+ *   generated sounds.json and models point every other record in the group at that one, so the game only ever reads,
+ *   decodes, buffers and stitches it once.
+ * Assets that are served from somewhere else entirely, such as the server's copy of an asset that was synced, are left
+ *   out: the server's copy may differ from ours, so it can neither stand in for another record's asset nor be replaced
+ *   by one.
+ */
+public class AssetDedup {
+    /**
+     * The records sharing one kind of asset.
+     *
+     * @param sources The filename of every record whose asset is served as another record's, mapped to the filename of
+     *                that record
+     * @param bytesSaved The total size of every asset that is no longer served
+     */
+    private record Shared(ImmutableMap<String, String> sources, long bytesSaved) {
+        static final Shared NONE = new Shared(ImmutableMap.of(), 0);
+
+        static Shared of(Collection<RecordJsonHandler.Record> records, Function<RecordJsonHandler.Record, AssetInfo> asset, String extension, Predicate<String> replaced) {
+            var canonical = new HashMap<String, String>();
+            var sources = ImmutableMap.<String, String>builder();
+            var bytesSaved = 0L;
+
+            for(var record : records) {
+                var info = asset.apply(record);
+                if(info == null || replaced.test(record.fileName + extension)) {
+                    continue;
+                }
+
+                var source = canonical.putIfAbsent(info.sha1(), record.fileName);
+                if(source != null) {
+                    sources.put(record.fileName, source);
+                    bytesSaved += info.size();
+                }
+            }
+
+            var built = sources.build();
+            return built.isEmpty() ? NONE : new Shared(built, bytesSaved);
+        }
+    }
+
+    private final Shared oggs;
+    private final Shared textures;
+
+    private AssetDedup(Shared oggs, Shared textures) {
+        this.oggs = oggs;
+        this.textures = textures;
+    }
+
+    /**
+     * Finds every record whose .ogg or .png is identical to that of an earlier record.
+     *
+     * @param records The records to compare, in catalog order
+     * @return What the records share
+     */
+    @NotNull
+    public static AssetDedup of(@NotNull Collection<RecordJsonHandler.Record> records) {
+        return of(records, name -> false);
+    }
+
+    /**
+     * Finds every record whose .ogg or .png is identical to that of an earlier record, leaving out the assets that are
+     *   served from elsewhere.
+     *
+     * @param records The records to compare, in catalog order
+     * @param replaced Tests whether the asset with the given name (for example '{filename}.ogg') is served from
+     *                 somewhere other than the records directory or its disc archive
+     * @return What the records share
+     */
+    @NotNull
+    public static AssetDedup of(@NotNull Collection<RecordJsonHandler.Record> records, @NotNull Predicate<String> replaced) {
+        return new AssetDedup(Shared.of(records, record -> record.oggInfo, ".ogg", replaced),
+                              Shared.of(records, record -> record.textureInfo, ".png", replaced));
+    }
+
+    /**
+     * @param fileName The filename of a record
+     * @return The filename of the record whose .ogg is served for the given record, which is usually itself
+     */
+    @NotNull
+    public String getOggSource(@NotNull String fileName) {
+        return oggs.sources().getOrDefault(fileName, fileName);
+    }
+
+    /**
+     * @param fileName The filename of a record
+     * @return The filename of the record whose .png is served for the given record, which is usually itself
+     */
+    @NotNull
+    public String getTextureSource(@NotNull String fileName) {
+        return textures.sources().getOrDefault(fileName, fileName);
+    }
+
+    /**
+     * @return True if the given record's .ogg is never served, as another record's is served in its place
+     */
+    public boolean isOggAlias(@NotNull String fileName) {
+        return oggs.sources().containsKey(fileName);
+    }
+
+    /**
+     * @return True if the given record's .png is never served, as another record's is served in its place
+     */
+    public boolean isTextureAlias(@NotNull String fileName) {
+        return textures.sources().containsKey(fileName);
+    }
+
+    /**
+     * @return The number of .ogg files that are served as another record's instead
+     */
+    public int getOggAliasCount() {
+        return oggs.sources().size();
+    }
+
+    /**
+     * @return The number of .png files that are served as another record's instead
+     */
+    public int getTextureAliasCount() {
+        return textures.sources().size();
+    }
+
+    /**
+     * @return The total size of every asset that is served as another record's instead
+     */
+    public long getBytesSaved() {
+        return oggs.bytesSaved() + textures.bytesSaved();
+    }
+
+    public boolean isEmpty() {
+        return oggs == Shared.NONE && textures == Shared.NONE;
+    }
+
+    /**
+     * @param other What another catalog shares
+     * @return True if exactly the same records are served the same assets in both
+     */
+    public boolean hasSameSources(@NotNull AssetDedup other) {
+        return oggs.sources().equals(other.oggs.sources()) && textures.sources().equals(other.textures.sources());
+    }
+}
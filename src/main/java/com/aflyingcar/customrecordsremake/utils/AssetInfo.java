@@ -0,0 +1,96 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Facts about a single asset file (a record's .ogg or .png), as of when it was last probed.
+ *
+ * @param size The size of the file, in bytes
+ * @param lastModified The modification time of the file (or of the archive holding it), in milliseconds since the epoch
+ * @param sha1 The SHA-1 hash of the contents of the file, as a lowercase hex string
+ * @param archive The file name of the {@link DiscArchive} holding this asset, or null if it is a loose file in the
+ *                records directory
+ */
+public record AssetInfo(long size, long lastModified, @NotNull String sha1, @Nullable String archive) {
+    /**
+     * Probes the given file.
+     *
+     * @param path The file to probe
+     * @param previous What was known about this file before, if anything. If the size and modification time still
+     *                 match, then its hash is reused instead of reading the whole file again.
+     * @return The facts about the file, or null if it does not exist
+     * @throws IOException If the file exists but could not be read
+     */
+    @Nullable
+    public static AssetInfo probe(@NotNull Path path, @Nullable AssetInfo previous) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch(NoSuchFileException e) {
+            return null;
+        }
+
+        var size = attributes.size();
+        var lastModified = attributes.lastModifiedTime().toMillis();
+        if(previous != null && previous.archive == null && previous.size == size && previous.lastModified == lastModified) {
+            return previous;
+        }
+
+        return new AssetInfo(size, lastModified, ContentHash.of(path), null);
+    }
+
+    /**
+     * Probes the given entry of an archive.
+     *
+     * @param archive The archive holding the entry
+     * @param entryName The name of the entry
+     * @param previous What was known about this entry before, if anything. If it came from the same, unchanged archive,
+     *                 then its hash is reused instead of reading the whole entry again.
+     * @return The facts about the entry, or null if it is not in the archive
+     * @throws IOException If the entry could not be read
+     */
+    @Nullable
+    public static AssetInfo probe(@NotNull DiscArchive archive, @NotNull String entryName, @Nullable AssetInfo previous) throws IOException {
+        var size = archive.getSize(entryName);
+        if(size < 0) {
+            return null;
+        }
+
+        if(previous != null && archive.getName().equals(previous.archive) && previous.size == size && previous.lastModified == archive.getLastModified()) {
+            return previous;
+        }
+
+        var digest = ContentHash.newDigest();
+        digest.update(archive.map(entryName));
+        return new AssetInfo(size, archive.getLastModified(), ContentHash.toHex(digest.digest()), archive.getName());
+    }
+
+    /**
+     * Checks whether the file this asset was probed from has changed, without hashing it.
+     *
+     * @param recordsDir The records directory
+     * @param fileName The name of the asset (for example '{filename}.ogg')
+     * @return True if the asset (or the archive holding it) no longer has the same size and modification time
+     */
+    public boolean isStale(@NotNull Path recordsDir, @NotNull String fileName) {
+        try {
+            if(archive != null) {
+                // Loose files take precedence, so a new loose file also makes this stale
+                return Files.exists(recordsDir.resolve(fileName)) ||
+                       Files.getLastModifiedTime(recordsDir.resolve(archive)).toMillis() != lastModified;
+            }
+
+            var attributes = Files.readAttributes(recordsDir.resolve(fileName), BasicFileAttributes.class);
+            return attributes.size() != size || attributes.lastModifiedTime().toMillis() != lastModified;
+        } catch(IOException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A compact binary copy of every loaded record, along with the facts probed about its assets, stored in
+ *   'config/customrecordsremake/.cache/catalog.bin'.
+ * On startup, if records.json, the records.d fragments, the disc archives and the records directory have not changed since the cache was
+ *   written, and no asset has a different size or modification time, the records are rebuilt straight from the cache
+ *   without parsing any JSON or reading any asset files.
+ *
+ * Layout (big-endian):
+ *   int    MAGIC
+ *   int    VERSION
+ *   Key    (see {@link Key#write})
+ *   int    record count
+ *   record count * record (see {@link #writeRecord})
+ */
+public class CatalogCache {
+    private static final int MAGIC = 0x43525243; // 'CRRC'
+
+    /**
+     * Bump this whenever the layout changes, so that old caches are thrown away rather than misread
+     */
+    private static final int VERSION = 3;
+
+    private static final byte FLAG_HAS_RECIPE = 1;
+    private static final byte FLAG_LENGTH_DETECTED = 1 << 1;
+
+    /**
+     * Identifies the state of records.json, the records.d fragments, the disc archives and the records directory that a
+     *   cache was built from.
+     * A change to records.json changes its size, modification time or hash, and adding, removing or renaming an asset
+     *   changes the modification time of the directory.
+     *
+     * @param jsonSize The size of records.json
+     * @param jsonLastModified The modification time of records.json
+     * @param jsonSha1 The hash of records.json
+     * @param dirLastModified The modification time of the records directory
+     * @param fragmentsSha1 A hash of the name, size and modification time of every records.d fragment
+     * @param archivesSha1 A hash of the name, size and modification time of every disc archive
+     */
+    public record Key(long jsonSize, long jsonLastModified, @NotNull String jsonSha1, long dirLastModified, @NotNull String fragmentsSha1, @NotNull String archivesSha1) {
+        /**
+         * Computes the key for the current state of the given records.json and records directory.
+         */
+        @NotNull
+        public static Key compute(@NotNull Path recordsJson, @NotNull Path recordsDir) throws IOException {
+            // Make sure the cache directory exists first, as creating it changes the records directory
+            Files.createDirectories(getCacheDir(recordsDir));
+
+            var json = AssetInfo.probe(recordsJson, null);
+            if(json == null) {
+                throw new NoSuchFileException(recordsJson.toString());
+            }
+
+            return new Key(json.size(), json.lastModified(), json.sha1(), Files.getLastModifiedTime(recordsDir).toMillis(),
+                           hashListing(RecordJsonHandler.listFragments(recordsDir)), hashListing(DiscArchive.listArchives(recordsDir)));
+        }
+
+        /**
+         * Hashes the name, size and modification time of every given file, which is enough to notice any of them being
+         *   added, removed, renamed or edited without having to read them.
+         */
+        private static String hashListing(List<Path> files) throws IOException {
+            var digest = ContentHash.newDigest();
+            for(var file : files) {
+                var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                digest.update((file.getFileName() + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return ContentHash.toHex(digest.digest());
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(jsonSize);
+            out.writeLong(jsonLastModified);
+            out.write(ContentHash.fromHex(jsonSha1));
+            out.writeLong(dirLastModified);
+            out.write(ContentHash.fromHex(fragmentsSha1));
+            out.write(ContentHash.fromHex(archivesSha1));
+        }
+
+        private static Key read(ByteBuffer in) {
+            return new Key(in.getLong(), in.getLong(), readHash(in), in.getLong(), readHash(in), readHash(in));
+        }
+    }
+
+    /**
+     * The contents of a cache file
+     *
+     * @param key The state the cache was built from
+     * @param records Every record in the cache
+     */
+    public record Contents(@NotNull Key key, @NotNull List<RecordJsonHandler.Record> records) { }
+
+    @NotNull
+    public static Path getCacheDir(@NotNull Path recordsDir) {
+        return recordsDir.resolve(".cache");
+    }
+
+    @NotNull
+    public static Path getDefaultPath() {
+        return getCacheDir(CustomRecordsRemakeMod.getRecordsResourcesDir()).resolve("catalog.bin");
+    }
+
+    /**
+     * Reads the cache at the given path. The file is read into memory in one go rather than memory-mapped, since a
+     *   mapping keeps the file open until it is collected, and on some platforms a file that is still mapped cannot be
+     *   replaced by {@link #write}.
+     *
+     * @param path The cache file
+     * @return The contents of the cache, or null if there is no cache or it was written by a different version
+     */
+    @Nullable
+    public static Contents read(@NotNull Path path) {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                CustomRecordsRemakeMod.getLogger().warn("Catalog cache " + path + " is too large to be a catalog cache, it will be rebuilt.");
+                return null;
+            }
+
+            ByteBuffer in = ByteBuffer.allocate((int)size);
+            while(in.hasRemaining() && channel.read(in) >= 0) {
+                // Keep reading until the whole file is in the buffer
+            }
+            in.flip();
+
+            if(in.remaining() < 8 || in.getInt() != MAGIC) {
+                CustomRecordsRemakeMod.getLogger().warn("Catalog cache " + path + " is not a catalog cache, it will be rebuilt.");
+                return null;
+            }
+
+            var version = in.getInt();
+            if(version != VERSION) {
+                CustomRecordsRemakeMod.getLogger().info("Catalog cache " + path + " is from format version " + version + " (current is " + VERSION + "), it will be rebuilt.");
+                return null;
+            }
+
+            var key = Key.read(in);
+
+            var count = in.getInt();
+            var records = new ArrayList<RecordJsonHandler.Record>(count);
+            for(int i = 0; i < count; ++i) {
+                records.add(readRecord(in));
+            }
+
+            return new Contents(key, records);
+        } catch(NoSuchFileException e) {
+            return null;
+        } catch(IOException | RuntimeException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to read catalog cache " + path + ", it will be rebuilt.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a new cache, replacing any existing one.
+     *
+     * @param path The cache file
+     * @param key The state of records.json and the records directory the records were loaded from
+     * @param records The records to store
+     */
+    public static void write(@NotNull Path path, @NotNull Key key, @NotNull Collection<RecordJsonHandler.Record> records) {
+        var temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            Files.createDirectories(path.getParent());
+
+            try(var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                key.write(out);
+
+                out.writeInt(records.size());
+                for(var record : records) {
+                    writeRecord(out, record);
+                }
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to write catalog cache " + path + ". The next launch will re-read records.json.", e);
+        }
+    }
+
+    /**
+     * Counts the records whose assets no longer match what was stored in the cache. Assets that are edited in place do
+     *   not change the modification time of the records directory, so the key does not notice them and only this does.
+     *   Only the size and modification time of each asset is checked, so nothing is read.
+     *
+     * @param recordsDir The records directory
+     * @param records The records that were loaded from the cache
+     * @return The number of records with at least one changed, added or removed asset
+     */
+    public static long countStale(@NotNull Path recordsDir, @NotNull Collection<RecordJsonHandler.Record> records) {
+        return records.stream().filter(record -> isStale(record.oggInfo, recordsDir, record.fileName + ".ogg") ||
+                                                 isStale(record.textureInfo, recordsDir, record.fileName + ".png"))
+                      .count();
+    }
+
+    private static boolean isStale(@Nullable AssetInfo info, Path recordsDir, String fileName) {
+        return info == null ? Files.exists(recordsDir.resolve(fileName)) : info.isStale(recordsDir, fileName);
+    }
+
+    private static void writeRecord(DataOutputStream out, RecordJsonHandler.Record record) throws IOException {
+        writeString(out, record.fileName);
+        writeString(out, record.name);
+        writeString(out, record.source);
+        out.writeInt(record.length);
+
+        byte flags = 0;
+        if(record.recipe != null) {
+            flags |= FLAG_HAS_RECIPE;
+        }
+        if(record.lengthDetected) {
+            flags |= FLAG_LENGTH_DETECTED;
+        }
+        out.writeByte(flags);
+
+        if(record.recipe != null) {
+            writeString(out, record.recipe.getKey());
+            out.writeInt(record.recipe.getValue());
+        }
+
+        writeAssetInfo(out, record.oggInfo);
+        writeAssetInfo(out, record.textureInfo);
+    }
+
+    private static RecordJsonHandler.Record readRecord(ByteBuffer in) {
+        var record = RecordJsonHandler.Record.builder(readString(in))
+                .name(readString(in))
+                .source(readString(in))
+                .length(in.getInt());
+
+        var flags = in.get();
+        record.lengthDetected((flags & FLAG_LENGTH_DETECTED) != 0);
+        if((flags & FLAG_HAS_RECIPE) != 0) {
+            var item = readString(in);
+            record.recipe(new AbstractMap.SimpleEntry<>(item, in.getInt()));
+        }
+
+        return record.oggInfo(readAssetInfo(in))
+                .textureInfo(readAssetInfo(in))
+                .build();
+    }
+
+    private static void writeAssetInfo(DataOutputStream out, @Nullable AssetInfo info) throws IOException {
+        out.writeBoolean(info != null);
+        if(info != null) {
+            out.writeLong(info.size());
+            out.writeLong(info.lastModified());
+            out.write(ContentHash.fromHex(info.sha1()));
+
+            out.writeBoolean(info.archive() != null);
+            if(info.archive() != null) {
+                writeString(out, info.archive());
+            }
+        }
+    }
+
+    @Nullable
+    private static AssetInfo readAssetInfo(ByteBuffer in) {
+        if(in.get() == 0) {
+            return null;
+        }
+        return new AssetInfo(in.getLong(), in.getLong(), readHash(in), in.get() == 0 ? null : readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        var bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readHash(ByteBuffer in) {
+        var hash = new byte[ContentHash.LENGTH];
+        in.get(hash);
+        return ContentHash.toHex(hash);
+    }
+}
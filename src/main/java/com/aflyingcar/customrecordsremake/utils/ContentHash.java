@@ -0,0 +1,79 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers for computing the SHA-1 content hash used to identify record assets.
+ */
+public class ContentHash {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The number of bytes in a hash
+     */
+    public static final int LENGTH = 20;
+
+    @NotNull
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the contents of the given file.
+     *
+     * @param path The file to hash
+     * @return The hash of the file, as a lowercase hex string
+     * @throws IOException If the file could not be read
+     */
+    @NotNull
+    public static String of(@NotNull Path path) throws IOException {
+        var digest = newDigest();
+        var buffer = ByteBuffer.allocate(64 * 1024);
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while(channel.read(buffer) >= 0) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    @NotNull
+    public static String of(byte @NotNull [] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    @NotNull
+    public static String toHex(byte @NotNull [] hash) {
+        var chars = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; ++i) {
+            chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    @NotNull
+    public static byte[] fromHex(@NotNull String hex) {
+        var bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte)Integer.parseInt(hex, i * 2, i * 2 + 2, 16);
+        }
+        return bytes;
+    }
+}
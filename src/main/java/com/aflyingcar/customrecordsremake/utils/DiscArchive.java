@@ -0,0 +1,469 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A .zip archive in the records directory that bundles records.json fragments and record assets into a single file.
+ * Archives must be uncompressed (STORED), so that entries can be served straight out of a memory mapping without being
+ *   extracted. Only the central directory is read when an archive is opened, and it is indexed by entry name. The whole
+ *   archive is mapped once, the first time anything is read from it, and each entry is served as a slice of that.
+ *
+ * Each archive may contain, at its root:
+ *   any number of *.json files, in the same format as records.json
+ *   {filename}.ogg and {filename}.png for each record
+ *
+ * Loose files in the records directory take precedence over anything in an archive, and archives take precedence over
+ *   each other in alphabetical order of their file names.
+ */
+public class DiscArchive implements AutoCloseable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final short ZIP64_EXTRA_ID = 0x0001;
+
+    /**
+     * A single entry in an archive
+     */
+    private static final class Entry {
+        /**
+         * Where the local header of this entry starts in the archive
+         */
+        private final long localHeaderOffset;
+
+        /**
+         * The size of the entry's data
+         */
+        private final long size;
+
+        /**
+         * Where the entry's data starts in the archive, once its local header has been read, or -1 until then
+         */
+        private volatile long dataOffset = -1;
+
+        private Entry(long localHeaderOffset, long size) {
+            this.localHeaderOffset = localHeaderOffset;
+            this.size = size;
+        }
+    }
+
+    private static volatile ImmutableList<DiscArchive> loaded = ImmutableList.of();
+
+    private final Path path;
+    private final String name;
+    private final long lastModified;
+    private final FileChannel channel;
+    private final ImmutableMap<String, Entry> entries;
+
+    /**
+     * The whole archive, once anything has been read from it. Archives too large to map in one go have each entry
+     *   mapped as it is read instead.
+     */
+    private volatile MappedByteBuffer mapping;
+
+    private DiscArchive(Path path, long lastModified, FileChannel channel, ImmutableMap<String, Entry> entries) {
+        this.path = path;
+        this.name = path.getFileName().toString();
+        this.lastModified = lastModified;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens every archive in the given directory, closing any that were previously open.
+     *
+     * @param recordsDir The records directory
+     * @return Every archive that could be opened, in order of precedence
+     */
+    @NotNull
+    public static synchronized ImmutableList<DiscArchive> loadAll(@NotNull Path recordsDir) {
+        for(var archive : loaded) {
+            archive.close();
+        }
+
+        var archives = ImmutableList.<DiscArchive>builder();
+        for(var archivePath : listArchives(recordsDir)) {
+            try {
+                var archive = open(archivePath);
+                archives.add(archive);
+
+                CustomRecordsRemakeMod.getLogger().info("Opened disc archive '" + archive.getName() + "' with " + archive.entries.size() + " entries");
+            } catch(IOException | RuntimeException e) {
+                // A damaged archive must never stop the rest from loading, whatever it is that turns out to be wrong with it
+                CustomRecordsRemakeMod.getLogger().error("Failed to open disc archive '" + archivePath + "', it will be ignored.", e);
+            }
+        }
+
+        loaded = archives.build();
+        return loaded;
+    }
+
+    /**
+     * @return Every archive currently open, in order of precedence
+     */
+    @NotNull
+    public static ImmutableList<DiscArchive> getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Finds the open archive with the given file name.
+     *
+     * @param name The file name of the archive (for example 'discs.zip')
+     * @return The archive, or null if no archive with that name is open
+     */
+    @Nullable
+    public static DiscArchive getLoaded(@NotNull String name) {
+        for(var archive : loaded) {
+            if(archive.name.equals(name)) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the archive with the highest precedence that contains the given entry.
+     *
+     * @param entryName The name of the entry
+     * @return The archive, or null if no open archive contains the entry
+     */
+    @Nullable
+    public static DiscArchive find(@NotNull String entryName) {
+        for(var archive : loaded) {
+            if(archive.contains(entryName)) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists every archive in the given directory, in order of precedence.
+     *
+     * @param recordsDir The records directory
+     * @return The path of every .zip file in the directory
+     */
+    @NotNull
+    public static List<Path> listArchives(@NotNull Path recordsDir) {
+        try(Stream<Path> files = Files.list(recordsDir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".zip") && Files.isRegularFile(p))
+                        .sorted()
+                        .toList();
+        } catch(NoSuchFileException e) {
+            return List.of();
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().error("Failed to list disc archives in '" + recordsDir + "'", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Opens the given archive, reading and indexing its central directory.
+     *
+     * @param path The archive
+     * @return The opened archive
+     * @throws IOException If the archive could not be read, or is not a valid zip file
+     */
+    @NotNull
+    public static DiscArchive open(@NotNull Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            var lastModified = Files.getLastModifiedTime(path).toMillis();
+            return new DiscArchive(path, lastModified, channel, readCentralDirectory(path, channel));
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ImmutableMap<String, Entry> readCentralDirectory(Path path, FileChannel channel) throws IOException {
+        var archiveSize = channel.size();
+
+        // The end of central directory record is at the very end of the file, followed by a comment of up to 64KB
+        var tailSize = (int)Math.min(archiveSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        var tail = channel.map(FileChannel.MapMode.READ_ONLY, archiveSize - tailSize, tailSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        var eocd = -1;
+        for(int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; --i) {
+            if(tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if(eocd < 0) {
+            throw new IOException(path + " is not a zip file");
+        }
+
+        long entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+
+        // Large archives store the real values in the zip64 end of central directory record instead
+        if(eocd >= ZIP64_LOCATOR_SIZE && tail.getInt(eocd - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIGNATURE) {
+            var zip64Offset = tail.getLong(eocd - ZIP64_LOCATOR_SIZE + 8);
+            checkBounds(path, "zip64 end of central directory record", zip64Offset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE, archiveSize);
+            var zip64 = channel.map(FileChannel.MapMode.READ_ONLY, zip64Offset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if(zip64.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException(path + " has a corrupt zip64 end of central directory record");
+            }
+
+            entryCount = zip64.getLong(32);
+            directorySize = zip64.getLong(40);
+            directoryOffset = zip64.getLong(48);
+        }
+
+        if(directorySize > Integer.MAX_VALUE) {
+            throw new IOException(path + " has a central directory that is too large");
+        }
+        checkBounds(path, "central directory", directoryOffset, directorySize, archiveSize);
+
+        MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize);
+        directory.order(ByteOrder.LITTLE_ENDIAN);
+
+        var entries = ImmutableMap.<String, Entry>builderWithExpectedSize((int)Math.min(entryCount, Integer.MAX_VALUE));
+        List<String> compressed = new ArrayList<>();
+
+        var position = 0;
+        for(long i = 0; i < entryCount; ++i) {
+            // Every read below is checked against the end of the directory, as a truncated or damaged archive can claim
+            //   any sizes at all
+            checkBounds(path, "central directory header", position, CENTRAL_HEADER_SIZE, directorySize);
+            if(directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException(path + " has a corrupt central directory");
+            }
+
+            var flags = directory.getShort(position + 8) & 0xFFFF;
+            var method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            var nameLength = directory.getShort(position + 28) & 0xFFFF;
+            var extraLength = directory.getShort(position + 30) & 0xFFFF;
+            var commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            var headerSize = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            checkBounds(path, "central directory header", position, headerSize, directorySize);
+
+            var nameBytes = new byte[nameLength];
+            directory.get(position + CENTRAL_HEADER_SIZE, nameBytes);
+            var name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Values too large for the regular fields are moved into the zip64 extra field, in this order
+            var extra = position + CENTRAL_HEADER_SIZE + nameLength;
+            var extraEnd = extra + extraLength;
+            while(extra + 4 <= extraEnd) {
+                var id = directory.getShort(extra);
+                var length = directory.getShort(extra + 2) & 0xFFFF;
+                checkBounds(path, "extra field", extra + 4, length, extraEnd);
+                if(id == ZIP64_EXTRA_ID) {
+                    var field = extra + 4;
+                    var fieldEnd = field + length;
+                    if(size == 0xFFFFFFFFL) {
+                        checkBounds(path, "zip64 extra field", field, 8, fieldEnd);
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if(compressedSize == 0xFFFFFFFFL) {
+                        checkBounds(path, "zip64 extra field", field, 8, fieldEnd);
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if(localHeaderOffset == 0xFFFFFFFFL) {
+                        checkBounds(path, "zip64 extra field", field, 8, fieldEnd);
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            position += headerSize;
+
+            if(name.endsWith("/")) {
+                continue;
+            }
+            if(method != METHOD_STORED || (flags & FLAG_ENCRYPTED) != 0 || compressedSize != size) {
+                compressed.add(name);
+                continue;
+            }
+
+            checkBounds(path, "entry '" + name + "'", localHeaderOffset, LOCAL_HEADER_SIZE + size, archiveSize);
+            entries.put(name, new Entry(localHeaderOffset, size));
+        }
+
+        if(!compressed.isEmpty()) {
+            CustomRecordsRemakeMod.getLogger().warn("Disc archive '" + path.getFileName() + "' has " + compressed.size() + " compressed or encrypted entries, which will be ignored. Archives must be created without compression (for example 'zip -0'). Ignored: [" + String.join(", ", compressed) + "]");
+        }
+
+        return entries.buildKeepingLast();
+    }
+
+    /**
+     * Checks that a part of an archive lies entirely within the region it is part of.
+     *
+     * @param path The archive, for the error message
+     * @param what What is being read, for the error message
+     * @param offset Where the part starts
+     * @param length The size of the part
+     * @param limit Where the region the part should be in ends
+     * @throws IOException If any of the part lies outside the region, so the archive must be truncated or corrupt
+     */
+    private static void checkBounds(Path path, String what, long offset, long length, long limit) throws IOException {
+        if(offset < 0 || length < 0 || offset > limit || length > limit - offset) {
+            throw new IOException(path + " is truncated or corrupt: its " + what + " at " + offset + " (" + length + " bytes) runs past " + limit);
+        }
+    }
+
+    public boolean contains(@NotNull String entryName) {
+        return entries.containsKey(entryName);
+    }
+
+    /**
+     * @param entryName The name of the entry
+     * @return The size of the entry, or -1 if it is not in this archive
+     */
+    public long getSize(@NotNull String entryName) {
+        var entry = entries.get(entryName);
+        return entry == null ? -1 : entry.size;
+    }
+
+    /**
+     * Maps the data of the given entry.
+     *
+     * @param entryName The name of the entry
+     * @return A read-only buffer over the data of the entry, which is the caller's own to read from
+     * @throws IOException If the entry is not in this archive, or could not be read
+     */
+    @NotNull
+    public ByteBuffer map(@NotNull String entryName) throws IOException {
+        var entry = entries.get(entryName);
+        if(entry == null) {
+            throw new NoSuchFileException(path + "!/" + entryName);
+        }
+
+        var dataOffset = getDataOffset(entryName, entry);
+        var mapping = getMapping();
+        if(mapping == null || dataOffset + entry.size > mapping.capacity()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.size);
+        }
+        return mapping.slice((int)dataOffset, (int)entry.size);
+    }
+
+    /**
+     * Finds where the data of the given entry starts, reading its local header the first time.
+     */
+    private long getDataOffset(String entryName, Entry entry) throws IOException {
+        var dataOffset = entry.dataOffset;
+        if(dataOffset >= 0) {
+            return dataOffset;
+        }
+
+        // The local header repeats the name and has its own extra field, so it has to be read to find the data
+        var header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining()) {
+            if(channel.read(header, entry.localHeaderOffset + header.position()) < 0) {
+                throw new IOException(path + " is truncated");
+            }
+        }
+        if(header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException(path + " has a corrupt local header for '" + entryName + "'");
+        }
+
+        dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        checkBounds(path, "data of '" + entryName + "'", dataOffset, entry.size, channel.size());
+        entry.dataOffset = dataOffset;
+        return dataOffset;
+    }
+
+    /**
+     * @return The whole archive mapped into memory, or null if it is too large to map in one go
+     */
+    @Nullable
+    private MappedByteBuffer getMapping() throws IOException {
+        var mapping = this.mapping;
+        if(mapping == null) {
+            var size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            // Two threads may both map the archive the first time it is read, which is harmless
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.mapping = mapping;
+        }
+        return mapping;
+    }
+
+    /**
+     * Opens a stream over the given entry, reading straight from a memory mapping of it.
+     *
+     * @param entryName The name of the entry
+     * @return A stream over the data of the entry
+     * @throws IOException If the entry is not in this archive, or could not be read
+     */
+    @NotNull
+    public InputStream open(@NotNull String entryName) throws IOException {
+        return new ByteBufferInputStream(map(entryName));
+    }
+
+    /**
+     * @return The name of every records.json fragment at the root of this archive, in alphabetical order
+     */
+    @NotNull
+    public List<String> getRecordFragments() {
+        return entries.keySet().stream().filter(n -> n.endsWith(".json") && !n.contains("/")).sorted().toList();
+    }
+
+    @NotNull
+    public Path getPath() {
+        return path;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to close disc archive '" + name + "'", e);
+        }
+    }
+}
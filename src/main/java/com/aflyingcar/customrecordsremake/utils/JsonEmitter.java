@@ -0,0 +1,224 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes JSON documents straight into a reusable UTF-8 buffer, without building a tree of JsonElements first.
+ * The documents we generate are all fixed templates with a few holes in them, so the constant parts are encoded once up
+ *   front (see {@link #fragment(String)}) and copied in as-is, and only the values in the holes are escaped. Escaping
+ *   follows Gson's JsonWriter exactly, so the output is byte-for-byte what Gson would have written.
+ * Each thread has its own emitter, and the only thing allocated per document is the final byte array.
+ */
+public class JsonEmitter {
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+
+    /**
+     * Buffers larger than this are not kept around once a document is finished, so that generating one very large
+     *   document (such as the sounds.json for a huge catalog) does not pin that much memory to the thread forever.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final byte[][] ESCAPES = new byte[128][];
+    private static final byte[][] HTML_SAFE_ESCAPES;
+
+    static {
+        for(int c = 0; c < 0x20; ++c) {
+            ESCAPES[c] = fragment(String.format("\\u%04x", c));
+        }
+        ESCAPES['"'] = fragment("\\\"");
+        ESCAPES['\\'] = fragment("\\\\");
+        ESCAPES['\t'] = fragment("\\t");
+        ESCAPES['\b'] = fragment("\\b");
+        ESCAPES['\n'] = fragment("\\n");
+        ESCAPES['\r'] = fragment("\\r");
+        ESCAPES['\f'] = fragment("\\f");
+
+        HTML_SAFE_ESCAPES = ESCAPES.clone();
+        HTML_SAFE_ESCAPES['<'] = fragment("\\u003c");
+        HTML_SAFE_ESCAPES['>'] = fragment("\\u003e");
+        HTML_SAFE_ESCAPES['&'] = fragment("\\u0026");
+        HTML_SAFE_ESCAPES['='] = fragment("\\u003d");
+        HTML_SAFE_ESCAPES['\''] = fragment("\\u0027");
+    }
+
+    private static final byte[] LINE_SEPARATOR_ESCAPE = fragment("\\u2028");
+    private static final byte[] PARAGRAPH_SEPARATOR_ESCAPE = fragment("\\u2029");
+
+    private static final ThreadLocal<JsonEmitter> emitters = ThreadLocal.withInitial(JsonEmitter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+    private byte[][] escapes = ESCAPES;
+
+    private JsonEmitter() { }
+
+    /**
+     * Starts a new document on this thread's emitter. Documents must be finished with {@link #toByteArray()} before
+     *   another one is started on the same thread.
+     *
+     * @param htmlSafe True to also escape the characters that Gson escapes by default ('<', '>', '&', '=' and '\''), as
+     *                 Gson#toJson does. False to escape like JsonElement#toString does.
+     * @return The emitter to write the document with
+     */
+    @NotNull
+    public static JsonEmitter begin(boolean htmlSafe) {
+        var emitter = emitters.get();
+        emitter.size = 0;
+        emitter.escapes = htmlSafe ? HTML_SAFE_ESCAPES : ESCAPES;
+        return emitter;
+    }
+
+    /**
+     * Encodes a constant part of a template once, so that it can be copied into documents with {@link #raw(byte[])}.
+     *
+     * @param json The constant JSON text, which is not escaped in any way
+     * @return The UTF-8 bytes of the text
+     */
+    public static byte @NotNull [] fragment(@NotNull String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies a pre-encoded fragment into the document as-is.
+     */
+    @NotNull
+    public JsonEmitter raw(byte @NotNull [] fragment) {
+        ensureCapacity(fragment.length);
+        System.arraycopy(fragment, 0, buffer, size, fragment.length);
+        size += fragment.length;
+        return this;
+    }
+
+    /**
+     * Writes a single ASCII character into the document as-is.
+     */
+    @NotNull
+    public JsonEmitter raw(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte)c;
+        return this;
+    }
+
+    /**
+     * Writes a quoted, escaped JSON string.
+     */
+    @NotNull
+    public JsonEmitter string(@NotNull String value) {
+        return raw('"').content(value).raw('"');
+    }
+
+    /**
+     * Writes the escaped contents of a JSON string, without the surrounding quotes. This lets a string value be built
+     *   from several parts (such as a namespace and a path) without concatenating them first.
+     */
+    @NotNull
+    public JsonEmitter content(@NotNull String value) {
+        // Every char takes at most 6 bytes once escaped
+        ensureCapacity(value.length() * 6);
+
+        var escapes = this.escapes;
+        var buffer = this.buffer;
+        var size = this.size;
+
+        for(int i = 0; i < value.length(); ++i) {
+            var c = value.charAt(i);
+
+            if(c < 0x80) {
+                var escape = escapes[c];
+                if(escape == null) {
+                    buffer[size++] = (byte)c;
+                } else {
+                    System.arraycopy(escape, 0, buffer, size, escape.length);
+                    size += escape.length;
+                }
+            } else if(c < 0x800) {
+                buffer[size++] = (byte)(0xC0 | (c >> 6));
+                buffer[size++] = (byte)(0x80 | (c & 0x3F));
+            } else if(c == '\u2028' || c == '\u2029') {
+                var escape = c == '\u2028' ? LINE_SEPARATOR_ESCAPE : PARAGRAPH_SEPARATOR_ESCAPE;
+                System.arraycopy(escape, 0, buffer, size, escape.length);
+                size += escape.length;
+            } else if(Character.isSurrogate(c)) {
+                if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[size++] = (byte)(0xF0 | (codePoint >> 18));
+                    buffer[size++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[size++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[size++] = (byte)(0x80 | (codePoint & 0x3F));
+                } else {
+                    // Same replacement as String#getBytes for a lone surrogate
+                    buffer[size++] = '?';
+                }
+            } else {
+                buffer[size++] = (byte)(0xE0 | (c >> 12));
+                buffer[size++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * Writes an integer, the same way Gson writes an Integer.
+     */
+    @NotNull
+    public JsonEmitter number(int value) {
+        // At most 10 digits and a sign
+        ensureCapacity(11);
+
+        long remaining = value;
+        if(remaining < 0) {
+            buffer[size++] = '-';
+            remaining = -remaining;
+        }
+
+        var start = size;
+        do {
+            buffer[size++] = (byte)('0' + remaining % 10);
+            remaining /= 10;
+        } while(remaining != 0);
+
+        // The digits were written least significant first
+        for(int i = start, j = size - 1; i < j; ++i, --j) {
+            var digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    /**
+     * Writes a float, the same way Gson writes a Float.
+     */
+    @NotNull
+    public JsonEmitter number(float value) {
+        // Float#toString only ever uses ASCII digits, '-', '.' and 'E', none of which need escaping
+        return content(Float.toString(value));
+    }
+
+    /**
+     * Finishes the document.
+     *
+     * @return The UTF-8 bytes of the document
+     */
+    public byte @NotNull [] toByteArray() {
+        var bytes = Arrays.copyOf(buffer, size);
+
+        size = 0;
+        if(buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        return bytes;
+    }
+
+    private void ensureCapacity(int extra) {
+        if(size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
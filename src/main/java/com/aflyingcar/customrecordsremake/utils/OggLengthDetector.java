@@ -0,0 +1,127 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Works out the length of an Ogg Vorbis file without decoding it.
+ * The sample rate is read from the Vorbis identification header at the start of the file, and the total number of
+ *   samples is the granule position of the last Ogg page, which is found by scanning backwards from the end of the
+ *   file. Only a few KB of each file are touched.
+ */
+public class OggLengthDetector {
+    private static final int PAGE_HEADER_SIZE = 27;
+
+    /**
+     * The smallest a valid file can be: a first page holding the 30 byte identification header
+     */
+    private static final int HEAD_SIZE = PAGE_HEADER_SIZE + 1 + 30;
+
+    /**
+     * How much of the end of the file to scan at first. Most encoders write pages of 4-8KB, but a page can be up to
+     *   64KB, so if no page is found in this window we try again with the largest possible page size.
+     */
+    private static final int TAIL_SIZE = 8 * 1024;
+    private static final int MAX_TAIL_SIZE = PAGE_HEADER_SIZE + 255 + 255 * 255;
+
+    /**
+     * Thrown when a file cannot be read as Ogg Vorbis
+     */
+    public static class InvalidOggException extends IOException {
+        public InvalidOggException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Detects the length of the given Ogg Vorbis file.
+     *
+     * @param path The .ogg file
+     * @return The length of the file, in seconds
+     * @throws IOException If the file could not be read, or is not an Ogg Vorbis file
+     */
+    public static double detectSeconds(@NotNull Path path) throws IOException {
+        // Mapping the file does not read it, only the pages touched below are actually read from disk
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return detectSeconds(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Detects the length of the given Ogg Vorbis data.
+     *
+     * @param data The contents of an .ogg file (such as a mapped file or archive entry)
+     * @return The length of the data, in seconds
+     * @throws IOException If the data is not Ogg Vorbis
+     */
+    public static double detectSeconds(@NotNull ByteBuffer data) throws IOException {
+        data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        var size = data.limit();
+
+        if(size < HEAD_SIZE || !isPageAt(data, 0)) {
+            throw new InvalidOggException("Not an Ogg file");
+        }
+
+        var serial = data.getInt(14);
+        var segmentCount = data.get(26) & 0xFF;
+        var packetStart = PAGE_HEADER_SIZE + segmentCount;
+
+        // Identification header: packet type 1, 'vorbis', version (4), channels (1), sample rate (4)
+        if(size < packetStart + 16 || data.get(packetStart) != 1 ||
+           data.get(packetStart + 1) != 'v' || data.get(packetStart + 2) != 'o' || data.get(packetStart + 3) != 'r' ||
+           data.get(packetStart + 4) != 'b' || data.get(packetStart + 5) != 'i' || data.get(packetStart + 6) != 's') {
+            throw new InvalidOggException("First packet is not a Vorbis identification header");
+        }
+
+        var sampleRate = data.getInt(packetStart + 12) & 0xFFFFFFFFL;
+        if(sampleRate == 0) {
+            throw new InvalidOggException("Sample rate is 0");
+        }
+
+        var granule = findLastGranule(data, serial, TAIL_SIZE);
+        if(granule < 0 && size > TAIL_SIZE) {
+            granule = findLastGranule(data, serial, MAX_TAIL_SIZE);
+        }
+        if(granule < 0) {
+            throw new InvalidOggException("Could not find a final page with a granule position");
+        }
+
+        return granule / (double)sampleRate;
+    }
+
+    /**
+     * Finds the granule position of the last page in the given logical stream that has one, scanning backwards over the
+     *   last 'window' bytes of the data.
+     *
+     * @return The granule position, or -1 if no such page could be found
+     */
+    private static long findLastGranule(ByteBuffer data, int serial, int window) {
+        var end = data.limit();
+        var start = Math.max(0, end - window);
+
+        for(int i = end - PAGE_HEADER_SIZE; i >= start; --i) {
+            if(!isPageAt(data, i) || data.getInt(i + 14) != serial) {
+                continue;
+            }
+
+            // A granule position of -1 means that no packet finishes on this page
+            var granule = data.getLong(i + 6);
+            if(granule >= 0) {
+                return granule;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isPageAt(ByteBuffer buffer, int offset) {
+        return buffer.get(offset) == 'O' && buffer.get(offset + 1) == 'g' && buffer.get(offset + 2) == 'g' &&
+               buffer.get(offset + 3) == 'S' && buffer.get(offset + 4) == 0;
+    }
+}
@@ -0,0 +1,37 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Runs work over a batch of items on a pool of its own, rather than the common pool, so that loading neither competes
+ *   with nor is held up by whatever else is using the common pool at the time.
+ */
+public class Parallel {
+    /**
+     * Maps every item on a pool of the given size, which is shut down again once every item is done. The results are
+     *   in the same order as the items no matter which finishes first.
+     *
+     * @param items The items to map
+     * @param threads The most threads to use. No more threads are used than there are items.
+     * @param function What to map each item to. Exceptions it throws are passed on to the caller.
+     * @return The result for each item, in order
+     */
+    @NotNull
+    public static <T, R> List<R> parallelMap(@NotNull Collection<T> items, int threads, @NotNull Function<? super T, ? extends R> function) {
+        if(items.isEmpty()) {
+            return List.of();
+        }
+
+        var pool = new ForkJoinPool(Math.max(1, Math.min(items.size(), threads)));
+        try {
+            return pool.submit(() -> items.parallelStream().<R>map(function).toList()).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
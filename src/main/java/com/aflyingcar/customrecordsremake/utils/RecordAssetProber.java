@@ -0,0 +1,91 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gathers the facts about each record's assets (see {@link AssetInfo}) that are stored in the {@link CatalogCache}.
+ */
+public class RecordAssetProber {
+    /**
+     * Probes the .ogg and .png of every given record in parallel.
+     * Assets whose size and modification time match what was previously known are not hashed again, and records whose
+     *   length was previously detected from an unchanged .ogg keep that length.
+     *
+     * @param toProbe The records to probe
+     * @param previous The records previously loaded from the catalog cache, by fileName
+     * @return The given records, in the same order, with what was learnt about their assets filled in
+     */
+    @NotNull
+    public static List<RecordJsonHandler.Record> probe(@NotNull List<RecordJsonHandler.Record> toProbe, @NotNull Map<String, RecordJsonHandler.Record> previous) {
+        if(toProbe.isEmpty()) {
+            return toProbe;
+        }
+
+        var start = System.nanoTime();
+        var recordsDir = CustomRecordsRemakeMod.getRecordsResourcesDir();
+        var hashed = new AtomicInteger();
+
+        // Mostly waiting on I/O, so use more threads than there are cores
+        List<RecordJsonHandler.Record> probed = Parallel.parallelMap(toProbe, Runtime.getRuntime().availableProcessors() * 2, record -> {
+            var old = previous.get(record.fileName);
+
+            var oggInfo = probe(recordsDir, record.fileName + ".ogg", old == null ? null : old.oggInfo, hashed);
+            var textureInfo = probe(recordsDir, record.fileName + ".png", old == null ? null : old.textureInfo, hashed);
+
+            var builder = record.toBuilder().oggInfo(oggInfo).textureInfo(textureInfo);
+            if(record.length == RecordJsonHandler.Record.UNKNOWN_LENGTH && old != null && old.lengthDetected &&
+               oggInfo != null && oggInfo.equals(old.oggInfo)) {
+                builder.length(old.length).lengthDetected(true);
+            }
+            return builder.build();
+        });
+
+        CustomRecordsRemakeMod.getLogger().info("Probed the assets of " + toProbe.size() + " records (" + hashed.get() + " files hashed) in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+        return probed;
+    }
+
+    /**
+     * Probes a single asset. Loose files in the records directory take precedence over entries in disc archives.
+     *
+     * @param recordsDir The records directory
+     * @param fileName The name of the asset (for example '{filename}.ogg')
+     * @param previous What was previously known about the asset, if anything
+     * @return The facts about the asset, or null if it could not be found anywhere
+     * @throws IOException If the asset could not be read
+     */
+    @Nullable
+    public static AssetInfo probe(@NotNull Path recordsDir, @NotNull String fileName, @Nullable AssetInfo previous) throws IOException {
+        var info = AssetInfo.probe(recordsDir.resolve(fileName), previous);
+        if(info != null) {
+            return info;
+        }
+
+        var archive = DiscArchive.find(fileName);
+        return archive == null ? null : AssetInfo.probe(archive, fileName, previous);
+    }
+
+    private static AssetInfo probe(Path recordsDir, String fileName, AssetInfo previous, AtomicInteger hashed) {
+        try {
+            var info = probe(recordsDir, fileName, previous);
+            if(info != null && info != previous) {
+                hashed.incrementAndGet();
+            }
+            if(info == null) {
+                CustomRecordsRemakeMod.getLogger().warn("Could not find '" + fileName + "' in '" + recordsDir + "' or any disc archive!");
+            }
+            return info;
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to read '" + fileName + "'", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.sync.SyncedAssets;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.sounds.SoundEvent;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * An immutable snapshot of every loaded record.
+ * The current catalog is published through a single atomic reference, so readers (pack resources, sound registration,
+ *   recipe generation, ...) never need to lock: they grab the current catalog once and get a consistent view of it, no
+ *   matter what is published while they are using it. Changes are made by building a new catalog and publishing it.
+ */
+public class RecordCatalog {
+    private static final RecordCatalog EMPTY = new RecordCatalog(0, ImmutableMap.of());
+
+    private static final AtomicReference<RecordCatalog> current = new AtomicReference<>(EMPTY);
+
+    private final int version;
+    private final int resourcesVersion;
+    private final ImmutableMap<String, RecordJsonHandler.Record> records;
+    private final Supplier<AssetDedup> dedup;
+    private final Supplier<byte[]> soundsJson;
+    private final Supplier<ImmutableMap<String, Integer>> indices;
+
+    private RecordCatalog(int version, ImmutableMap<String, RecordJsonHandler.Record> records) {
+        this(version, records, null, null);
+    }
+
+    /**
+     * @param dedup What the records share, if it has already been worked out
+     * @param sameResources An earlier catalog with the same records in the same order, that generates exactly the same
+     *                      resources as this one. Whatever it has already generated is shared rather than generated again.
+     */
+    private RecordCatalog(int version, ImmutableMap<String, RecordJsonHandler.Record> records, @Nullable AssetDedup dedup, @Nullable RecordCatalog sameResources) {
+        this.version = version;
+        this.records = records;
+        this.dedup = dedup != null ? Suppliers.ofInstance(dedup) : Suppliers.memoize(() -> AssetDedup.of(this.records.values(), RecordCatalog::isSynced));
+
+        if(sameResources != null) {
+            this.resourcesVersion = sameResources.resourcesVersion;
+            this.soundsJson = sameResources.soundsJson;
+            this.indices = sameResources.indices;
+        } else {
+            this.resourcesVersion = version;
+            this.soundsJson = Suppliers.memoize(() -> RecordJsonHandler.renderSoundsJson(this.records.values(), getAssetDedup()));
+            this.indices = Suppliers.memoize(this::buildIndices);
+        }
+    }
+
+    /**
+     * @return The catalog that is currently published
+     */
+    @NotNull
+    public static RecordCatalog current() {
+        return current.get();
+    }
+
+    /**
+     * Publishes a new catalog holding exactly the given records, replacing the current one. If more than one record
+     *   has the same filename, the last one wins.
+     *
+     * @param records The records to publish
+     * @return The new catalog
+     */
+    @NotNull
+    public static RecordCatalog publish(@NotNull Collection<RecordJsonHandler.Record> records) {
+        var byFileName = new LinkedHashMap<String, RecordJsonHandler.Record>();
+        for(var record : records) {
+            var previous = byFileName.put(record.fileName, record);
+            if(previous != null) {
+                CustomRecordsRemakeMod.getLogger().warn("Record '" + record.name + "' uses the same filename as record '" + previous.name + "' ('" + record.fileName + "') and will replace it!");
+            }
+        }
+
+        var contents = ImmutableMap.copyOf(byFileName);
+        return current.updateAndGet(old -> new RecordCatalog(old.version + 1, contents));
+    }
+
+    /**
+     * Publishes a new catalog with the same records as the current one, so that everything derived from the catalog is
+     *   worked out again. This is needed when something that derived data depends on changes, such as which assets are
+     *   served from the server's copies (see {@link SyncedAssets}).
+     *
+     * @return The new catalog
+     */
+    @NotNull
+    public static RecordCatalog republish() {
+        return current.updateAndGet(old -> new RecordCatalog(old.version + 1, old.records));
+    }
+
+    /**
+     * Publishes a new catalog with a single record replaced. Readers holding the old catalog are unaffected.
+     * If only what is known about the record's assets changes, and that does not change which assets are shared, the
+     *   new catalog generates the same resources as the old one, so it keeps its resources version (see
+     *   {@link #getResourcesVersion()}) and shares everything the old one has already generated.
+     *
+     * @param fileName The filename of the record to replace
+     * @param update Builds the replacement from the current record
+     * @return The replacement record, or null if there is no record with that filename
+     */
+    @Nullable
+    public static RecordJsonHandler.Record update(@NotNull String fileName, @NotNull UnaryOperator<RecordJsonHandler.Record> update) {
+        while(true) {
+            var old = current.get();
+            var record = old.records.get(fileName);
+            if(record == null) {
+                return null;
+            }
+
+            var replacement = update.apply(record);
+
+            var builder = ImmutableMap.<String, RecordJsonHandler.Record>builderWithExpectedSize(old.records.size());
+            old.records.forEach((name, existing) -> builder.put(name, name.equals(fileName) ? replacement : existing));
+            var contents = builder.build();
+
+            RecordCatalog updated;
+            if(hasSameResources(record, replacement)) {
+                var dedup = AssetDedup.of(contents.values(), RecordCatalog::isSynced);
+                updated = new RecordCatalog(old.version + 1, contents, dedup, dedup.hasSameSources(old.getAssetDedup()) ? old : null);
+            } else {
+                updated = new RecordCatalog(old.version + 1, contents);
+            }
+
+            if(current.compareAndSet(old, updated)) {
+                return replacement;
+            }
+        }
+    }
+
+    /**
+     * Bumped every time a new catalog is published, so that anything derived from a catalog knows when it has gone
+     *   stale.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Bumped every time a catalog is published that may generate different resources (sounds.json, models, recipes,
+     *   the pack's index, ...) than the last. Catalogs that only differ in what is known about their assets, such as
+     *   after a single .ogg or .png is edited, share the same resources version, so what was generated for one can be
+     *   served for the other.
+     */
+    public int getResourcesVersion() {
+        return resourcesVersion;
+    }
+
+    /**
+     * @return Every record in this catalog by filename, in the order they were loaded
+     */
+    @NotNull
+    public ImmutableMap<String, RecordJsonHandler.Record> getRecords() {
+        return records;
+    }
+
+    @NotNull
+    public ImmutableList<SoundEvent> getSounds() {
+        return records.values().stream().map(r -> r.sound).collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * @return Which records in this catalog have identical assets, worked out the first time it is asked for from the
+     *         assets synced at that time. {@link #republish()} must be called when the synced assets change.
+     */
+    @NotNull
+    public AssetDedup getAssetDedup() {
+        return dedup.get();
+    }
+
+    /**
+     * @return The UTF-8 contents of sounds.json for this catalog, generated the first time it is asked for. The array is
+     *         shared, so it must not be modified.
+     */
+    public byte @NotNull [] getSoundsJson() {
+        return soundsJson.get();
+    }
+
+    /**
+     * Gets the position of a record in this catalog, which is how variant discs tell their models apart. Positions only
+     *   change when the set of records does, as {@link #update(String, UnaryOperator)} keeps every record in place.
+     *
+     * @param fileName The filename of the record
+     * @return The position of the record, or -1 if there is no record with that filename
+     */
+    public int indexOf(@NotNull String fileName) {
+        return indices.get().getOrDefault(fileName, -1);
+    }
+
+    /**
+     * Gets the value of the variant disc item property that selects the given record's model. Item properties are
+     *   clamped to [0, 1], so every record gets an evenly spaced value strictly between 0 and 1. Overrides are matched
+     *   with '>=', and the last match in the model wins, so listing the overrides in catalog order picks out exactly
+     *   one of them.
+     *
+     * @param fileName The filename of the record
+     * @return The value of the property, or 0 (the plain disc model) if there is no record with that filename
+     */
+    public float getDiscPredicate(@NotNull String fileName) {
+        var index = indexOf(fileName);
+        return index < 0 ? 0 : getDiscPredicate(index);
+    }
+
+    /**
+     * @param index The position of a record in this catalog
+     * @return The value of the variant disc item property for the record at that position
+     */
+    public float getDiscPredicate(int index) {
+        return (float)(index + 1) / (records.size() + 1);
+    }
+
+    /**
+     * @return True if the only differences between the two records are in what is known about their assets, which
+     *         nothing generated refers to directly
+     */
+    private static boolean hasSameResources(RecordJsonHandler.Record a, RecordJsonHandler.Record b) {
+        return a.fileName.equals(b.fileName) && Objects.equals(a.name, b.name) && Objects.equals(a.source, b.source) &&
+               a.length == b.length && a.lengthDetected == b.lengthDetected && Objects.equals(a.recipe, b.recipe);
+    }
+
+    private static boolean isSynced(String assetName) {
+        return SyncedAssets.get(assetName) != null;
+    }
+
+    private ImmutableMap<String, Integer> buildIndices() {
+        var builder = ImmutableMap.<String, Integer>builderWithExpectedSize(records.size());
+        var index = 0;
+        for(var fileName : records.keySet()) {
+            builder.put(fileName, index++);
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return records.size();
+    }
+}
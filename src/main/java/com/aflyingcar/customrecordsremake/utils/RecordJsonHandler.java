@@ -1,198 +1,589 @@
 package com.aflyingcar.customrecordsremake.utils;
 
 import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
 import com.aflyingcar.customrecordsremake.item.ItemCustomRecord;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.stream.JsonReader;
+import com.aflyingcar.customrecordsremake.item.ItemVariantRecord;
+import com.aflyingcar.customrecordsremake.item.ModItems;
+import com.google.common.base.Suppliers;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.sounds.SoundEvent;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nullable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class RecordJsonHandler {
+    /**
+     * The directory inside the records directory that records.json fragments are loaded from
+     */
+    public static final String FRAGMENTS_DIR = "records.d";
+
+    /**
+     * A single record. Records are immutable, so that they can be shared between threads freely; changing a record
+     *   means building a new one with {@link #toBuilder()} and publishing a new {@link RecordCatalog} holding it.
+     */
     public static class Record {
+        /**
+         * The value of 'length' for records that did not specify one, and so must have it detected from the .ogg file
+         */
+        public static final int UNKNOWN_LENGTH = -1;
+
         /**
          * The filename to use when finding the .png and .ogg for this record
          */
-        public String fileName;
+        public final String fileName;
 
         /**
          * The resource location to find the components required for this record
          */
-        public ResourceLocation location;
+        public final ResourceLocation location;
 
         /**
          * The human-readable name for this record
          */
-        public String name;
+        public final String name;
+
+        /**
+         * Where this record was defined (for example 'records.json' or 'discs.zip!/discs.json')
+         */
+        public final String source;
 
         /**
          * The SoundEvent that this record will trigger when played
          */
-        public SoundEvent sound;
+        public final SoundEvent sound;
+
+        /**
+         * The length of this record in seconds, or UNKNOWN_LENGTH if it has not been detected yet
+         */
+        public final int length;
 
         /**
-         * The length of this record in seconds
+         * True if 'length' was detected from the .ogg file rather than given in records.json
          */
-        public int length;
+        public final boolean lengthDetected;
 
         /**
          * A pair specifying the item and metadata used in the recipe for this record. Can be null
          */
         @Nullable
-        public Map.Entry<String, Integer> recipe;
+        public final Map.Entry<String, Integer> recipe;
 
         /**
-         * A singleton for the Item tied to this Record
+         * What was known about this record's .ogg file when it was loaded, or null if it could not be found
          */
-        private ItemCustomRecord item = null;
+        @Nullable
+        public final AssetInfo oggInfo;
 
         /**
-         * Gets the item tied to this Record. Will construct a new ItemCustomRecord if one hasn't been made yet
+         * What was known about this record's .png file when it was loaded, or null if it could not be found
+         */
+        @Nullable
+        public final AssetInfo textureInfo;
+
+        /**
+         * A singleton for the Item tied to this Record. Shared with every copy made by {@link #toBuilder()}, as the item
+         *   (like the sound) is registered once and must stay the same object.
+         */
+        private final Supplier<ItemCustomRecord> item;
+
+        private Record(Builder builder) {
+            this.fileName = builder.fileName;
+            this.location = builder.location;
+            this.name = builder.name;
+            this.source = builder.source;
+            this.sound = builder.sound;
+            this.length = builder.length;
+            this.lengthDetected = builder.lengthDetected;
+            this.recipe = builder.recipe;
+            this.oggInfo = builder.oggInfo;
+            this.textureInfo = builder.textureInfo;
+            this.item = builder.item != null ? builder.item : Suppliers.memoize(this::buildItem);
+        }
+
+        /**
+         * Gets the item tied to this Record. Will construct a new ItemCustomRecord if one hasn't been made yet. Safe to
+         *   call from any thread, only one item is ever made.
          *
          * @return The ItemCustomRecord tied to this Record
          */
         @NotNull
         public ItemCustomRecord getItem() {
-            if(item == null) {
-                CustomRecordsRemakeMod.getLogger().debug("Building item '" + fileName + "' with soundEvent " + sound.getLocation());
+            return item.get();
+        }
+
+        private ItemCustomRecord buildItem() {
+            CustomRecordsRemakeMod.getLogger().debug("Building item '" + fileName + "' with soundEvent " + sound.getLocation());
+
+            return ItemCustomRecord.RecordItemBuilder.create(sound, length)
+                    .buildItem();
+        }
+
+        /**
+         * Starts building a new record.
+         *
+         * @param fileName The filename to use when finding the .png and .ogg for this record
+         * @return A new builder
+         */
+        @NotNull
+        public static Builder builder(@NotNull String fileName) {
+            return new Builder(fileName);
+        }
+
+        /**
+         * Starts building a copy of this record. The copy shares this record's location, sound and item.
+         *
+         * @return A new builder, filled in from this record
+         */
+        @NotNull
+        public Builder toBuilder() {
+            return new Builder(this);
+        }
+
+        public static class Builder {
+            private final String fileName;
+            private final ResourceLocation location;
+            private final SoundEvent sound;
+            @Nullable
+            private final Supplier<ItemCustomRecord> item;
+
+            private String name;
+            private String source;
+            private int length = UNKNOWN_LENGTH;
+            private boolean lengthDetected = false;
+            private Map.Entry<String, Integer> recipe;
+            private AssetInfo oggInfo;
+            private AssetInfo textureInfo;
+
+            private Builder(String fileName) {
+                this.fileName = fileName;
+                this.location = new ResourceLocation(CustomRecordsRemakeMod.MODID, fileName);
+                this.sound = new SoundEvent(location);
+                this.item = null;
+            }
+
+            private Builder(Record record) {
+                this.fileName = record.fileName;
+                this.location = record.location;
+                this.sound = record.sound;
+                this.item = record.item;
+
+                this.name = record.name;
+                this.source = record.source;
+                this.length = record.length;
+                this.lengthDetected = record.lengthDetected;
+                this.recipe = record.recipe;
+                this.oggInfo = record.oggInfo;
+                this.textureInfo = record.textureInfo;
+            }
+
+            public Builder name(@NotNull String name) {
+                this.name = name;
+                return this;
+            }
+
+            public Builder source(@NotNull String source) {
+                this.source = source;
+                return this;
+            }
+
+            /**
+             * @param length The length of the record in seconds, or UNKNOWN_LENGTH to have it detected
+             */
+            public Builder length(int length) {
+                this.length = length;
+                return this;
+            }
+
+            public Builder lengthDetected(boolean lengthDetected) {
+                this.lengthDetected = lengthDetected;
+                return this;
+            }
 
-                item = ItemCustomRecord.RecordItemBuilder.create(sound, length)
-                        .buildItem();
+            public Builder recipe(@Nullable Map.Entry<String, Integer> recipe) {
+                this.recipe = recipe;
+                return this;
             }
 
-            return item;
+            public Builder oggInfo(@Nullable AssetInfo oggInfo) {
+                this.oggInfo = oggInfo;
+                return this;
+            }
+
+            public Builder textureInfo(@Nullable AssetInfo textureInfo) {
+                this.textureInfo = textureInfo;
+                return this;
+            }
+
+            @NotNull
+            public Record build() {
+                return new Record(this);
+            }
         }
     }
 
     /**
-     * A map of all records loaded.
+     * Loads all record entries from 'config/records.json', every fragment in 'config/records.d/' and every disc archive
+     *
+     * @param file A File pointing to the records.json file
      */
-    private static final HashMap<String, Record> records = new HashMap<>();
+    public static void handleConfig(File file) {
+        /*
+         * Format:
+         * {
+         *     "<unique_id>": {
+         *         "item": "<item used in crafting recipe>",
+         *         "filename": "<name of the asset files, no extension>",
+         *         "name": "<human readable name of the record>",
+         *         "meta": "<metadata for crafting item. If there is none, leave this as 0>",
+         *         "length": "<The length of the track, in seconds>",
+         *     }
+         * }
+         */
+        var start = System.nanoTime();
+        var recordsDir = CustomRecordsRemakeMod.getRecordsResourcesDir();
+        var archives = DiscArchive.loadAll(recordsDir);
+
+        var cachePath = CatalogCache.getDefaultPath();
+        var cached = CatalogCache.read(cachePath);
+
+        CatalogCache.Key key = null;
+        try {
+            key = CatalogCache.Key.compute(file.toPath(), recordsDir);
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().warn("Failed to check " + file + " against the catalog cache, the cache will not be used.", e);
+        }
+
+        // Nothing has changed since the cache was written, so there is no need to parse or probe anything. The hashes in
+        //   the cache decide which assets are shared and whether a baked pack is still current, so they are never
+        //   trusted for an asset that has since been edited in place.
+        if(cached != null && cached.key().equals(key)) {
+            var stale = CatalogCache.countStale(recordsDir, cached.records());
+            if(stale == 0) {
+                publish(cached.records());
+
+                CustomRecordsRemakeMod.getLogger().info("Successfully loaded " + cached.records().size() + " records from the catalog cache in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+                return;
+            }
+
+            // Only the changed assets are hashed again, as the cached records are passed on to the prober below
+            CustomRecordsRemakeMod.getLogger().info(stale + " records have had their assets changed since the catalog cache was written, they will be probed again.");
+        }
+
+        // Every source of records, in order of precedence: records.json, then the fragments in records.d, then the
+        //   fragments in each disc archive
+        var sources = new ArrayList<List<Record>>();
+        sources.add(parseRecordsJson(file));
+        sources.addAll(parseFragments(recordsDir));
+        for(var archive : archives) {
+            sources.addAll(parseArchiveFragments(archive));
+        }
+
+        var loaded = mergeRecords(sources);
+
+        Map<String, Record> previous = cached == null ? Map.of() : cached.records().stream().collect(Collectors.toMap(r -> r.fileName, r -> r, (a, b) -> b));
+        loaded = RecordAssetProber.probe(loaded, previous);
+        loaded = detectMissingLengths(loaded);
+
+        var catalog = publish(loaded);
+
+        if(key != null) {
+            CatalogCache.write(cachePath, key, catalog.getRecords().values());
+        }
+
+        CustomRecordsRemakeMod.getLogger().info("Loaded the record catalog in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
 
     /**
-     * Loads all record entries from 'config/records.json'
+     * Parses every record out of the given records.json, logging any problems that were found.
      *
      * @param file A File pointing to the records.json file
+     * @return Every valid record, or an empty list if the file could not be read
      */
-    public static void handleConfig(File file) {
-        try {
-            /*
-             * Format:
-             * {
-             *     "<unique_id>": {
-             *         "item": "<item used in crafting recipe>",
-             *         "filename": "<name of the asset files, no extension>",
-             *         "name": "<human readable name of the record>",
-             *         "meta": "<metadata for crafting item. If there is none, leave this as 0>",
-             *         "length": "<The length of the track, in seconds>",
-             *     }
-             * }
-             */
+    private static List<Record> parseRecordsJson(File file) {
+        try(Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return parseRecords(file.getName(), reader);
+        } catch(IOException e) {
+            // The fragments in records.d and the disc archives can still be loaded without it
+            CustomRecordsRemakeMod.getLogger().error("Failed to read " + file + ", its records will not be loaded.", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Lists every records.json fragment in the records.d directory, in order of precedence.
+     *
+     * @param recordsDir The records directory
+     * @return The path of every .json file in records.d, in alphabetical order
+     */
+    @NotNull
+    public static List<Path> listFragments(@NotNull Path recordsDir) {
+        var fragmentsDir = recordsDir.resolve(FRAGMENTS_DIR);
+        try(Stream<Path> files = Files.list(fragmentsDir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".json") && Files.isRegularFile(p))
+                        .sorted()
+                        .toList();
+        } catch(NoSuchFileException e) {
+            return List.of();
+        } catch(IOException e) {
+            CustomRecordsRemakeMod.getLogger().error("Failed to list record fragments in '" + fragmentsDir + "'", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Parses every fragment in the records.d directory in parallel. A fragment that cannot be read only loses the
+     *   records in that fragment.
+     *
+     * @param recordsDir The records directory
+     * @return The valid records in each fragment, in alphabetical order of the fragments
+     */
+    private static List<List<Record>> parseFragments(Path recordsDir) {
+        var fragments = listFragments(recordsDir);
+        if(fragments.isEmpty()) {
+            return List.of();
+        }
+
+        var start = System.nanoTime();
+
+        // Parsing is CPU bound, so there is no point in using more threads than there are cores. The results come back
+        //   in the same order as the fragments no matter which finishes first.
+        List<List<Record>> parsed = Parallel.parallelMap(fragments, Runtime.getRuntime().availableProcessors(), fragment -> {
+            var sourceName = FRAGMENTS_DIR + "/" + fragment.getFileName();
+            try(Reader reader = Files.newBufferedReader(fragment, StandardCharsets.UTF_8)) {
+                return parseRecords(sourceName, reader);
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().error("Failed to read " + sourceName + ", its records will not be loaded.", e);
+                return List.<Record>of();
+            }
+        });
+
+        CustomRecordsRemakeMod.getLogger().info("Parsed " + parsed.stream().mapToInt(List::size).sum() + " records from " + fragments.size() + " fragments in " + FRAGMENTS_DIR + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+        return parsed;
+    }
+
+    /**
+     * Parses every records.json fragment at the root of the given archive, in alphabetical order.
+     *
+     * @param archive The archive to read
+     * @return The valid records in each fragment of the archive
+     */
+    private static List<List<Record>> parseArchiveFragments(DiscArchive archive) {
+        var loaded = new ArrayList<List<Record>>();
+        for(var fragment : archive.getRecordFragments()) {
+            var sourceName = archive.getName() + "!/" + fragment;
+            try(Reader reader = new InputStreamReader(archive.open(fragment), StandardCharsets.UTF_8)) {
+                loaded.add(parseRecords(sourceName, reader));
+            } catch(IOException e) {
+                CustomRecordsRemakeMod.getLogger().error("Failed to read " + sourceName + ", its records will not be loaded.", e);
+            }
+        }
+        return loaded;
+    }
+
+    private static List<Record> parseRecords(String sourceName, Reader reader) throws IOException {
+        var result = new RecordsJsonParser(sourceName).parse(reader);
+
+        for(var diagnostic : result.diagnostics()) {
+            if(diagnostic.severity() == RecordsJsonParser.Diagnostic.Severity.ERROR) {
+                CustomRecordsRemakeMod.getLogger().error(sourceName + ", " + diagnostic);
+            } else {
+                CustomRecordsRemakeMod.getLogger().warn(sourceName + ", " + diagnostic);
+            }
+        }
 
-            Gson gson = new Gson();
-            JsonReader reader = new JsonReader(new FileReader(file));
-            JsonObject element = gson.fromJson(reader, JsonObject.class);
-
-            if (element != null) {
-                // Go through each entry and try to add it as a new record
-                for (Map.Entry<String, JsonElement> object : element.entrySet()) {
-                    var record = new Record();
-
-                    var jsonTag = object.getKey();
-                    var jsonObject = object.getValue().getAsJsonObject();
-
-                    // Check for required fields. If those fields are missing, then warn and skip the entry
-                    if(!jsonObject.has("name")) {
-                        // TODO: Should we optionally crash the game here? That would require some sort of config.
-                        CustomRecordsRemakeMod.getLogger().warn("Entry for record tagged '" + jsonTag + "' is missing the required 'name' field! This record entry will be skipped.");
-                        continue;
-                    }
-                    if(!jsonObject.has("filename")) {
-                        CustomRecordsRemakeMod.getLogger().warn("Entry for record tagged '" + jsonTag + "' is missing the required 'fileName' field! This record entry will be skipped.");
-                        continue;
-                    }
-                    if(!jsonObject.has("length")) {
-                        CustomRecordsRemakeMod.getLogger().warn("Entry for record tagged '" + jsonTag + "' is missing the required 'length' field! This record entry will be skipped.");
-                        continue;
-                    }
-
-                    // Load the required fields into the record object
-                    record.name = jsonObject.get("name").getAsString();
-                    record.fileName = jsonObject.get("filename").getAsString();
-                    record.length = jsonObject.get("length").getAsInt();
-
-                    // Build the item's location and the sound event for this record
-                    record.location = new ResourceLocation(CustomRecordsRemakeMod.MODID, record.fileName);
-                    record.sound = new SoundEvent(record.location);
-
-                    // Check for optional fields
-                    if(jsonObject.has("item")) {
-                        var itemRecipe = jsonObject.get("item").getAsString();
-                        var meta = 0;
-
-                        // Metadata is optional, if it isn't specified we can assume it's just '0'
-                        if(jsonObject.has("meta")) {
-                            meta = jsonObject.get("meta").getAsInt();
-                        } else {
-                            CustomRecordsRemakeMod.getLogger().debug("Entry for record '" + record.name + "' is missing the 'meta' field. Assuming meta=0.");
-                        }
-
-                        // Load the recipe into the record object
-                        record.recipe = new AbstractMap.SimpleEntry<>(itemRecipe, meta);
-                    } else {
-                        CustomRecordsRemakeMod.getLogger().warn("Entry for record '" + record.name + "' is missing the 'item' field! This will not be treated as an error, but it does mean that the record will not be craftable.");
-                    }
-
-                    // Add this record last, so that if any of the above fails we don't end up with half-formed data
-                    records.put(record.fileName, record);
-
-                    CustomRecordsRemakeMod.getLogger().info("Successfully loaded record '" + record.fileName + "'");
+        CustomRecordsRemakeMod.getLogger().info("Successfully parsed " + result.records().size() + " of " + result.entries() + " records from " + sourceName + " in " +
+                                                result.elapsedNanos() / 1_000_000 + "ms (" + Math.round(result.entriesPerSecond()) + " entries/s)");
+
+        return result.records();
+    }
+
+    /**
+     * Merges the records from every source into a single list. Within a single source, a later definition of a filename
+     *   replaces an earlier one, as has always been the case for records.json. Across sources, the first source to
+     *   define a filename wins. Every conflict is reported, naming both sources.
+     *
+     * @param sources The records from each source, in order of precedence
+     * @return Every record, in the order they were first defined
+     */
+    private static List<Record> mergeRecords(List<List<Record>> sources) {
+        var merged = new LinkedHashMap<String, Record>();
+        var conflicts = 0;
+
+        for(var source : sources) {
+            var bySource = new LinkedHashMap<String, Record>();
+            for(var record : source) {
+                var previous = bySource.put(record.fileName, record);
+                if(previous != null) {
+                    CustomRecordsRemakeMod.getLogger().warn("Record '" + record.name + "' uses the same filename as record '" + previous.name + "' ('" + record.fileName + "') in " + record.source + " and will replace it!");
+                    ++conflicts;
                 }
+            }
 
-                CustomRecordsRemakeMod.getLogger().info("Successfully loaded " + records.size() + " records!");
-                CustomRecordsRemakeMod.getLogger().debug("Records: [" + String.join(", ", getFileNames()) + "]");
+            for(var record : bySource.values()) {
+                var existing = merged.putIfAbsent(record.fileName, record);
+                if(existing != null) {
+                    CustomRecordsRemakeMod.getLogger().warn("Record '" + record.fileName + "' from " + record.source + " is shadowed by the one from " + existing.source + " and will be ignored.");
+                    ++conflicts;
+                }
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
         }
+
+        if(conflicts > 0) {
+            CustomRecordsRemakeMod.getLogger().warn("Found " + conflicts + " conflicting record filenames across " + sources.size() + " sources, see above for which definitions were used.");
+        }
+
+        return new ArrayList<>(merged.values());
+    }
+
+    private static RecordCatalog publish(Collection<Record> loaded) {
+        // Publish the records last, so that if any of the above fails we don't end up with half-formed data
+        var catalog = RecordCatalog.publish(loaded);
+
+        CustomRecordsRemakeMod.getLogger().debug("Published catalog version " + catalog.getVersion() + " with records: [" + String.join(", ", catalog.getRecords().keySet()) + "]");
+
+        return catalog;
+    }
+
+    /**
+     * Fills in the length of every record that did not specify one, by reading it from the headers of its .ogg file.
+     * Files are scanned in parallel, as each one only needs a few KB read from it.
+     *
+     * @param toDetect The records to check
+     * @return The given records, in the same order, with those that were missing a length replaced
+     */
+    public static List<Record> detectMissingLengths(List<Record> toDetect) {
+        var missing = toDetect.stream().filter(r -> r.length == Record.UNKNOWN_LENGTH).count();
+        if(missing == 0) {
+            return toDetect;
+        }
+
+        var start = System.nanoTime();
+        var recordsDir = CustomRecordsRemakeMod.getRecordsResourcesDir();
+
+        // Mostly waiting on I/O, so use more threads than there are cores. Records that already have a length are
+        //   passed straight through, so there is no point in more threads than there are missing lengths.
+        var threads = (int)Math.min(missing, Runtime.getRuntime().availableProcessors() * 2L);
+        List<Record> detected = Parallel.parallelMap(toDetect, threads, record -> {
+            if(record.length != Record.UNKNOWN_LENGTH) {
+                return record;
+            }
+
+            var oggPath = recordsDir.resolve(record.fileName + ".ogg");
+            var archive = record.oggInfo == null || record.oggInfo.archive() == null ? null : DiscArchive.getLoaded(record.oggInfo.archive());
+            try {
+                var seconds = archive != null ? OggLengthDetector.detectSeconds(archive.map(record.fileName + ".ogg"))
+                                              : OggLengthDetector.detectSeconds(oggPath);
+                return record.toBuilder().length((int)Math.ceil(seconds)).lengthDetected(true).build();
+            } catch(IOException e) {
+                // Keep the record so that the item registry stays the same, the jukebox will just consider it
+                //   finished straight away
+                CustomRecordsRemakeMod.getLogger().error("Entry for record '" + record.name + "' has no 'length' field, and it could not be detected from '" + oggPath + "': " + e.getMessage() + ". Assuming a length of 0.");
+                return record.toBuilder().length(0).build();
+            }
+        });
+
+        CustomRecordsRemakeMod.getLogger().info("Detected the length of " + missing + " records in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+        return detected;
     }
 
+    /*
+     * The constant parts of each generated document. Keep these in step with what Gson wrote when the documents were
+     *   built as JsonObjects: no whitespace, and keys in the order they used to be added.
+     */
+    private static final byte[] SOUND_START = JsonEmitter.fragment("\":{\"category\":\"record\",\"sounds\":[{\"name\":\"" + CustomRecordsRemakeMod.MODID + ":music/");
+    private static final byte[] SOUND_END = JsonEmitter.fragment("\",\"stream\":true}]}");
+    private static final byte[] MODEL_START = JsonEmitter.fragment("{\"forge_marker\":1,\"parent\":\"item/generated\",\"textures\":{\"layer0\":\"" + CustomRecordsRemakeMod.MODID + ":items/");
+    private static final byte[] MODEL_END = JsonEmitter.fragment("\"}}");
+    private static final byte[] RECIPE_START = JsonEmitter.fragment("{\"type\":\"minecraft:crafting_shaped\",\"pattern\":[\" B \",\"BIB\",\" B \"],\"key\":{\"B\":{\"item\":\"minecraft:black_terracotta\"},\"I\":{\"item\":");
+    private static final byte[] RECIPE_DATA = JsonEmitter.fragment(",\"data\":");
+    private static final byte[] RECIPE_RESULT = JsonEmitter.fragment("}},\"result\":{\"item\":\"");
+    private static final byte[] RECIPE_END = JsonEmitter.fragment("\",\"count\":1}}");
+    private static final byte[] RECIPE_VARIANT_RESULT = JsonEmitter.fragment("}},\"result\":{\"item\":\"" + CustomRecordsRemakeMod.MODID + ":" + ModItems.VARIANT_RECORD_NAME + "\",\"count\":1,\"nbt\":{\"" + ItemVariantRecord.DISC_TAG + "\":\"");
+    private static final byte[] RECIPE_VARIANT_END = JsonEmitter.fragment("\"}}}");
+    private static final byte[] VARIANT_MODEL_START = JsonEmitter.fragment("{\"parent\":\"item/generated\",\"textures\":{\"layer0\":\"minecraft:item/music_disc_13\"},\"overrides\":[");
+    private static final byte[] VARIANT_OVERRIDE_START = JsonEmitter.fragment("{\"predicate\":{\"" + CustomRecordsRemakeMod.MODID + ":" + ItemVariantRecord.DISC_PROPERTY_NAME + "\":");
+    private static final byte[] VARIANT_OVERRIDE_MODEL = JsonEmitter.fragment("},\"model\":\"" + CustomRecordsRemakeMod.MODID + ":item/discs/");
+    private static final byte[] VARIANT_OVERRIDE_END = JsonEmitter.fragment("\"}");
+    private static final byte[] VARIANT_MODEL_END = JsonEmitter.fragment("]}");
+    private static final byte[] LANG_KEY_START = JsonEmitter.fragment("\"item." + CustomRecordsRemakeMod.MODID + ".");
+    private static final byte[] LANG_NAME = JsonEmitter.fragment("\":\"Music Disc\",");
+    private static final byte[] LANG_VARIANT_NAME = JsonEmitter.fragment("\":\"Music Disc\"");
+    private static final byte[] LANG_DESC = JsonEmitter.fragment(".desc\":");
+
     /**
-     * Generates and returns a new sounds.json file.
+     * Generates and returns a new sounds.json file for the current catalog.
      *
      * @return The contents of sounds.json
      */
     public static String setupSoundsJson() {
+        return setupSoundsJson(RecordCatalog.current().getRecords().values());
+    }
+
+    /**
+     * Generates and returns a new sounds.json file for the given records.
+     *
+     * @param records The records to generate sounds.json for
+     * @return The contents of sounds.json
+     */
+    public static String setupSoundsJson(Collection<Record> records) {
+        return new String(renderSoundsJson(records), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a new sounds.json file for the given records.
+     *
+     * @param records The records to generate sounds.json for
+     * @return The UTF-8 contents of sounds.json
+     */
+    public static byte @NotNull [] renderSoundsJson(Collection<Record> records) {
+        return renderSoundsJson(records, AssetDedup.of(records));
+    }
+
+    /**
+     * Generates a new sounds.json file for the given records, where every record whose .ogg is identical to another's
+     *   plays that record's .ogg instead.
+     *
+     * @param records The records to generate sounds.json for
+     * @param dedup Which records share their .ogg
+     * @return The UTF-8 contents of sounds.json
+     */
+    public static byte @NotNull [] renderSoundsJson(Collection<Record> records, AssetDedup dedup) {
         CustomRecordsRemakeMod.getLogger().debug("Generating sounds JSON...");
 
-        Gson gson = new Gson();
-        JsonObject finishedFile = new JsonObject();
-        for (SoundEvent sound : getSounds()) {
-            JsonObject soundInfo = new JsonObject();
-            soundInfo.addProperty("category", "record");
-            JsonObject trackInfo = new JsonObject();
-
-            trackInfo.addProperty("name", CustomRecordsRemakeMod.MODID + ":music/" + sound.getLocation().getPath());
-            trackInfo.addProperty("stream", true);
-            JsonArray array = new JsonArray();
-            array.add(trackInfo);
-            soundInfo.add("sounds", array);
-            finishedFile.add(sound.getLocation().getPath(), soundInfo);
+        // This used to be written with Gson#toJson, which escapes HTML characters, unlike the other documents
+        var emitter = JsonEmitter.begin(true).raw('{');
+        var first = true;
+        for(var record : records) {
+            if(!first) {
+                emitter.raw(',');
+            }
+            first = false;
+
+            // Sounds are named after the filename of their record, as is the .ogg they play
+            emitter.raw('"').content(record.sound.getLocation().getPath()).raw(SOUND_START).content(dedup.getOggSource(record.fileName)).raw(SOUND_END);
         }
+        var soundsJson = emitter.raw('}').toByteArray();
 
-        CustomRecordsRemakeMod.getLogger().debug("Successfully generated sounds.json: " + finishedFile);
+        if(CustomRecordsRemakeMod.getLogger().isDebugEnabled()) {
+            CustomRecordsRemakeMod.getLogger().debug("Successfully generated sounds.json: " + new String(soundsJson, StandardCharsets.UTF_8));
+        }
 
-        return gson.toJson(finishedFile);
+        return soundsJson;
     }
 
     /**
@@ -203,15 +594,57 @@ public class RecordJsonHandler {
      * @return The contents of sounds.json
      */
     public static String genModelJson(String name) {
+        return new String(renderModelJson(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates a model json file for the given record.
+     *
+     * @param name The name of the record to generate a model json for.
+     *
+     * @return The UTF-8 contents of the model json
+     */
+    public static byte @NotNull [] renderModelJson(String name) {
+        return renderModelJson(name, name);
+    }
+
+    /**
+     * Generates a model json file for the given record that uses another record's texture, for when their textures
+     *   are identical.
+     *
+     * @param name The name of the record to generate a model json for.
+     * @param textureName The name of the record whose texture to use
+     *
+     * @return The UTF-8 contents of the model json
+     */
+    public static byte @NotNull [] renderModelJson(String name, String textureName) {
         CustomRecordsRemakeMod.getLogger().debug("Generating model JSON for '" + name + "'");
 
-        JsonObject finishedFile = new JsonObject();
-        finishedFile.addProperty("forge_marker", 1);
-        finishedFile.addProperty("parent", "item/generated");
-        JsonObject texture = new JsonObject();
-        texture.addProperty("layer0", CustomRecordsRemakeMod.MODID + ":items/" + name);
-        finishedFile.add("textures", texture);
-        return finishedFile.toString();
+        return JsonEmitter.begin(false).raw(MODEL_START).content(textureName).raw(MODEL_END).toByteArray();
+    }
+
+    /**
+     * Generates the model json file for the item shared by every record in {@link ModItems.Mode#VARIANT} mode. It has
+     *   an override for every record, in catalog order, which picks that record's model by its
+     *   {@link ItemVariantRecord#DISC_PROPERTY} (see {@link RecordCatalog#getDiscPredicate(int)}).
+     *
+     * @param catalog The catalog to generate the model for
+     * @return The UTF-8 contents of the model json
+     */
+    public static byte @NotNull [] renderVariantModelJson(RecordCatalog catalog) {
+        CustomRecordsRemakeMod.getLogger().debug("Generating variant model JSON for " + catalog.size() + " records");
+
+        var emitter = JsonEmitter.begin(false).raw(VARIANT_MODEL_START);
+        var index = 0;
+        for(var record : catalog.getRecords().values()) {
+            if(index != 0) {
+                emitter.raw(',');
+            }
+
+            emitter.raw(VARIANT_OVERRIDE_START).number(catalog.getDiscPredicate(index++))
+                   .raw(VARIANT_OVERRIDE_MODEL).content(record.fileName).raw(VARIANT_OVERRIDE_END);
+        }
+        return emitter.raw(VARIANT_MODEL_END).toByteArray();
     }
 
     /**
@@ -221,74 +654,106 @@ public class RecordJsonHandler {
      * @return The recipe json of this record if a valid recipe is registered for it, otherwise an empty Optional is returned.
      */
     public static Optional<String> genRecipeJson(String name) {
-        CustomRecordsRemakeMod.getLogger().debug("Generating recipe JSON for '" + name + "'");
+        return genRecipeJson(RecordCatalog.current().getRecords().get(name));
+    }
 
-        var record = records.get(name);
+    /**
+     * Gets the recipe JSON for the given record, or returns an empty Optional if there is no valid recipe defined.
+     *
+     * @param record The record to get the recipe for
+     * @return The recipe json of this record if a valid recipe is registered for it, otherwise an empty Optional is returned.
+     */
+    public static Optional<String> genRecipeJson(Record record) {
+        return Optional.ofNullable(renderRecipeJson(record)).map(recipe -> new String(recipe, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates the recipe JSON for the given record.
+     *
+     * @param record The record to get the recipe for
+     * @return The UTF-8 recipe json of this record, or null if it does not have a recipe.
+     */
+    @Nullable
+    public static byte[] renderRecipeJson(Record record) {
+        CustomRecordsRemakeMod.getLogger().debug("Generating recipe JSON for '" + record.fileName + "'");
 
         if(record.recipe == null) {
-            return Optional.empty();
+            return null;
         }
 
-        JsonObject finishedFile = new JsonObject();
+        var recipeItemPair = record.recipe;
+        var recipeItem = recipeItemPair.getKey();
+        var recipeItemMeta = recipeItemPair.getKey();
 
-        finishedFile.addProperty("type", "minecraft:crafting_shaped");
+        var emitter = JsonEmitter.begin(false).raw(RECIPE_START).string(recipeItem);
 
-        // pattern
-        JsonArray pattern = new JsonArray();
-        {
-            pattern.add(" B ");
-            pattern.add("BIB");
-            pattern.add(" B ");
+        // Omit the metadata value if it is just 0
+        if(recipeItemPair.getValue() != 0) {
+            emitter.raw(RECIPE_DATA).string(recipeItemMeta);
         }
-        finishedFile.add("pattern", pattern);
-
-        // key
-        JsonObject key = new JsonObject();
-        {
-            JsonObject B = new JsonObject();
-            B.addProperty("item", "minecraft:black_terracotta");
-            key.add("B", B);
-
-            JsonObject I = new JsonObject();
-            {
-                var recipeItemPair = record.recipe;
-                var recipeItem = recipeItemPair.getKey();
-                var recipeItemMeta = recipeItemPair.getKey();
-
-                I.addProperty("item", recipeItem);
-
-                // Omit the metadata value if it is just 0
-                if(recipeItemPair.getValue() != 0) {
-                    I.addProperty("data", recipeItemMeta);
-                }
-            }
-            key.add("I", I);
+
+        // In variant mode every recipe makes the shared item, set to play this record
+        if(CustomRecordsConfig.REGISTRY_MODE.get() == ModItems.Mode.VARIANT) {
+            emitter.raw(RECIPE_VARIANT_RESULT).content(record.fileName).raw(RECIPE_VARIANT_END);
+        } else {
+            emitter.raw(RECIPE_RESULT)
+                   .content(record.location.getNamespace()).raw(':').content(record.location.getPath())
+                   .raw(RECIPE_END);
         }
-        finishedFile.add("key", key);
+        var recipe = emitter.toByteArray();
 
-        // result
-        JsonObject result = new JsonObject();
-        {
-            result.addProperty("item", record.location.toString());
-            result.addProperty("count", 1);
+        if(CustomRecordsRemakeMod.getLogger().isDebugEnabled()) {
+            CustomRecordsRemakeMod.getLogger().debug("Generated following recipe JSON: " + new String(recipe, StandardCharsets.UTF_8));
         }
-        finishedFile.add("result", result);
 
-        CustomRecordsRemakeMod.getLogger().debug("Generated following recipe JSON: " + finishedFile);
+        return recipe;
+    }
 
-        return Optional.of(finishedFile.toString());
+    /**
+     * Generates the lang file for the given records, holding the name and description of each record's item. In
+     *   {@link ModItems.Mode#VARIANT} mode the shared item is named too, for discs that do not play a loaded record.
+     *
+     * @param records The records to generate the lang file for
+     * @return The UTF-8 contents of the lang file
+     */
+    public static byte @NotNull [] renderLangJson(Collection<Record> records) {
+        var emitter = JsonEmitter.begin(false).raw('{');
+        var first = true;
+        if(CustomRecordsConfig.REGISTRY_MODE.get() == ModItems.Mode.VARIANT) {
+            emitter.raw(LANG_KEY_START).content(ModItems.VARIANT_RECORD_NAME).raw(LANG_VARIANT_NAME);
+            first = false;
+        }
+        for(var record : records) {
+            if(!first) {
+                emitter.raw(',');
+            }
+            first = false;
+
+            emitter.raw(LANG_KEY_START).content(record.fileName).raw(LANG_NAME)
+                   .raw(LANG_KEY_START).content(record.fileName).raw(LANG_DESC)
+                   .string(record.name);
+        }
+        return emitter.raw('}').toByteArray();
     }
 
     public static List<SoundEvent> getSounds() {
-        return records.values().stream().map(r -> r.sound).collect(Collectors.toList());
+        return RecordCatalog.current().getSounds();
     }
 
     public static List<String> getFileNames() {
-        return records.values().stream().map(r -> r.fileName).collect(Collectors.toList());
+        return RecordCatalog.current().getRecords().keySet().asList();
     }
 
+    /**
+     * @return Every record in the current catalog. Callers that need several things to agree with each other should
+     *         hold on to {@link RecordCatalog#current()} instead of calling this more than once.
+     */
     public static Map<String, Record> getRecords() {
-        return records;
+        return RecordCatalog.current().getRecords();
+    }
+
+    public static int getCatalogVersion() {
+        return RecordCatalog.current().getVersion();
     }
 
 }
@@ -0,0 +1,266 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads records.json one entry at a time with a JsonReader, rather than loading the whole file into a JsonObject.
+ * Each entry is validated on its own: a malformed entry is reported as a {@link Diagnostic} and skipped, and does not
+ *   stop the entries after it from loading.
+ */
+public class RecordsJsonParser {
+    /**
+     * A problem found while parsing, along with where in the file it was found
+     *
+     * @param severity How bad the problem is. Entries with an ERROR are not loaded.
+     * @param tag The tag of the entry the problem was found in, or null if it is not tied to one entry
+     * @param line The line the problem was found on
+     * @param column The column the problem was found at
+     * @param message A description of the problem
+     */
+    public record Diagnostic(@NotNull Severity severity, @Nullable String tag, int line, int column, @NotNull String message) {
+        public enum Severity {
+            WARNING,
+            ERROR
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ", column " + column + (tag == null ? "" : " (entry '" + tag + "')") + ": " + message;
+        }
+    }
+
+    /**
+     * Everything produced by a single parse
+     *
+     * @param records Every record that was successfully loaded, in file order
+     * @param diagnostics Every problem found, in file order
+     * @param entries The number of entries that were read, including ones that were skipped
+     * @param elapsedNanos How long the parse took
+     */
+    public record Result(@NotNull List<RecordJsonHandler.Record> records, @NotNull List<Diagnostic> diagnostics, int entries, long elapsedNanos) {
+        /**
+         * @return How many entries were read per second
+         */
+        public double entriesPerSecond() {
+            return elapsedNanos == 0 ? 0 : entries * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+
+    private static final Pattern LOCATION = Pattern.compile(" at line (\\d+) column (\\d+)");
+
+    private final String sourceName;
+
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    public RecordsJsonParser(@NotNull String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Parses every entry from the given reader.
+     *
+     * @param input The contents of a records.json file
+     * @return The parsed records and every diagnostic found
+     */
+    @NotNull
+    public Result parse(@NotNull Reader input) {
+        var start = System.nanoTime();
+        var records = new ArrayList<RecordJsonHandler.Record>();
+        var entries = 0;
+
+        JsonReader reader = new JsonReader(input);
+        try {
+            try {
+                if(reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    error(reader, null, "Expected the top level of " + sourceName + " to be an object, but found " + reader.peek());
+                    return new Result(records, List.copyOf(diagnostics), entries, System.nanoTime() - start);
+                }
+            } catch(EOFException e) {
+                // An empty file simply has no records in it
+                return new Result(records, List.copyOf(diagnostics), entries, System.nanoTime() - start);
+            }
+
+            reader.beginObject();
+            while(reader.hasNext()) {
+                var tag = reader.nextName();
+                ++entries;
+
+                var record = readEntry(reader, tag);
+                if(record != null) {
+                    records.add(record);
+                }
+            }
+            reader.endObject();
+        } catch(IOException | IllegalStateException e) {
+            // The file itself is malformed, so there is no way to find where the next entry starts. Keep everything
+            //   read so far.
+            diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, null, lineOf(e.getMessage()), columnOf(e.getMessage()),
+                                           sourceName + " is not valid JSON, no further entries will be read: " + e.getMessage()));
+        }
+
+        return new Result(records, List.copyOf(diagnostics), entries, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads a single entry, leaving the reader positioned after it no matter whether it was valid.
+     *
+     * @param reader The reader, positioned at the value of the entry
+     * @param tag The tag of the entry
+     * @return The record for this entry, or null if the entry was invalid
+     * @throws IOException If the underlying JSON is malformed
+     */
+    @Nullable
+    private RecordJsonHandler.Record readEntry(JsonReader reader, String tag) throws IOException {
+        if(reader.peek() != JsonToken.BEGIN_OBJECT) {
+            error(reader, tag, "Expected an object but found " + reader.peek() + "! This record entry will be skipped.");
+            reader.skipValue();
+            return null;
+        }
+
+        String name = null;
+        String fileName = null;
+        String fileNameLocation = null;
+        Integer length = null;
+        String item = null;
+        Integer meta = null;
+        var valid = true;
+        var seenFields = new HashSet<String>();
+
+        var entryLocation = reader.toString();
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            var field = reader.nextName();
+            seenFields.add(field);
+
+            try {
+                switch(field) {
+                    case "name" -> name = nextString(reader);
+                    case "filename" -> {
+                        fileNameLocation = reader.toString();
+                        fileName = nextString(reader);
+                    }
+                    case "length" -> length = nextInt(reader);
+                    case "item" -> item = nextString(reader);
+                    case "meta" -> meta = nextInt(reader);
+                    default -> reader.skipValue();
+                }
+            } catch(IllegalStateException | NumberFormatException e) {
+                error(reader, tag, "Field '" + field + "' has the wrong type: " + e.getMessage() + ". This record entry will be skipped.");
+                reader.skipValue();
+                valid = false;
+            }
+        }
+        reader.endObject();
+
+        // Check for required fields. If those fields are missing, then warn and skip the entry. Fields that were present
+        //   but had the wrong type have already been reported above.
+        // TODO: Should we optionally crash the game here? That would require some sort of config.
+        if(!seenFields.contains("name")) {
+            error(entryLocation, tag, "Missing the required 'name' field! This record entry will be skipped.");
+            valid = false;
+        }
+        if(!seenFields.contains("filename")) {
+            error(entryLocation, tag, "Missing the required 'filename' field! This record entry will be skipped.");
+            valid = false;
+        }
+
+        // The filename becomes the path of the record's ResourceLocation, which refuses anything else
+        if(fileName != null && !ResourceLocation.isValidPath(fileName)) {
+            error(fileNameLocation, tag, "Filename '" + fileName + "' may only contain lowercase letters, digits, '_', '-', '.' and '/'! This record entry will be skipped.");
+            valid = false;
+        }
+
+        if(!valid) {
+            return null;
+        }
+
+        // Length is optional, and will be detected from the .ogg file if it is missing
+        var record = RecordJsonHandler.Record.builder(fileName)
+                .name(name)
+                .source(sourceName)
+                .length(length == null ? RecordJsonHandler.Record.UNKNOWN_LENGTH : length);
+
+        // Check for optional fields
+        if(item != null) {
+            // Metadata is optional, if it isn't specified we can assume it's just '0'
+            if(meta == null) {
+                CustomRecordsRemakeMod.getLogger().debug("Entry for record '" + name + "' is missing the 'meta' field. Assuming meta=0.");
+                meta = 0;
+            }
+
+            // Load the recipe into the record object
+            record.recipe(new AbstractMap.SimpleEntry<>(item, meta));
+        } else {
+            warning(entryLocation, tag, "Missing the 'item' field! This will not be treated as an error, but it does mean that the record will not be craftable.");
+        }
+
+        return record.build();
+    }
+
+    @NotNull
+    private static String nextString(JsonReader reader) throws IOException {
+        // JsonReader will happily read numbers as strings, but nothing else
+        var token = reader.peek();
+        if(token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a string but was " + token);
+        }
+        return reader.nextString();
+    }
+
+    private static int nextInt(JsonReader reader) throws IOException {
+        var token = reader.peek();
+        if(token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw new IllegalStateException("Expected a number but was " + token);
+        }
+        return reader.nextInt();
+    }
+
+    private void error(JsonReader reader, @Nullable String tag, String message) {
+        error(reader.toString(), tag, message);
+    }
+
+    private void error(String location, @Nullable String tag, String message) {
+        diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, tag, lineOf(location), columnOf(location), message));
+    }
+
+    private void warning(String location, @Nullable String tag, String message) {
+        diagnostics.add(new Diagnostic(Diagnostic.Severity.WARNING, tag, lineOf(location), columnOf(location), message));
+    }
+
+    /**
+     * JsonReader only exposes its position as part of its description (and the messages of exceptions it throws), in
+     *   the form '... at line X column Y path Z'.
+     */
+    private static int lineOf(@Nullable String location) {
+        return locationPart(location, 1);
+    }
+
+    private static int columnOf(@Nullable String location) {
+        return locationPart(location, 2);
+    }
+
+    private static int locationPart(@Nullable String location, int group) {
+        if(location == null) {
+            return 0;
+        }
+
+        Matcher matcher = LOCATION.matcher(location);
+        return matcher.find() ? Integer.parseInt(matcher.group(group)) : 0;
+    }
+}
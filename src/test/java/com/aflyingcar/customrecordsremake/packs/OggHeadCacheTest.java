@@ -0,0 +1,104 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.utils.AssetInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks what {@link OggHeadCache} serves as records are played, with the records directory in a temporary game
+ *   directory.
+ */
+public class OggHeadCacheTest {
+    private static final int HEAD_BYTES = 64;
+
+    @TempDir
+    Path gameDir;
+
+    private Path recordsDir;
+    private OggHeadCache cache;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        System.setProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY, gameDir.toString());
+        recordsDir = Files.createDirectories(CustomRecordsRemakeMod.getRecordsResourcesDir());
+        cache = new OggHeadCache(HEAD_BYTES, 1024 * 1024, gameDir.resolve("plays.txt"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty(CustomRecordsRemakeMod.GAME_DIR_PROPERTY);
+    }
+
+    @Test
+    public void servesTheCachedHeadOfAnUnchangedFile() throws IOException {
+        var data = writeOgg("disc", 1000, 1);
+        var info = AssetInfo.probe(recordsDir.resolve("disc.ogg"), null);
+
+        assertArrayEquals(data, play("disc", info));
+        assertArrayEquals(data, play("disc", info));
+
+        var stats = cache.stats();
+        assertEquals(1, stats.entries());
+        assertEquals(1, stats.hitStarts().calls());
+        assertEquals(1, stats.missStarts().calls());
+    }
+
+    @Test
+    public void neverJoinsAnOldHeadOntoAChangedFile() throws IOException {
+        writeOgg("disc", 1000, 1);
+        var info = AssetInfo.probe(recordsDir.resolve("disc.ogg"), null);
+        play("disc", info);
+
+        // Replaced with a file of the same size, without the records being reloaded
+        var replaced = writeOgg("disc", 1000, 2);
+        Files.setLastModifiedTime(recordsDir.resolve("disc.ogg"), FileTime.fromMillis(info.lastModified() + 10_000));
+
+        // The change is only noticed once the rest of the file has been opened in the background. By then the old head
+        //   may already have been read, in which case the play fails rather than carrying on into the new file.
+        try {
+            assertArrayEquals(replaced, play("disc", info));
+        } catch(IOException expected) {
+            // The start of the old file was read before the change was noticed
+        }
+        assertEquals(1, cache.stats().hitStarts().calls());
+
+        // From then on, nothing is served from or captured into the cache for the changed file
+        assertArrayEquals(replaced, play("disc", info));
+        assertArrayEquals(replaced, play("disc", info));
+
+        var stats = cache.stats();
+        assertEquals(0, stats.entries());
+        assertEquals(1, stats.hitStarts().calls());
+
+        // Once the records are reloaded, the new file is cached as usual
+        var reloaded = AssetInfo.probe(recordsDir.resolve("disc.ogg"), null);
+        assertArrayEquals(replaced, play("disc", reloaded));
+        assertArrayEquals(replaced, play("disc", reloaded));
+        assertEquals(2, cache.stats().hitStarts().calls());
+    }
+
+    private byte[] play(String recordName, AssetInfo info) throws IOException {
+        try(var stream = cache.open(recordName, info, () -> Files.newInputStream(recordsDir.resolve(recordName + ".ogg")))) {
+            return stream.readAllBytes();
+        }
+    }
+
+    private byte[] writeOgg(String recordName, int size, long seed) throws IOException {
+        var data = new byte[size];
+        new Random(seed).nextBytes(data);
+        Files.write(recordsDir.resolve(recordName + ".ogg"), data);
+        return data;
+    }
+}
@@ -0,0 +1,63 @@
+package com.aflyingcar.customrecordsremake.packs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that every {@link RecordAssetReader.Mode} serves the current contents of a file, however it was changed.
+ */
+public class RecordAssetReaderTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void servesEveryModeTheSame() throws IOException {
+        var data = write("disc.ogg", 10_000, 1);
+        for(var mode : RecordAssetReader.Mode.values()) {
+            var reader = new RecordAssetReader(mode, 4096, 4, 1024 * 1024);
+            assertArrayEquals(data, read(reader, "disc.ogg"), mode.name());
+            assertEquals(1, reader.getServedCount(mode), mode.name());
+        }
+    }
+
+    @Test
+    public void neverServesAReplacedFileFromItsOldMapping() throws IOException {
+        var reader = new RecordAssetReader(RecordAssetReader.Mode.MAPPED, 4096, 4, 1024 * 1024);
+        var path = dir.resolve("disc.ogg");
+
+        var original = write("disc.ogg", 10_000, 1);
+        assertArrayEquals(original, read(reader, "disc.ogg"));
+        assertArrayEquals(original, read(reader, "disc.ogg"));
+
+        // Replaced by moving another file of the same size over it, as editors and file managers tend to
+        var replacement = write("disc.ogg.tmp", 10_000, 2);
+        Files.move(dir.resolve("disc.ogg.tmp"), path, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10_000));
+        assertArrayEquals(replacement, read(reader, "disc.ogg"));
+
+        assertEquals(3, reader.getServedCount(RecordAssetReader.Mode.MAPPED));
+    }
+
+    private byte[] read(RecordAssetReader reader, String name) throws IOException {
+        try(var stream = reader.open(dir.resolve(name))) {
+            return stream.readAllBytes();
+        }
+    }
+
+    private byte[] write(String name, int size, long seed) throws IOException {
+        var data = new byte[size];
+        new Random(seed).nextBytes(data);
+        Files.write(dir.resolve(name), data);
+        return data;
+    }
+}
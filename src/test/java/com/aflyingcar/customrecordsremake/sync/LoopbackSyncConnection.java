@@ -0,0 +1,123 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Connects a {@link SyncServerSession} to a {@link SyncClientSession} in the same process, so that the whole protocol
+ *   can be run without a server or a network. Every message is encoded and decoded exactly as it would be for the
+ *   network channel, and messages are delivered one at a time in the order they were sent, so that flow control plays
+ *   out the same way it would over a real connection.
+ *
+ * Usage:
+ *   var connection = new LoopbackSyncConnection();
+ *   var server = new SyncServerSession(manifest, opener, connection.toClient(), chunkSize, window);
+ *   var client = new SyncClientSession(store, wanted, availableLocally, maxAssetSize, connection.toServer(), onComplete);
+ *   connection.run(server, client);
+ */
+public class LoopbackSyncConnection {
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+
+    private SyncServerSession server;
+    private SyncClientSession client;
+
+    private long messages;
+    private long bytes;
+    private int chunks;
+    private int maxInFlight;
+    private int inFlight;
+
+    /**
+     * @return Sends messages from the server to the client
+     */
+    @NotNull
+    public Consumer<SyncMessage> toClient() {
+        return message -> {
+            var copy = transfer(message);
+            if(copy instanceof SyncMessage.Chunk) {
+                ++chunks;
+                maxInFlight = Math.max(maxInFlight, ++inFlight);
+            }
+            queue.add(() -> client.handle(copy));
+        };
+    }
+
+    /**
+     * @return Sends messages from the client to the server
+     */
+    @NotNull
+    public Consumer<SyncMessage> toServer() {
+        return message -> {
+            var copy = transfer(message);
+            if(copy instanceof SyncMessage.Ack ack) {
+                inFlight -= ack.chunks();
+            }
+            queue.add(() -> server.handle(copy));
+        };
+    }
+
+    /**
+     * Runs a whole sync, from the server sending its manifest until there is nothing left to deliver.
+     */
+    public void run(@NotNull SyncServerSession server, @NotNull SyncClientSession client) {
+        this.server = server;
+        this.client = client;
+
+        server.start();
+        while(!queue.isEmpty()) {
+            queue.poll().run();
+        }
+    }
+
+    @NotNull
+    private <M extends SyncMessage> M transfer(@NotNull M message) {
+        var buffer = new FriendlyByteBuf(Unpooled.buffer());
+        message.encode(buffer);
+
+        ++messages;
+        bytes += buffer.readableBytes();
+
+        @SuppressWarnings("unchecked")
+        var codec = SyncMessage.codecFor((Class<M>)message.getClass());
+        var copy = codec.decoder().apply(buffer);
+        if(buffer.isReadable()) {
+            throw new IllegalStateException(message.getClass().getSimpleName() + " left " + buffer.readableBytes() + " bytes unread");
+        }
+
+        buffer.release();
+        return copy;
+    }
+
+    /**
+     * @return The number of messages sent in either direction
+     */
+    public long getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * @return The number of encoded bytes sent in either direction
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The number of chunks sent to the client
+     */
+    public int getChunkCount() {
+        return chunks;
+    }
+
+    /**
+     * @return The most chunks that were ever sent but not yet acknowledged
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+}
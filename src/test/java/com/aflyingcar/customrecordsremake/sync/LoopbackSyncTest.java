@@ -0,0 +1,196 @@
+package com.aflyingcar.customrecordsremake.sync;
+
+import com.aflyingcar.customrecordsremake.utils.ContentHash;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs whole syncs between a {@link SyncServerSession} and a {@link SyncClientSession} over a
+ *   {@link LoopbackSyncConnection}, with the server's assets in one directory and the client's store in another.
+ */
+public class LoopbackSyncTest {
+    private static final int CHUNK_SIZE = 1024;
+    private static final int WINDOW = 4;
+    private static final long MAX_ASSET_SIZE = 64 * 1024;
+
+    @TempDir
+    Path serverDir;
+
+    @TempDir
+    Path storeDir;
+
+    /**
+     * Everything that came out of a single sync
+     */
+    private record Sync(LoopbackSyncConnection connection, SyncServerSession server, SyncClientSession client, Map<String, Path> synced) { }
+
+    @Test
+    public void syncsEveryMissingAssetInChunks() throws IOException {
+        var manifest = List.of(writeAsset("empty.ogg", 0, 1),
+                               writeAsset("tiny.png", 1, 2),
+                               writeAsset("exact.ogg", CHUNK_SIZE, 3),
+                               writeAsset("uneven.ogg", CHUNK_SIZE * 3 + 17, 4),
+                               writeAsset("large.ogg", CHUNK_SIZE * 10, 5));
+
+        var sync = sync(manifest, entry -> true, entry -> false);
+
+        assertTrue(sync.client().isComplete());
+        assertEquals(manifest.size(), sync.client().getAssetsReceived());
+        assertEquals(manifest.size(), sync.server().getAssetsSent());
+        assertEquals(manifest.stream().mapToLong(SyncMessage.Entry::size).sum(), sync.client().getBytesReceived());
+
+        // Every asset takes at least one chunk, even an empty one
+        var expectedChunks = manifest.stream().mapToLong(entry -> Math.max(1, (entry.size() + CHUNK_SIZE - 1) / CHUNK_SIZE)).sum();
+        assertEquals(expectedChunks, sync.connection().getChunkCount());
+
+        // Flow control: the window fills up, but is never exceeded
+        assertEquals(WINDOW, sync.connection().getMaxInFlight());
+
+        var store = new ContentStore(storeDir);
+        for(var entry : manifest) {
+            assertArrayEquals(Files.readAllBytes(serverDir.resolve(entry.name())), Files.readAllBytes(store.getPath(entry.sha1())), entry.name());
+            assertEquals(store.getPath(entry.sha1()), sync.synced().get(entry.name()));
+        }
+        assertEquals(manifest.size(), sync.synced().size());
+        assertNoPartialDownloads();
+    }
+
+    @Test
+    public void neverDownloadsTheSameAssetTwice() throws IOException {
+        var original = writeAsset("original.ogg", CHUNK_SIZE * 2 + 5, 1);
+        Files.copy(serverDir.resolve("original.ogg"), serverDir.resolve("remix.ogg"));
+        var remix = new SyncMessage.Entry("remix.ogg", original.sha1(), original.size());
+        var manifest = List.of(original, remix, writeAsset("other.png", 100, 2));
+
+        // Assets with the same contents are only requested once, whatever they are called
+        var first = sync(manifest, entry -> true, entry -> false);
+        assertEquals(2, first.client().getAssetsReceived());
+        assertEquals(2, first.server().getAssetsSent());
+        assertEquals(3, first.synced().size());
+
+        // Anything already in the store is never requested again, such as when joining the server a second time
+        var second = sync(manifest, entry -> true, entry -> false);
+        assertTrue(second.client().isComplete());
+        assertEquals(0, second.client().getAssetsReceived());
+        assertEquals(0, second.client().getBytesReceived());
+        assertEquals(0, second.server().getAssetsSent());
+        assertEquals(0, second.connection().getChunkCount());
+        assertEquals(first.synced(), second.synced());
+    }
+
+    @Test
+    public void skipsAssetsTheClientAlreadyHas() throws IOException {
+        var own = writeAsset("own.ogg", 500, 1);
+        var missing = writeAsset("missing.ogg", 500, 2);
+
+        var sync = sync(List.of(own, missing), entry -> true, entry -> entry.name().equals("own.ogg"));
+
+        assertEquals(1, sync.client().getAssetsReceived());
+        assertFalse(new ContentStore(storeDir).contains(own.sha1()));
+        assertEquals(Set.of("missing.ogg"), sync.synced().keySet());
+    }
+
+    @Test
+    public void ignoresUnknownAndOversizedAssets() throws IOException {
+        var known = writeAsset("known.ogg", 500, 1);
+        var unknown = writeAsset("unknown.ogg", 500, 2);
+        var oversized = writeAsset("oversized.ogg", (int)MAX_ASSET_SIZE + 1, 3);
+
+        var sync = sync(List.of(known, unknown, oversized), name -> !name.equals("unknown.ogg"), entry -> false);
+
+        assertTrue(sync.client().isComplete());
+        assertEquals(1, sync.server().getAssetsSent());
+
+        var store = new ContentStore(storeDir);
+        assertTrue(store.contains(known.sha1()));
+        assertFalse(store.contains(unknown.sha1()));
+        assertFalse(store.contains(oversized.sha1()));
+        assertEquals(Set.of("known.ogg"), sync.synced().keySet());
+    }
+
+    @Test
+    public void discardsAssetsThatDoNotMatchTheirHash() throws IOException {
+        var good = writeAsset("good.ogg", CHUNK_SIZE * 2, 1);
+        var tampered = writeAsset("tampered.ogg", CHUNK_SIZE * 2, 2);
+        var claimed = new SyncMessage.Entry(tampered.name(), ContentHash.of(new byte[] { 1, 2, 3 }), tampered.size());
+
+        var sync = sync(List.of(claimed, good), entry -> true, entry -> false);
+
+        assertTrue(sync.client().isComplete());
+        assertEquals(1, sync.client().getAssetsReceived());
+
+        var store = new ContentStore(storeDir);
+        assertFalse(store.contains(claimed.sha1()));
+        assertFalse(store.contains(tampered.sha1()));
+        assertEquals(Set.of("good.ogg"), sync.synced().keySet());
+        assertNoPartialDownloads();
+    }
+
+    @Test
+    public void completesWhenTheServerCannotSendAnAsset() throws IOException {
+        var present = writeAsset("present.ogg", 300, 1);
+        var deleted = writeAsset("deleted.ogg", 300, 2);
+        Files.delete(serverDir.resolve(deleted.name()));
+
+        var sync = sync(List.of(deleted, present), entry -> true, entry -> false);
+
+        assertTrue(sync.client().isComplete());
+        assertEquals(1, sync.client().getAssetsReceived());
+        assertEquals(Set.of("present.ogg"), sync.synced().keySet());
+    }
+
+    /**
+     * Runs a whole sync of the given manifest, with the server reading its assets from {@link #serverDir} and the client
+     *   storing them in {@link #storeDir}.
+     */
+    private Sync sync(List<SyncMessage.Entry> manifest, Predicate<String> wanted, Predicate<SyncMessage.Entry> availableLocally) {
+        var connection = new LoopbackSyncConnection();
+        var synced = new HashMap<String, Path>();
+
+        var server = new SyncServerSession(manifest, entry -> Files.newInputStream(serverDir.resolve(entry.name())), connection.toClient(), CHUNK_SIZE, WINDOW);
+        var client = new SyncClientSession(new ContentStore(storeDir), wanted, availableLocally, MAX_ASSET_SIZE, connection.toServer(), synced::putAll);
+
+        connection.run(server, client);
+
+        assertTrue(server.isIdle());
+        return new Sync(connection, server, client, synced);
+    }
+
+    /**
+     * Writes an asset of random bytes into the server's directory.
+     *
+     * @return The manifest entry for the asset
+     */
+    private SyncMessage.Entry writeAsset(String name, int size, long seed) throws IOException {
+        var bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+
+        var path = serverDir.resolve(name);
+        Files.write(path, bytes);
+        return new SyncMessage.Entry(name, ContentHash.of(path), size);
+    }
+
+    private void assertNoPartialDownloads() throws IOException {
+        var partialDir = storeDir.resolve("partial");
+        if(Files.isDirectory(partialDir)) {
+            try(var files = Files.list(partialDir)) {
+                assertEquals(0L, files.count(), "Partial downloads were left behind");
+            }
+        }
+    }
+}
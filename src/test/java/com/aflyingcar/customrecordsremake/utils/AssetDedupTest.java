@@ -0,0 +1,68 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks which records {@link AssetDedup} serves another record's assets for.
+ */
+public class AssetDedupTest {
+    private static final String SHARED_OGG = "1".repeat(40);
+    private static final String SHARED_PNG = "2".repeat(40);
+
+    private static final List<RecordJsonHandler.Record> RECORDS = List.of(
+            record("original", SHARED_OGG, SHARED_PNG),
+            record("remix", "3".repeat(40), SHARED_PNG),
+            record("copy", SHARED_OGG, "4".repeat(40)),
+            record("another_copy", SHARED_OGG, null));
+
+    @Test
+    public void servesTheFirstRecordsAssetForIdenticalOnes() {
+        var dedup = AssetDedup.of(RECORDS);
+
+        assertEquals("original", dedup.getOggSource("copy"));
+        assertEquals("original", dedup.getOggSource("another_copy"));
+        assertEquals("remix", dedup.getOggSource("remix"));
+        assertEquals("original", dedup.getTextureSource("remix"));
+        assertEquals("copy", dedup.getTextureSource("copy"));
+
+        assertFalse(dedup.isOggAlias("original"));
+        assertEquals(2, dedup.getOggAliasCount());
+        assertEquals(1, dedup.getTextureAliasCount());
+        assertEquals(2 * 100 + 10, dedup.getBytesSaved());
+    }
+
+    @Test
+    public void leavesOutReplacedAssets() {
+        // The server's copy of an alias may differ, so it must be served rather than the original's
+        var replacedAlias = AssetDedup.of(RECORDS, Set.of("copy.ogg", "remix.png")::contains);
+        assertEquals("copy", replacedAlias.getOggSource("copy"));
+        assertEquals("original", replacedAlias.getOggSource("another_copy"));
+        assertEquals("remix", replacedAlias.getTextureSource("remix"));
+        assertTrue(replacedAlias.isOggAlias("another_copy"));
+
+        // Nor can the aliases of a replaced asset be served the server's copy in its place
+        var replacedSource = AssetDedup.of(RECORDS, Set.of("original.ogg")::contains);
+        assertEquals("original", replacedSource.getOggSource("original"));
+        assertEquals("copy", replacedSource.getOggSource("copy"));
+        assertEquals("copy", replacedSource.getOggSource("another_copy"));
+        assertEquals("original", replacedSource.getTextureSource("remix"));
+
+        assertTrue(AssetDedup.of(RECORDS, name -> true).isEmpty());
+    }
+
+    private static RecordJsonHandler.Record record(String fileName, String oggSha1, String pngSha1) {
+        return RecordJsonHandler.Record.builder(fileName)
+                                       .name(fileName)
+                                       .length(60)
+                                       .oggInfo(new AssetInfo(100, 0, oggSha1, null))
+                                       .textureInfo(pngSha1 == null ? null : new AssetInfo(10, 0, pngSha1, null))
+                                       .build();
+    }
+}
@@ -0,0 +1,135 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks that {@link DiscArchive} reads what {@link ZipOutputStream} writes, and that a damaged archive only ever fails
+ *   with an {@link IOException}, which is what lets the other archives load without it.
+ */
+public class DiscArchiveTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readsStoredEntries() throws IOException {
+        var ogg = randomBytes(5000, 1);
+        var png = randomBytes(300, 2);
+        var path = writeArchive("discs.zip", ogg, png);
+
+        try(var archive = DiscArchive.open(path)) {
+            assertEquals(List.of("records.json"), archive.getRecordFragments());
+            assertEquals(ogg.length, archive.getSize("disc.ogg"));
+            assertEquals(-1, archive.getSize("missing.ogg"));
+            assertArrayEquals(ogg, archive.open("disc.ogg").readAllBytes());
+            assertArrayEquals(png, archive.open("art/disc.png").readAllBytes());
+        }
+    }
+
+    @Test
+    public void givesEachReaderItsOwnPosition() throws IOException {
+        var ogg = randomBytes(5000, 1);
+        var path = writeArchive("discs.zip", ogg, randomBytes(300, 2));
+
+        try(var archive = DiscArchive.open(path)) {
+            var first = archive.open("disc.ogg");
+            var second = archive.open("disc.ogg");
+            assertArrayEquals(Arrays.copyOf(ogg, 100), first.readNBytes(100));
+            assertArrayEquals(ogg, second.readAllBytes());
+            assertArrayEquals(Arrays.copyOfRange(ogg, 100, ogg.length), first.readAllBytes());
+            assertArrayEquals(ogg, archive.open("disc.ogg").readAllBytes());
+        }
+    }
+
+    @Test
+    public void rejectsEveryTruncatedArchive() throws IOException {
+        var bytes = Files.readAllBytes(writeArchive("discs.zip", randomBytes(500, 1), randomBytes(100, 2)));
+
+        // Cutting the archive anywhere loses at least part of the central directory or the end of central directory
+        //   record, which are at the end
+        var path = dir.resolve("truncated.zip");
+        for(int i = 0; i < bytes.length; ++i) {
+            var length = i;
+            Files.write(path, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> DiscArchive.open(path).close(), "truncated to " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void onlyEverFailsWithAnIOException() throws IOException {
+        var bytes = Files.readAllBytes(writeArchive("discs.zip", randomBytes(500, 1), randomBytes(100, 2)));
+        var random = new Random(8);
+        var path = dir.resolve("corrupt.zip");
+
+        // Damage the central directory and the records after it, which are all that is read when opening
+        var directoryStart = bytes.length - 250;
+        for(int i = 0; i < 2000; ++i) {
+            var corrupt = bytes.clone();
+            for(int j = 1 + random.nextInt(4); j > 0; --j) {
+                corrupt[directoryStart + random.nextInt(bytes.length - directoryStart)] = (byte)random.nextInt(256);
+            }
+            Files.write(path, corrupt);
+
+            try(var archive = DiscArchive.open(path)) {
+                // Whatever entries survived still have to be readable
+                for(var name : List.of("records.json", "disc.ogg", "art/disc.png")) {
+                    if(archive.contains(name)) {
+                        archive.open(name).readAllBytes();
+                    }
+                }
+            } catch(IOException expected) {
+                // The damage was noticed
+            } catch(RuntimeException e) {
+                fail("Corrupt archive " + i + " failed with " + e, e);
+            }
+        }
+    }
+
+    private Path writeArchive(String name, byte[] ogg, byte[] png) throws IOException {
+        var path = dir.resolve(name);
+        try(OutputStream file = Files.newOutputStream(path); var zip = new ZipOutputStream(file)) {
+            putStored(zip, "records.json", "{}".getBytes(StandardCharsets.UTF_8));
+            putStored(zip, "disc.ogg", ogg);
+            putStored(zip, "art/disc.png", png);
+        }
+        return path;
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        var crc = new CRC32();
+        crc.update(data);
+
+        var entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        var bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,200 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.aflyingcar.customrecordsremake.CustomRecordsRemakeMod;
+import com.aflyingcar.customrecordsremake.config.CustomRecordsConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that the documents generated with {@link JsonEmitter} are byte-for-byte what the generators wrote when they
+ *   built Gson trees. The reference generators here are the ones that were replaced, kept as they were.
+ * Record filenames become resource locations, so they can only hold a few plain characters. Record names and recipe
+ *   items can hold anything, so those are where escaping is checked.
+ */
+public class GeneratedJsonTest {
+    /**
+     * Names that each exercise a different escaping rule
+     */
+    private static final List<String> SPECIAL_NAMES = List.of(
+            "Plain Record Name",
+            "<b>Rock & Roll</b> = 'fun'",
+            "Quote \" and backslash \\",
+            "Tab\tnewline\ncontrol\u0001\u001f",
+            "Line\u2028separator and paragraph\u2029separator",
+            "\u00dcn\u00efc\u00f6d\u00e9 and \u65e5\u672c\u8a9e",
+            "Surrogate pair \ud83c\udfb5",
+            "Lone high \ud83c surrogate",
+            "Lone low \udfb5 surrogate");
+
+    @TempDir
+    Path configDir;
+
+    @BeforeEach
+    public void loadConfig() throws IOException {
+        // The recipe and lang file depend on the registry mode, and the Gson generators predate the variant mode
+        var configPath = configDir.resolve(CustomRecordsRemakeMod.MODID + "-common.toml");
+        Files.writeString(configPath, "[registry]\nmode = \"PER_RECORD\"\n", StandardCharsets.UTF_8);
+        CustomRecordsConfig.load(configPath);
+    }
+
+    @Test
+    public void soundsJsonMatchesGson() {
+        var records = createRecords(200);
+        assertArrayEquals(utf8(gsonSoundsJson(records)), RecordJsonHandler.renderSoundsJson(records));
+        assertArrayEquals(utf8("{}"), RecordJsonHandler.renderSoundsJson(List.of()));
+    }
+
+    @Test
+    public void modelJsonMatchesGson() {
+        for(var record : createRecords(200)) {
+            assertArrayEquals(utf8(gsonModelJson(record.fileName)), RecordJsonHandler.renderModelJson(record.fileName), record.fileName);
+        }
+    }
+
+    @Test
+    public void recipeJsonMatchesGson() {
+        for(var record : createRecords(200)) {
+            var expected = gsonRecipeJson(record);
+            if(expected == null) {
+                assertNull(RecordJsonHandler.renderRecipeJson(record), record.fileName);
+            } else {
+                assertArrayEquals(utf8(expected), RecordJsonHandler.renderRecipeJson(record), record.fileName);
+            }
+        }
+    }
+
+    @Test
+    public void langJsonMatchesGson() {
+        var records = createRecords(200);
+        assertArrayEquals(utf8(gsonLangJson(records)), RecordJsonHandler.renderLangJson(records));
+        assertArrayEquals(utf8("{}"), RecordJsonHandler.renderLangJson(List.of()));
+    }
+
+    /**
+     * Creates records with every special name, followed by records with random names. Records take turns having no
+     *   recipe, a recipe without metadata and a recipe with metadata.
+     */
+    private static List<RecordJsonHandler.Record> createRecords(int count) {
+        var random = new Random(count);
+        var records = new ArrayList<RecordJsonHandler.Record>(count);
+        for(int i = 0; i < count; ++i) {
+            var name = i < SPECIAL_NAMES.size() ? SPECIAL_NAMES.get(i) : randomString(random);
+            var item = i % 2 == 0 ? "minecraft:stone" : SPECIAL_NAMES.get(i % SPECIAL_NAMES.size());
+
+            var builder = RecordJsonHandler.Record.builder("records/disc_" + i + "-v1.0").name(name).length(60);
+            switch(i % 3) {
+                case 1 -> builder.recipe(Map.entry(item, 0));
+                case 2 -> builder.recipe(Map.entry(item, i));
+            }
+            records.add(builder.build());
+        }
+        return records;
+    }
+
+    private static String randomString(Random random) {
+        var chars = new char[1 + random.nextInt(20)];
+        for(int i = 0; i < chars.length; ++i) {
+            chars[i] = random.nextBoolean() ? (char)(0x20 + random.nextInt(0x60)) : (char)random.nextInt(Character.MAX_VALUE + 1);
+        }
+        return new String(chars);
+    }
+
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String gsonSoundsJson(Collection<RecordJsonHandler.Record> records) {
+        Gson gson = new Gson();
+        JsonObject finishedFile = new JsonObject();
+        for(var sound : records.stream().map(r -> r.sound).toList()) {
+            JsonObject soundInfo = new JsonObject();
+            soundInfo.addProperty("category", "record");
+            JsonObject trackInfo = new JsonObject();
+
+            trackInfo.addProperty("name", CustomRecordsRemakeMod.MODID + ":music/" + sound.getLocation().getPath());
+            trackInfo.addProperty("stream", true);
+            JsonArray array = new JsonArray();
+            array.add(trackInfo);
+            soundInfo.add("sounds", array);
+            finishedFile.add(sound.getLocation().getPath(), soundInfo);
+        }
+        return gson.toJson(finishedFile);
+    }
+
+    private static String gsonModelJson(String name) {
+        JsonObject finishedFile = new JsonObject();
+        finishedFile.addProperty("forge_marker", 1);
+        finishedFile.addProperty("parent", "item/generated");
+        JsonObject texture = new JsonObject();
+        texture.addProperty("layer0", CustomRecordsRemakeMod.MODID + ":items/" + name);
+        finishedFile.add("textures", texture);
+        return finishedFile.toString();
+    }
+
+    private static String gsonRecipeJson(RecordJsonHandler.Record record) {
+        if(record.recipe == null) {
+            return null;
+        }
+
+        JsonObject finishedFile = new JsonObject();
+        finishedFile.addProperty("type", "minecraft:crafting_shaped");
+
+        JsonArray pattern = new JsonArray();
+        pattern.add(" B ");
+        pattern.add("BIB");
+        pattern.add(" B ");
+        finishedFile.add("pattern", pattern);
+
+        JsonObject key = new JsonObject();
+        JsonObject B = new JsonObject();
+        B.addProperty("item", "minecraft:black_terracotta");
+        key.add("B", B);
+
+        JsonObject I = new JsonObject();
+        var recipeItemPair = record.recipe;
+        var recipeItem = recipeItemPair.getKey();
+        var recipeItemMeta = recipeItemPair.getKey();
+        I.addProperty("item", recipeItem);
+        if(recipeItemPair.getValue() != 0) {
+            I.addProperty("data", recipeItemMeta);
+        }
+        key.add("I", I);
+        finishedFile.add("key", key);
+
+        JsonObject result = new JsonObject();
+        result.addProperty("item", record.location.toString());
+        result.addProperty("count", 1);
+        finishedFile.add("result", result);
+
+        return finishedFile.toString();
+    }
+
+    private static String gsonLangJson(Collection<RecordJsonHandler.Record> records) {
+        JsonObject lang = new JsonObject();
+        for(var record : records) {
+            var nameTranslationKey = "item." + CustomRecordsRemakeMod.MODID + "." + record.fileName;
+            var descTranslationKey = "item." + CustomRecordsRemakeMod.MODID + "." + record.fileName + ".desc";
+
+            lang.addProperty(nameTranslationKey, "Music Disc");
+            lang.addProperty(descTranslationKey, record.name);
+        }
+        return lang.toString();
+    }
+}
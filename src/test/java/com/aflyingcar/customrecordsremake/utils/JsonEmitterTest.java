@@ -0,0 +1,142 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that {@link JsonEmitter} writes exactly the bytes Gson would for the same values: escaped like
+ *   {@link Gson#toJson(Object)} when HTML-safe, and like {@link JsonPrimitive#toString()} otherwise.
+ */
+public class JsonEmitterTest {
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Strings that each exercise a different escaping rule
+     */
+    private static final List<String> SPECIAL_STRINGS = List.of(
+            "",
+            "Plain Record Name",
+            "<b>Rock & Roll</b> = 'fun'",
+            "Quote \" and backslash \\ and slash /",
+            "Tab\tnewline\ncarriage\rbackspace\bform\f",
+            "Delete \u007f",
+            "Line\u2028separator and paragraph\u2029separator",
+            "\u00dcn\u00efc\u00f6d\u00e9, \u65e5\u672c\u8a9e and \u00a0no-break space",
+            "Surrogate pair \ud83c\udfb5",
+            "Lone high \ud83c surrogate",
+            "Lone low \udfb5 surrogate",
+            "Reversed pair \udfb5\ud83c",
+            "Ends with a high surrogate \ud83c",
+            "\udfb5");
+
+    @Test
+    public void escapesSpecialStringsLikeGson() {
+        for(var value : SPECIAL_STRINGS) {
+            assertStringMatchesGson(value);
+        }
+    }
+
+    @Test
+    public void escapesEveryControlCharacterLikeGson() {
+        var builder = new StringBuilder();
+        for(char c = 0; c < 0x20; ++c) {
+            builder.append(c);
+        }
+        assertStringMatchesGson(builder.toString());
+    }
+
+    @Test
+    public void escapesEveryAsciiCharacterLikeGson() {
+        for(char c = 0; c < 0x80; ++c) {
+            assertStringMatchesGson("a" + c + "b");
+        }
+    }
+
+    @Test
+    public void escapesRandomStringsLikeGson() {
+        var random = new Random(16);
+        for(int i = 0; i < 2000; ++i) {
+            var chars = new char[random.nextInt(24)];
+            for(int j = 0; j < chars.length; ++j) {
+                // Mostly ASCII, but with every other range (including surrogates) well represented
+                chars[j] = random.nextInt(3) == 0 ? (char)random.nextInt(0x80) : (char)random.nextInt(Character.MAX_VALUE + 1);
+            }
+            assertStringMatchesGson(new String(chars));
+        }
+    }
+
+    @Test
+    public void joinsContentLikeOneString() {
+        var joined = JsonEmitter.begin(false).raw('"').content("name<space").raw(':').content("path&\u2028").raw('"').toByteArray();
+        assertArrayEquals(utf8(new JsonPrimitive("name<space:path&\u2028").toString()), joined);
+    }
+
+    @Test
+    public void writesIntegersLikeGson() {
+        var values = new ArrayList<>(List.of(0, 1, -1, 9, 10, -10, 12345, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE + 1));
+        var random = new Random(17);
+        for(int i = 0; i < 1000; ++i) {
+            values.add(random.nextInt());
+        }
+
+        for(var value : values) {
+            assertArrayEquals(utf8(new JsonPrimitive(value).toString()), JsonEmitter.begin(false).number(value).toByteArray(), "number " + value);
+        }
+    }
+
+    @Test
+    public void writesFloatsLikeGson() {
+        var values = new ArrayList<>(List.of(0f, -0f, 1f, 0.5f, 1f / 3, 1e-7f, 1e7f, 123456.79f, Float.MIN_VALUE, Float.MAX_VALUE));
+        // Every value a variant disc predicate can take for a catalog of up to 500 records
+        for(int size = 1; size <= 500; ++size) {
+            for(int index = 0; index < size; index += 7) {
+                values.add((float)(index + 1) / (size + 1));
+            }
+        }
+
+        for(var value : values) {
+            assertArrayEquals(utf8(new JsonPrimitive(value).toString()), JsonEmitter.begin(false).number(value).toByteArray(), "number " + value);
+        }
+    }
+
+    @Test
+    public void startsEachDocumentEmpty() {
+        JsonEmitter.begin(false).string("left over");
+        assertArrayEquals(utf8("\"next\""), JsonEmitter.begin(false).string("next").toByteArray());
+
+        // A document too large for the buffer to be kept does not affect the next one either
+        var large = "x".repeat(512 * 1024);
+        assertArrayEquals(utf8(GSON.toJson(large)), JsonEmitter.begin(true).string(large).toByteArray());
+        assertArrayEquals(utf8("\"after\""), JsonEmitter.begin(true).string("after").toByteArray());
+    }
+
+    private static void assertStringMatchesGson(String value) {
+        assertArrayEquals(utf8(GSON.toJson(value)), JsonEmitter.begin(true).string(value).toByteArray(), "HTML-safe " + describe(value));
+        assertArrayEquals(utf8(new JsonPrimitive(value).toString()), JsonEmitter.begin(false).string(value).toByteArray(), describe(value));
+    }
+
+    /**
+     * Gson writes to a String, which ends up as bytes the same way the generated documents used to: through
+     *   {@link String#getBytes}, which replaces lone surrogates with '?'.
+     */
+    private static byte[] utf8(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String describe(String value) {
+        var builder = new StringBuilder("'");
+        for(int i = 0; i < value.length(); ++i) {
+            var c = value.charAt(i);
+            builder.append(c >= 0x20 && c < 0x7f ? String.valueOf(c) : String.format("\\u%04x", (int)c));
+        }
+        return builder.append('\'').toString();
+    }
+}
@@ -0,0 +1,68 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks which changes to the published {@link RecordCatalog} give it a new resources version.
+ */
+public class RecordCatalogTest {
+    private static final String OGG_A = "1".repeat(40);
+    private static final String OGG_B = "2".repeat(40);
+    private static final String OGG_C = "3".repeat(40);
+
+    @Test
+    public void keepsResourcesWhenOnlyAnAssetChanges() {
+        var original = RecordCatalog.publish(List.of(record("first", OGG_A), record("second", OGG_B)));
+        var soundsJson = original.getSoundsJson();
+
+        RecordCatalog.update("second", r -> r.toBuilder().oggInfo(ogg(OGG_C)).build());
+        var updated = RecordCatalog.current();
+
+        assertEquals(original.getVersion() + 1, updated.getVersion());
+        assertEquals(original.getResourcesVersion(), updated.getResourcesVersion());
+        assertSame(soundsJson, updated.getSoundsJson());
+        assertEquals(OGG_C, updated.getRecords().get("second").oggInfo.sha1());
+        assertEquals(1, updated.indexOf("second"));
+    }
+
+    @Test
+    public void newResourcesWhenWhatIsSharedChanges() {
+        var original = RecordCatalog.publish(List.of(record("first", OGG_A), record("second", OGG_B)));
+
+        // The second record's .ogg is now identical to the first's, so sounds.json points it there
+        RecordCatalog.update("second", r -> r.toBuilder().oggInfo(ogg(OGG_A)).build());
+        var shared = RecordCatalog.current();
+        assertNotEquals(original.getResourcesVersion(), shared.getResourcesVersion());
+        assertEquals("first", shared.getAssetDedup().getOggSource("second"));
+
+        // And no longer is
+        RecordCatalog.update("second", r -> r.toBuilder().oggInfo(ogg(OGG_B)).build());
+        assertNotEquals(shared.getResourcesVersion(), RecordCatalog.current().getResourcesVersion());
+    }
+
+    @Test
+    public void newResourcesWhenARecordChanges() {
+        var original = RecordCatalog.publish(List.of(record("first", OGG_A), record("second", OGG_B)));
+
+        RecordCatalog.update("first", r -> r.toBuilder().name("Renamed").build());
+        var renamed = RecordCatalog.current();
+        assertNotEquals(original.getResourcesVersion(), renamed.getResourcesVersion());
+
+        RecordCatalog.republish();
+        assertNotEquals(renamed.getResourcesVersion(), RecordCatalog.current().getResourcesVersion());
+    }
+
+    private static RecordJsonHandler.Record record(String fileName, String oggSha1) {
+        return RecordJsonHandler.Record.builder(fileName).name(fileName).length(60).oggInfo(ogg(oggSha1)).build();
+    }
+
+    private static AssetInfo ogg(String sha1) {
+        return new AssetInfo(100, 0, sha1, null);
+    }
+}
@@ -0,0 +1,37 @@
+package com.aflyingcar.customrecordsremake.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that {@link RecordsJsonParser} reports a bad entry against that entry alone, and still loads the rest.
+ */
+public class RecordsJsonParserTest {
+    @Test
+    public void skipsAnEntryWithAnInvalidFilename() {
+        var json = """
+                {
+                  "first": { "name": "First", "filename": "first", "item": "minecraft:stick" },
+                  "bad": { "name": "Bad", "filename": "My Song", "item": "minecraft:stick" },
+                  "second": { "name": "Second", "filename": "second", "item": "minecraft:stick" }
+                }
+                """;
+
+        var result = new RecordsJsonParser("records.json").parse(new StringReader(json));
+
+        assertEquals(3, result.entries());
+        assertEquals(2, result.records().size());
+        assertEquals("first", result.records().get(0).fileName);
+        assertEquals("second", result.records().get(1).fileName);
+
+        assertEquals(1, result.diagnostics().size());
+        var diagnostic = result.diagnostics().get(0);
+        assertEquals(RecordsJsonParser.Diagnostic.Severity.ERROR, diagnostic.severity());
+        assertEquals("bad", diagnostic.tag());
+        assertEquals(3, diagnostic.line());
+        assertEquals(37, diagnostic.column());
+    }
+}